@@ -1,17 +1,21 @@
 package com.asys1920.ordermanagement;
 
 import com.asys1920.util.GracefulShutdown;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
 import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
 import org.springframework.boot.web.servlet.server.ConfigurableServletWebServerFactory;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @EntityScan("com.asys1920.*")
 @ComponentScan(basePackages = {"com.asys1920.*"})
 @SpringBootApplication
+@EnableScheduling
 public class OrderManagementApplication {
 
 	public static void main(String[] args) {
@@ -23,10 +27,16 @@ public class OrderManagementApplication {
 		return new GracefulShutdown();
 	}
 
+	/**
+	 * Tomcat with graceful shutdown. The protocol handler customizers, e.g. the one of the virtual thread mode,
+	 * have to be applied here because this factory replaces the one Spring Boot would configure.
+	 */
 	@Bean
-	public ConfigurableServletWebServerFactory webServerFactory(final GracefulShutdown gracefulShutdown) {
+	public ConfigurableServletWebServerFactory webServerFactory(final GracefulShutdown gracefulShutdown,
+			ObjectProvider<TomcatProtocolHandlerCustomizer<?>> protocolHandlerCustomizers) {
 		TomcatServletWebServerFactory factory = new TomcatServletWebServerFactory();
 		factory.addConnectorCustomizers(gracefulShutdown);
+		protocolHandlerCustomizers.orderedStream().forEach(factory::addProtocolHandlerCustomizers);
 		return factory;
 	}
 }
@@ -3,37 +3,245 @@ package com.asys1920.ordermanagement.adapter;
 import com.asys1920.dto.BillDTO;
 import com.asys1920.mapper.BillMapper;
 import com.asys1920.model.Bill;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.RestTemplate;
 
+import javax.annotation.PreDestroy;
 import javax.naming.ServiceUnavailableException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 @Component
 public class AccountingServiceAdapter {
+    private static final String UNAVAILABLE = "AccountingService is currently unavailable. Please try again later.";
+    static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
     @Value("${bill.url}")
     private String accountingServiceUrl;
+    @Value("${bill.bulk-url}")
+    private String accountingServiceBulkUrl;
     final RestTemplate restTemplate;
+    private final CircuitBreaker circuitBreaker;
+    private final Bulkhead bulkhead;
+    private final DownstreamTimer saveBillTimer;
+    private final DownstreamTimer saveBillsTimer;
+    private final boolean batchEnabled;
+    private final Duration batchWindow;
+    private final int batchMaxSize;
+    // Only fires the windows of the batches, the bulk requests are sent by the batchSender
+    private final ScheduledExecutorService batchScheduler;
+    private final ExecutorService batchSender;
+    private List<PendingBill> batch = new ArrayList<>();
 
-    public AccountingServiceAdapter(RestTemplateBuilder restTemplateBuilder) {
-        this.restTemplate = restTemplateBuilder.build();
+    public AccountingServiceAdapter(@Qualifier("accountingRestTemplate") RestTemplate restTemplate,
+                                    CircuitBreakerRegistry circuitBreakerRegistry,
+                                    BulkheadRegistry bulkheadRegistry,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${bill.batch.enabled}") boolean batchEnabled,
+                                    @Value("${bill.batch.window}") Duration batchWindow,
+                                    @Value("${bill.batch.max-size}") int batchMaxSize,
+                                    @Value("${bill.batch.senders}") int batchSenders) {
+        this.restTemplate = restTemplate;
+        this.circuitBreaker = circuitBreakerRegistry.circuitBreaker("accounting");
+        this.bulkhead = bulkheadRegistry.bulkhead("accounting");
+        this.saveBillTimer = new DownstreamTimer(meterRegistry, "accounting", "saveBill");
+        this.saveBillsTimer = new DownstreamTimer(meterRegistry, "accounting", "saveBills");
+        this.batchEnabled = batchEnabled;
+        this.batchWindow = batchWindow;
+        this.batchMaxSize = batchMaxSize;
+        this.batchScheduler = batchEnabled
+                ? Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("bill-batch-"))
+                : null;
+        this.batchSender = batchEnabled
+                ? Executors.newFixedThreadPool(batchSenders, new CustomizableThreadFactory("bill-batch-send-"))
+                : null;
     }
 
     /**
-     * Saves a bill in the accounting service
+     * @return if bills are collected into bulk requests to the accounting service
+     */
+    public boolean isBatchEnabled() {
+        return batchEnabled;
+    }
+
+    /**
+     * Saves a bill in the accounting service and waits for it.
+     * While the circuit breaker of the accounting service is open the call fails without contacting the service.
+     * If batching is enabled the bill is collected with the bills of other callers for at most the batch window and
+     * submitted together with them in one bulk request.
      *
      * @param bill the bill that gets saved in the service
+     * @param idempotencyKey the key the accounting service recognizes the bill by when it is saved again
      * @return the bill returned by the accounting service
      */
-    public Bill saveBill(Bill bill) throws ServiceUnavailableException {
+    public Bill saveBill(Bill bill, String idempotencyKey) throws ServiceUnavailableException {
         try {
-            BillDTO billDTO = BillMapper.INSTANCE.billToBillDTO(bill);
-            HttpEntity<BillDTO> request = new HttpEntity<>(billDTO);
-            return BillMapper.INSTANCE.billDTOtoBill(restTemplate.postForObject(accountingServiceUrl, request, BillDTO.class));
+            return submitBill(bill, idempotencyKey).get();
+        } catch (ExecutionException ex) {
+            throw new ServiceUnavailableException(UNAVAILABLE);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ServiceUnavailableException(UNAVAILABLE);
+        }
+    }
+
+    /**
+     * Saves a bill in the accounting service without waiting for it, so a caller can submit several bills into the
+     * same batch. If batching is enabled the returned bill completes at the latest one batch window after the bill
+     * was submitted plus the time of the bulk request, otherwise the bill is saved before this method returns.
+     *
+     * @param bill the bill that gets saved in the service
+     * @param idempotencyKey the key the accounting service recognizes the bill by when it is saved again
+     * @return the pending bill returned by the accounting service, failed if the service did not save it
+     */
+    public CompletableFuture<Bill> submitBill(Bill bill, String idempotencyKey) {
+        if (!batchEnabled) {
+            try {
+                BillDTO billDTO = BillMapper.INSTANCE.billToBillDTO(bill);
+                HttpHeaders headers = new HttpHeaders();
+                headers.set(IDEMPOTENCY_KEY, idempotencyKey);
+                HttpEntity<BillDTO> request = new HttpEntity<>(billDTO, headers);
+                return CompletableFuture.completedFuture(BillMapper.INSTANCE.billDTOtoBill(saveBillTimer.record(() ->
+                        circuitBreaker.executeSupplier(() -> bulkhead.executeSupplier(() ->
+                                restTemplate.postForObject(accountingServiceUrl, request, BillDTO.class))))));
+            } catch (Exception ex) {
+                CompletableFuture<Bill> failed = new CompletableFuture<>();
+                failed.completeExceptionally(new ServiceUnavailableException(UNAVAILABLE));
+                return failed;
+            }
+        }
+        PendingBill pendingBill = new PendingBill(bill, idempotencyKey);
+        List<PendingBill> fullBatch = null;
+        synchronized (this) {
+            batch.add(pendingBill);
+            if (batch.size() == 1) {
+                // The timer only submits the batch it was started for, not a later one if the size limit took it
+                List<PendingBill> windowBatch = batch;
+                batchScheduler.schedule(() -> submitBatch(windowBatch), batchWindow.toMillis(), TimeUnit.MILLISECONDS);
+            }
+            if (batch.size() >= batchMaxSize) {
+                fullBatch = takeBatch();
+            }
+        }
+        if (fullBatch != null) {
+            send(fullBatch);
+        }
+        return pendingBill.result;
+    }
+
+    /**
+     * Saves several bills in the accounting service with one bulk request.
+     * Either all bills are saved or none of them. The idempotency keys of the bills are sent in the order of the bills.
+     *
+     * @param bills the bills that get saved in the service
+     * @return the bills returned by the accounting service, in the order of the given bills
+     */
+    private List<Bill> saveBills(List<PendingBill> bills) throws ServiceUnavailableException {
+        BillDTO[] savedBills;
+        try {
+            BillDTO[] billDTOs = bills.stream().map(pendingBill -> BillMapper.INSTANCE.billToBillDTO(pendingBill.bill)).toArray(BillDTO[]::new);
+            HttpHeaders headers = new HttpHeaders();
+            headers.put(IDEMPOTENCY_KEY, bills.stream().map(pendingBill -> pendingBill.idempotencyKey).collect(Collectors.toList()));
+            HttpEntity<BillDTO[]> request = new HttpEntity<>(billDTOs, headers);
+            savedBills = saveBillsTimer.record(() -> circuitBreaker.executeSupplier(() -> bulkhead.executeSupplier(() ->
+                    restTemplate.postForObject(accountingServiceBulkUrl, request, BillDTO[].class))));
         } catch (Exception ex) {
-            throw new ServiceUnavailableException("AccountingService is currently unavailable. Please try again later.");
+            throw new ServiceUnavailableException(UNAVAILABLE);
+        }
+        if (savedBills == null || savedBills.length != bills.size()) {
+            throw new ServiceUnavailableException("AccountingService did not save all bills of the batch.");
+        }
+        List<Bill> result = new ArrayList<>(savedBills.length);
+        for (BillDTO savedBill : savedBills) {
+            result.add(BillMapper.INSTANCE.billDTOtoBill(savedBill));
+        }
+        return result;
+    }
+
+    private synchronized List<PendingBill> takeBatch() {
+        List<PendingBill> taken = batch;
+        batch = new ArrayList<>();
+        return taken;
+    }
+
+    /**
+     * Submits the bills collected so far, called when the window of the oldest bill in the batch has passed
+     * @param windowBatch the batch the window was started for, nothing is submitted if it was already taken
+     */
+    private void submitBatch(List<PendingBill> windowBatch) {
+        List<PendingBill> taken;
+        synchronized (this) {
+            if (batch != windowBatch) {
+                return;
+            }
+            taken = takeBatch();
+        }
+        send(taken);
+    }
+
+    /**
+     * Sends the bulk request of a batch on the batchSender, so a slow request neither blocks the windows of the
+     * following batches nor the caller that filled a batch
+     */
+    private void send(List<PendingBill> pendingBills) {
+        try {
+            batchSender.execute(() -> submit(pendingBills));
+        } catch (RejectedExecutionException ex) {
+            pendingBills.forEach(pendingBill -> pendingBill.result.completeExceptionally(new ServiceUnavailableException(UNAVAILABLE)));
+        }
+    }
+
+    private void submit(List<PendingBill> pendingBills) {
+        try {
+            List<Bill> savedBills = saveBills(pendingBills);
+            for (int i = 0; i < pendingBills.size(); i++) {
+                pendingBills.get(i).result.complete(savedBills.get(i));
+            }
+        } catch (Exception ex) {
+            pendingBills.forEach(pendingBill -> pendingBill.result.completeExceptionally(ex));
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (batchScheduler == null) {
+            return;
+        }
+        batchScheduler.shutdown();
+        List<PendingBill> taken = takeBatch();
+        if (!taken.isEmpty()) {
+            send(taken);
+        }
+        batchSender.shutdown();
+    }
+
+    private static final class PendingBill {
+        private final Bill bill;
+        private final String idempotencyKey;
+        private final CompletableFuture<Bill> result = new CompletableFuture<>();
+
+        private PendingBill(Bill bill, String idempotencyKey) {
+            this.bill = bill;
+            this.idempotencyKey = idempotencyKey;
         }
     }
 }
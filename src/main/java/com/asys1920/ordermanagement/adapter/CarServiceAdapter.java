@@ -3,38 +3,143 @@ package com.asys1920.ordermanagement.adapter;
 import com.asys1920.dto.CarDTO;
 import com.asys1920.mapper.CarMapper;
 import com.asys1920.model.Car;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.RestTemplate;
 
 import javax.naming.ServiceUnavailableException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
 
 @Component
 public class CarServiceAdapter {
     @Value("${car.url}")
     private String carServiceUrl;
     final RestTemplate restTemplate;
+    private final AsyncCache<Long, Car> cars;
+    private final CircuitBreaker circuitBreaker;
+    private final Bulkhead bulkhead;
+    private final RequestHedging requestHedging;
+    final DownstreamTimer downstreamTimer;
 
-    public CarServiceAdapter(RestTemplateBuilder restTemplateBuilder) {
-        this.restTemplate = restTemplateBuilder.build();
+    public CarServiceAdapter(@Qualifier("carRestTemplate") RestTemplate restTemplate,
+                             @Value("${car.cache.max-size}") long cacheMaxSize,
+                             @Value("${car.cache.ttl}") Duration cacheTtl,
+                             MeterRegistry meterRegistry,
+                             CircuitBreakerRegistry circuitBreakerRegistry,
+                             BulkheadRegistry bulkheadRegistry,
+                             RequestHedging requestHedging) {
+        this.restTemplate = restTemplate;
+        this.circuitBreaker = circuitBreakerRegistry.circuitBreaker("car");
+        this.bulkhead = bulkheadRegistry.bulkhead("car");
+        this.requestHedging = requestHedging;
+        this.downstreamTimer = new DownstreamTimer(meterRegistry, "car", "getCar");
+        this.cars = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfterWrite(cacheTtl)
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, cars, "cars");
     }
 
 
     /**
-     * Fetches a car from the car service
+     * Fetches a car from the cache or, if it is not cached, from the car service.
+     * Concurrent requests for a car that is not cached wait for a single call to the car service.
+     * The call runs on the thread that requested the car first, outside of the locks of the cache, so a virtual
+     * thread waiting for the car service is not pinned to its carrier thread.
+     * Slow calls are hedged if hedging is enabled.
+     * While the circuit breaker of the car service is open the call fails without contacting the service.
      *
      * @param carId the id to search for
      * @return the car from the service
      */
     public Car getCar(Long carId) throws ServiceUnavailableException {
-        try {
-            String temp = carServiceUrl + carId;
-            CarDTO carDTO = restTemplate
-                    .getForObject(temp, CarDTO.class);
-            return CarMapper.INSTANCE.carDTOToCar(carDTO);
-        } catch (Exception ex) {
+        CompletableFuture<Car> fetched = new CompletableFuture<>();
+        CompletableFuture<Car> car = cars.get(carId, (id, executor) -> fetched);
+        if (car == fetched) {
+            try {
+                fetched.complete(fetchCar(carId));
+            } catch (Exception ex) {
+                // A future completed with null is removed from the cache without logging the failure again,
+                // the next request calls the car service again
+                fetched.complete(null);
+            } catch (Throwable ex) {
+                // Fails the requests waiting for the same id instead of leaving them waiting forever,
+                // the failed future is removed from the cache
+                fetched.completeExceptionally(ex);
+                throw ex;
+            }
+        }
+        Car cached = car.join();
+        if (cached == null) {
             throw new ServiceUnavailableException("CarService is currently unavailable. Please try again later.");
         }
+        return cached;
+    }
+
+    /**
+     * @param carId the id of the car
+     * @return the cached car or null if the car is not cached
+     */
+    Car getCachedCar(Long carId) {
+        CompletableFuture<Car> car = cars.getIfPresent(carId);
+        return car == null || !car.isDone() ? null : car.join();
+    }
+
+    /**
+     * Adds a car that was fetched without this adapter to the cache
+     * @param carId the id of the car
+     * @param car the fetched car
+     */
+    void cacheCar(Long carId, Car car) {
+        cars.put(carId, CompletableFuture.completedFuture(car));
+    }
+
+    /**
+     * Removes a car from the cache, the next request fetches it from the car service again
+     *
+     * @param carId the id of the car to be evicted
+     */
+    public void evictCar(Long carId) {
+        cars.synchronous().invalidate(carId);
+    }
+
+    /**
+     * Removes all cars from the cache
+     */
+    public void evictAllCars() {
+        cars.synchronous().invalidateAll();
+    }
+
+    /**
+     * @return the hit, miss and eviction statistics of the car cache
+     */
+    public CacheStats getCacheStats() {
+        return cars.synchronous().stats();
+    }
+
+    /**
+     * @return the number of cars that are currently cached
+     */
+    public long getCacheSize() {
+        return cars.synchronous().estimatedSize();
+    }
+
+    private Car fetchCar(Long carId) {
+        String temp = carServiceUrl + carId;
+        CarDTO carDTO = downstreamTimer.record(() -> requestHedging.read("car", () -> circuitBreaker.executeSupplier(() -> bulkhead.executeSupplier(() -> restTemplate
+                .getForObject(temp, CarDTO.class)))));
+        return CarMapper.INSTANCE.carDTOToCar(carDTO);
     }
 }
@@ -0,0 +1,80 @@
+package com.asys1920.ordermanagement.adapter;
+
+import java.time.Duration;
+
+/**
+ * Point in time until which the calls of a request to the other services have to be completed.
+ * While a deadline is set for the current thread the timeouts of its http calls are shortened to the remaining time.
+ */
+public final class Deadline {
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+    private final long expiresAt;
+
+    private Deadline(long expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * @param budget the time the calls may take from now on
+     * @return a deadline that expires after the budget
+     */
+    public static Deadline after(Duration budget) {
+        return new Deadline(System.nanoTime() + budget.toNanos());
+    }
+
+    /**
+     * @return the deadline of the current thread or null if no deadline is set
+     */
+    public static Deadline current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * @return the time left until the deadline expires, never negative
+     */
+    public Duration remaining() {
+        return Duration.ofNanos(Math.max(0, expiresAt - System.nanoTime()));
+    }
+
+    public boolean isExpired() {
+        return expiresAt - System.nanoTime() <= 0;
+    }
+
+    /**
+     * Shortens a timeout to the time left until the deadline of the current thread expires
+     * @param timeout the configured timeout in milliseconds
+     * @return the shorter of the timeout and the remaining time, at least one millisecond
+     */
+    public static int shorten(int timeout) {
+        Deadline deadline = current();
+        if (deadline == null) {
+            return timeout;
+        }
+        long remaining = Math.max(1, deadline.remaining().toMillis());
+        return (int) Math.min(timeout, remaining);
+    }
+
+    /**
+     * Runs a call with this deadline set for the current thread
+     * @param call the call to run
+     * @return the result of the call
+     */
+    public <T, E extends Exception> T run(Call<T, E> call) throws E {
+        Deadline previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return call.call();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface Call<T, E extends Exception> {
+        T call() throws E;
+    }
+}
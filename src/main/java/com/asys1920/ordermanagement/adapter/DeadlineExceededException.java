@@ -0,0 +1,21 @@
+package com.asys1920.ordermanagement.adapter;
+
+/**
+ * Thrown when a call to another service is not started, or not waited for any longer, because the deadline of the
+ * request expired
+ */
+public class DeadlineExceededException extends RuntimeException {
+    public DeadlineExceededException(String downstream) {
+        this(downstream, false);
+    }
+
+    /**
+     * @param downstream the name of the called service
+     * @param started if the call was started and its answer did not arrive before the deadline
+     */
+    public DeadlineExceededException(String downstream, boolean started) {
+        super(started
+                ? "The deadline expired while waiting for " + downstream
+                : "The deadline expired before " + downstream + " could be called");
+    }
+}
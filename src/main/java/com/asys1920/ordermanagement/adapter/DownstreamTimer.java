@@ -0,0 +1,99 @@
+package com.asys1920.ordermanagement.adapter;
+
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Records the latency of the calls of an adapter to a downstream service, tagged by the outcome of the call.
+ * The timers of all outcomes are registered up front, so recording a call does not allocate.
+ * Histogram buckets and service level objectives are configured with the
+ * {@code management.metrics.distribution.*.order} properties.
+ */
+final class DownstreamTimer {
+    static final String METRIC = "order.downstream.calls";
+
+    private final Timer success;
+    private final Timer notFound;
+    private final Timer rejected;
+    private final Timer timeout;
+    private final Timer error;
+
+    /**
+     * @param meterRegistry the registry the timers are registered in
+     * @param downstream the name of the called service
+     * @param operation the name of the call
+     */
+    DownstreamTimer(MeterRegistry meterRegistry, String downstream, String operation) {
+        this.success = timer(meterRegistry, downstream, operation, "success");
+        this.notFound = timer(meterRegistry, downstream, operation, "not_found");
+        this.rejected = timer(meterRegistry, downstream, operation, "rejected");
+        this.timeout = timer(meterRegistry, downstream, operation, "timeout");
+        this.error = timer(meterRegistry, downstream, operation, "error");
+    }
+
+    /**
+     * Runs a blocking call and records its latency
+     * @param call the call to the downstream service
+     * @return the result of the call
+     */
+    <T> T record(Supplier<T> call) {
+        long start = System.nanoTime();
+        try {
+            T result = call.get();
+            success.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return result;
+        } catch (RuntimeException ex) {
+            outcome(ex).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            throw ex;
+        }
+    }
+
+    /**
+     * Records the latency of a non-blocking call from its subscription to its completion. Cancelled calls are not recorded.
+     * @param call the call to the downstream service
+     * @return the call
+     */
+    <T> Mono<T> record(Mono<T> call) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return call
+                    .doOnSuccess(result -> success.record(System.nanoTime() - start, TimeUnit.NANOSECONDS))
+                    .doOnError(ex -> outcome(ex).record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        });
+    }
+
+    private Timer outcome(Throwable ex) {
+        if (ex instanceof HttpClientErrorException.NotFound || ex instanceof WebClientResponseException.NotFound) {
+            return notFound;
+        }
+        if (ex instanceof CallNotPermittedException || ex instanceof BulkheadFullException) {
+            // Failed fast by the circuit breaker or bulkhead, the service was not called
+            return rejected;
+        }
+        if (ex instanceof DeadlineExceededException || ex instanceof TimeoutException
+                || ex instanceof ResourceAccessException && ex.getCause() instanceof SocketTimeoutException) {
+            return timeout;
+        }
+        return error;
+    }
+
+    private static Timer timer(MeterRegistry meterRegistry, String downstream, String operation, String outcome) {
+        return Timer.builder(METRIC)
+                .tag("downstream", downstream)
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .description("Latency of the calls to the other services")
+                .register(meterRegistry);
+    }
+}
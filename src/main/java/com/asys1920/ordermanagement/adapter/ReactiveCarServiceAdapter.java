@@ -0,0 +1,70 @@
+package com.asys1920.ordermanagement.adapter;
+
+import com.asys1920.dto.CarDTO;
+import com.asys1920.mapper.CarMapper;
+import com.asys1920.model.Car;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.reactor.bulkhead.operator.BulkheadOperator;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import javax.naming.ServiceUnavailableException;
+
+/**
+ * Non-blocking counterpart of the {@link CarServiceAdapter}. Shares its cache, circuit breaker and bulkhead,
+ * so both execution modes see the same state of the car service.
+ */
+@Component
+@ConditionalOnProperty("order.reactive.enabled")
+public class ReactiveCarServiceAdapter {
+    @Value("${car.url}")
+    private String carServiceUrl;
+    final WebClient webClient;
+    private final CarServiceAdapter carServiceAdapter;
+    private final CircuitBreaker circuitBreaker;
+    private final Bulkhead bulkhead;
+
+    public ReactiveCarServiceAdapter(@Qualifier("carWebClient") WebClient webClient,
+                                     CarServiceAdapter carServiceAdapter,
+                                     CircuitBreakerRegistry circuitBreakerRegistry,
+                                     BulkheadRegistry bulkheadRegistry) {
+        this.webClient = webClient;
+        this.carServiceAdapter = carServiceAdapter;
+        this.circuitBreaker = circuitBreakerRegistry.circuitBreaker("car");
+        this.bulkhead = bulkheadRegistry.bulkhead("car");
+    }
+
+    /**
+     * Fetches a car from the cache or, if it is not cached, from the car service without blocking the caller.
+     * While the circuit breaker of the car service is open the call fails without contacting the service.
+     *
+     * @param carId the id to search for
+     * @return the car from the service, fails with a {@link ServiceUnavailableException}
+     */
+    public Mono<Car> getCar(Long carId) {
+        return Mono.defer(() -> {
+            Car cached = carServiceAdapter.getCachedCar(carId);
+            if (cached != null) {
+                return Mono.just(cached);
+            }
+            return webClient.get()
+                    .uri(carServiceUrl + carId)
+                    .retrieve()
+                    .bodyToMono(CarDTO.class)
+                    .map(CarMapper.INSTANCE::carDTOToCar)
+                    .transformDeferred(BulkheadOperator.of(bulkhead))
+                    .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+                    .as(carServiceAdapter.downstreamTimer::record)
+                    .doOnNext(car -> carServiceAdapter.cacheCar(carId, car));
+        }).onErrorMap(ex -> new ServiceUnavailableException("CarService is currently unavailable. Please try again later."))
+                .switchIfEmpty(Mono.error(() -> new ServiceUnavailableException("CarService returned no car.")));
+    }
+}
@@ -0,0 +1,76 @@
+package com.asys1920.ordermanagement.adapter;
+
+import com.asys1920.dto.UserDTO;
+import com.asys1920.mapper.UserMapper;
+import com.asys1920.model.User;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.reactor.bulkhead.operator.BulkheadOperator;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import javax.naming.ServiceUnavailableException;
+import java.util.Optional;
+
+/**
+ * Non-blocking counterpart of the {@link UserServiceAdapter}. Shares its cache, circuit breaker and bulkhead,
+ * so both execution modes see the same state of the user service.
+ */
+@Component
+@ConditionalOnProperty("order.reactive.enabled")
+public class ReactiveUserServiceAdapter {
+    @Value("${user.url}")
+    private String userServiceUrl;
+    final WebClient webClient;
+    private final UserServiceAdapter userServiceAdapter;
+    private final CircuitBreaker circuitBreaker;
+    private final Bulkhead bulkhead;
+
+    public ReactiveUserServiceAdapter(@Qualifier("userWebClient") WebClient webClient,
+                                      UserServiceAdapter userServiceAdapter,
+                                      CircuitBreakerRegistry circuitBreakerRegistry,
+                                      BulkheadRegistry bulkheadRegistry) {
+        this.webClient = webClient;
+        this.userServiceAdapter = userServiceAdapter;
+        this.circuitBreaker = circuitBreakerRegistry.circuitBreaker("user");
+        this.bulkhead = bulkheadRegistry.bulkhead("user");
+    }
+
+    /**
+     * Fetches a user from the cache or, if it is not cached, from the user service without blocking the caller.
+     * Users unknown to the user service are cached as well.
+     * While the circuit breaker of the user service is open the call fails without contacting the service.
+     * @param userId id of the user to be fetched
+     * @return the user, fails with a {@link ServiceUnavailableException}
+     */
+    public Mono<User> getUser(Long userId) {
+        return Mono.defer(() -> {
+            Optional<User> cached = userServiceAdapter.getCachedUser(userId);
+            if (cached != null) {
+                return Mono.just(cached);
+            }
+            return webClient.get()
+                    .uri(userServiceUrl + userId)
+                    .retrieve()
+                    .bodyToMono(UserDTO.class)
+                    .map(userDTO -> Optional.ofNullable(UserMapper.INSTANCE.userDTOtoUser(userDTO)))
+                    .defaultIfEmpty(Optional.empty())
+                    // An unknown user is an answer of the user service, not a failure of it
+                    .onErrorResume(WebClientResponseException.NotFound.class, ex -> Mono.just(Optional.empty()))
+                    .transformDeferred(BulkheadOperator.of(bulkhead))
+                    .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+                    .as(userServiceAdapter.downstreamTimer::record)
+                    .doOnNext(user -> userServiceAdapter.cacheUser(userId, user));
+        }).onErrorMap(ex -> new ServiceUnavailableException("UserService is currently unavailable. Please try again later."))
+                .flatMap(user -> user.map(Mono::just)
+                        .orElseGet(() -> Mono.error(new ServiceUnavailableException("UserService does not know the requested user."))));
+    }
+}
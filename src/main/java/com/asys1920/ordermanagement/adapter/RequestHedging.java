@@ -0,0 +1,219 @@
+package com.asys1920.ordermanagement.adapter;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Hedges idempotent reads from the other services. If a read did not complete after the configured percentile of
+ * the recent latencies of its service, a second identical read is sent and the first answer wins.
+ */
+@Component
+public class RequestHedging {
+    private static final String METRIC_PREFIX = "http.client.hedging";
+
+    private final boolean enabled;
+    private final double percentile;
+    private final Duration minDelay;
+    private final MeterRegistry meterRegistry;
+    private final ThreadPoolExecutor executor;
+    private final ScheduledThreadPoolExecutor scheduler;
+    private final ConcurrentMap<String, Downstream> downstreams = new ConcurrentHashMap<>();
+
+    public RequestHedging(@Value("${http.hedging.enabled}") boolean enabled,
+                          @Value("${http.hedging.percentile}") double percentile,
+                          @Value("${http.hedging.min-delay}") Duration minDelay,
+                          @Value("${http.hedging.pool-size}") int poolSize,
+                          MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.percentile = percentile;
+        this.minDelay = minDelay;
+        this.meterRegistry = meterRegistry;
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(poolSize), new CustomizableThreadFactory("hedging-"));
+        this.executor.allowCoreThreadTimeOut(true);
+        this.scheduler = new ScheduledThreadPoolExecutor(1, new CustomizableThreadFactory("hedging-timer-"));
+        // The timer of a read that completed before its hedge is canceled and removed, not kept until it is due
+        this.scheduler.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Runs a read, hedged if hedging is enabled, within the deadline of the current thread
+     * @param downstream the name of the service that is read from
+     * @param read the idempotent read
+     * @return the result of the read that completed first
+     * @throws DeadlineExceededException if the deadline of the current thread expired before the read was started or
+     * before it completed
+     */
+    public <T> T read(String downstream, Supplier<T> read) {
+        Deadline deadline = Deadline.current();
+        if (deadline != null && deadline.isExpired()) {
+            throw new DeadlineExceededException(downstream);
+        }
+        Downstream statistics = downstreams.computeIfAbsent(downstream, Downstream::new);
+        if (!enabled) {
+            return statistics.timed(read);
+        }
+        statistics.requests.increment();
+        HedgedRead<T> hedgedRead = new HedgedRead<>(statistics, read, deadline);
+        try {
+            executor.execute(() -> hedgedRead.attempt(false));
+        } catch (RejectedExecutionException ex) {
+            // No capacity left to hedge, read without it on the calling thread
+            return statistics.timed(read);
+        }
+        ScheduledFuture<?> hedgeTimer = scheduler.schedule(() -> {
+            if (hedgedRead.startHedge()) {
+                statistics.hedges.increment();
+                try {
+                    executor.execute(() -> hedgedRead.attempt(true));
+                } catch (RejectedExecutionException ex) {
+                    hedgedRead.hedgeRejected(ex);
+                }
+            }
+        }, statistics.hedgeDelay(), TimeUnit.NANOSECONDS);
+        hedgedRead.result.whenComplete((value, ex) -> hedgeTimer.cancel(false));
+        try {
+            return deadline == null
+                    ? hedgedRead.result.get()
+                    : hedgedRead.result.get(deadline.remaining().toNanos(), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            if (ex.getCause() instanceof Error) {
+                throw (Error) ex.getCause();
+            }
+            throw new IllegalStateException(ex.getCause());
+        } catch (TimeoutException ex) {
+            throw new DeadlineExceededException(downstream, true);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new DeadlineExceededException(downstream, true);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        scheduler.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    /**
+     * Latencies and hedging counters of a single downstream service
+     */
+    private class Downstream {
+        private final Timer latency;
+        private final Counter requests;
+        private final Counter hedges;
+        private final Counter wins;
+
+        Downstream(String name) {
+            this.latency = Timer.builder(METRIC_PREFIX + ".latency")
+                    .tag("downstream", name)
+                    .publishPercentiles(percentile)
+                    .description("Latency of single reads, its percentile is the delay before a read is hedged")
+                    .register(meterRegistry);
+            this.requests = meterRegistry.counter(METRIC_PREFIX + ".requests", "downstream", name);
+            this.hedges = meterRegistry.counter(METRIC_PREFIX + ".hedges", "downstream", name);
+            this.wins = meterRegistry.counter(METRIC_PREFIX + ".wins", "downstream", name);
+        }
+
+        <T> T timed(Supplier<T> read) {
+            return latency.record(read);
+        }
+
+        long hedgeDelay() {
+            long delay = minDelay.toNanos();
+            for (ValueAtPercentile value : latency.takeSnapshot().percentileValues()) {
+                delay = Math.max(delay, (long) value.value(TimeUnit.NANOSECONDS));
+            }
+            return delay;
+        }
+    }
+
+    /**
+     * A read with up to two attempts, the first successful attempt completes the result
+     */
+    private static class HedgedRead<T> {
+        private final Downstream downstream;
+        private final Supplier<T> read;
+        private final Deadline deadline;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private int attempts = 1;
+        private int failures;
+        private boolean succeeded;
+
+        HedgedRead(Downstream downstream, Supplier<T> read, Deadline deadline) {
+            this.downstream = downstream;
+            this.read = read;
+            this.deadline = deadline;
+        }
+
+        void attempt(boolean hedge) {
+            try {
+                T value = deadline == null ? downstream.timed(read) : deadline.run(() -> downstream.timed(read));
+                if (firstSuccess()) {
+                    if (hedge) {
+                        downstream.wins.increment();
+                    }
+                    result.complete(value);
+                }
+            } catch (Throwable ex) {
+                // Errors as well, the caller waits for the result until one of the attempts completes it
+                failed(ex);
+            }
+        }
+
+        private synchronized boolean firstSuccess() {
+            boolean first = !succeeded;
+            succeeded = true;
+            return first;
+        }
+
+        /**
+         * @return if a hedge should be sent, i.e. the read is still running and did not fail yet
+         */
+        synchronized boolean startHedge() {
+            if (succeeded || failures > 0) {
+                return false;
+            }
+            attempts++;
+            return true;
+        }
+
+        void hedgeRejected(RuntimeException ex) {
+            failed(ex);
+        }
+
+        private void failed(Throwable ex) {
+            boolean lastAttempt;
+            synchronized (this) {
+                failures++;
+                lastAttempt = failures == attempts;
+            }
+            if (lastAttempt) {
+                result.completeExceptionally(ex);
+            }
+        }
+    }
+}
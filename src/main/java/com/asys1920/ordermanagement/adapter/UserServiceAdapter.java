@@ -3,35 +3,154 @@ package com.asys1920.ordermanagement.adapter;
 import com.asys1920.dto.UserDTO;
 import com.asys1920.mapper.UserMapper;
 import com.asys1920.model.User;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 
 import javax.naming.ServiceUnavailableException;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 @Component
 public class UserServiceAdapter {
     @Value("${user.url}")
     private String userServiceUrl;
     final RestTemplate restTemplate;
+    private final AsyncCache<Long, Optional<User>> users;
+    private final CircuitBreaker circuitBreaker;
+    private final Bulkhead bulkhead;
+    private final RequestHedging requestHedging;
+    final DownstreamTimer downstreamTimer;
 
-    public UserServiceAdapter(RestTemplateBuilder restTemplateBuilder) {
-        this.restTemplate = restTemplateBuilder.build();
+    public UserServiceAdapter(@Qualifier("userRestTemplate") RestTemplate restTemplate,
+                              @Value("${user.cache.max-size}") long cacheMaxSize,
+                              @Value("${user.cache.ttl}") Duration cacheTtl,
+                              @Value("${user.cache.negative-ttl}") Duration negativeCacheTtl,
+                              MeterRegistry meterRegistry,
+                              CircuitBreakerRegistry circuitBreakerRegistry,
+                              BulkheadRegistry bulkheadRegistry,
+                              RequestHedging requestHedging) {
+        this.restTemplate = restTemplate;
+        this.circuitBreaker = circuitBreakerRegistry.circuitBreaker("user");
+        this.bulkhead = bulkheadRegistry.bulkhead("user");
+        this.requestHedging = requestHedging;
+        this.downstreamTimer = new DownstreamTimer(meterRegistry, "user", "getUser");
+        this.users = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfter(new UserExpiry(cacheTtl, negativeCacheTtl))
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, users, "users");
     }
 
     /**
-     * Fetches a user from the user service
+     * Fetches a user from the cache or, if it is not cached, from the user service.
+     * Users unknown to the user service are cached as well, but for a shorter time.
+     * The call runs outside of the locks of the cache, so a virtual thread waiting for the user service is not pinned.
+     * Slow calls are hedged if hedging is enabled.
+     * While the circuit breaker of the user service is open the call fails without contacting the service.
      * @param userId id of the user to be fetched
      * @return the use object associated with the given id
      */
     public User getUser(Long userId) throws ServiceUnavailableException {
-        try {
-            UserDTO userDTO = restTemplate
-                    .getForObject(userServiceUrl + userId, UserDTO.class);
-            return UserMapper.INSTANCE.userDTOtoUser(userDTO);
-        } catch (Exception ex) {
+        CompletableFuture<Optional<User>> fetched = new CompletableFuture<>();
+        CompletableFuture<Optional<User>> pending = users.get(userId, (id, executor) -> fetched);
+        if (pending == fetched) {
+            try {
+                fetched.complete(fetchUser(userId));
+            } catch (Exception ex) {
+                // A future completed with null is removed from the cache without logging the failure again
+                fetched.complete(null);
+            } catch (Throwable ex) {
+                // Fails the requests waiting for the same id instead of leaving them waiting forever,
+                // the failed future is removed from the cache
+                fetched.completeExceptionally(ex);
+                throw ex;
+            }
+        }
+        Optional<User> user = pending.join();
+        if (user == null) {
             throw new ServiceUnavailableException("UserService is currently unavailable. Please try again later.");
         }
+        if (!user.isPresent()) {
+            throw new ServiceUnavailableException("UserService does not know the requested user.");
+        }
+        return user.get();
+    }
+
+    /**
+     * @param userId the id of the user
+     * @return the cached user, empty if the user is cached as unknown or null if the user is not cached
+     */
+    Optional<User> getCachedUser(Long userId) {
+        CompletableFuture<Optional<User>> user = users.getIfPresent(userId);
+        return user == null || !user.isDone() ? null : user.join();
+    }
+
+    /**
+     * Adds a user that was fetched without this adapter to the cache
+     * @param userId the id of the user
+     * @param user the fetched user, empty if the user service does not know the user
+     */
+    void cacheUser(Long userId, Optional<User> user) {
+        users.put(userId, CompletableFuture.completedFuture(user));
+    }
+
+    /**
+     * Removes a user from the cache, e.g. when the user got banned or deactivated
+     * @param userId id of the user to be evicted
+     */
+    public void evictUser(Long userId) {
+        users.synchronous().invalidate(userId);
+    }
+
+    private Optional<User> fetchUser(Long userId) {
+        try {
+            UserDTO userDTO = downstreamTimer.record(() -> requestHedging.read("user", () -> circuitBreaker.executeSupplier(() -> bulkhead.executeSupplier(() -> restTemplate
+                    .getForObject(userServiceUrl + userId, UserDTO.class)))));
+            return Optional.ofNullable(UserMapper.INSTANCE.userDTOtoUser(userDTO));
+        } catch (HttpClientErrorException.NotFound ex) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Expires known users after the regular and unknown users after the negative time to live
+     */
+    private static class UserExpiry implements Expiry<Long, Optional<User>> {
+        private final long ttlNanos;
+        private final long negativeTtlNanos;
+
+        UserExpiry(Duration ttl, Duration negativeTtl) {
+            this.ttlNanos = ttl.toNanos();
+            this.negativeTtlNanos = negativeTtl.toNanos();
+        }
+
+        @Override
+        public long expireAfterCreate(Long userId, Optional<User> user, long currentTime) {
+            return user.isPresent() ? ttlNanos : negativeTtlNanos;
+        }
+
+        @Override
+        public long expireAfterUpdate(Long userId, Optional<User> user, long currentTime, long currentDuration) {
+            return expireAfterCreate(userId, user, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(Long userId, Optional<User> user, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
     }
 }
@@ -2,8 +2,10 @@ package com.asys1920.ordermanagement.advice;
 
 import com.asys1920.ordermanagement.exception.CarNotAvailableException;
 import com.asys1920.ordermanagement.exception.IllegalReservationException;
+import com.asys1920.ordermanagement.exception.OrderAlreadyFinishedException;
 import com.asys1920.ordermanagement.exception.OrderNotFoundException;
 import com.asys1920.ordermanagement.exception.UserMayNotRentException;
+import com.asys1920.ordermanagement.exception.ValidationException;
 import net.minidev.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,7 +30,7 @@ public class ExceptionAdvice extends ResponseEntityExceptionHandler {
         return new ResponseEntity<>(jsonFromException(ex), HttpStatus.UNPROCESSABLE_ENTITY);
     }
 
-    @ExceptionHandler(value = {IllegalReservationException.class})
+    @ExceptionHandler(value = {IllegalReservationException.class, ValidationException.class})
     @ResponseBody
     public ResponseEntity<JSONObject> handleIllegalReservation(Exception ex) {
         LOG.error(ex.getMessage(), ex);
@@ -42,6 +44,13 @@ public class ExceptionAdvice extends ResponseEntityExceptionHandler {
         return new ResponseEntity<>(jsonFromException(ex), HttpStatus.NOT_FOUND);
     }
 
+    @ExceptionHandler(OrderAlreadyFinishedException.class)
+    @ResponseBody
+    public ResponseEntity<JSONObject> handleOrderAlreadyFinished(Exception ex) {
+        LOG.error(ex.getMessage(), ex);
+        return new ResponseEntity<>(jsonFromException(ex), HttpStatus.CONFLICT);
+    }
+
     @ExceptionHandler(ServiceUnavailableException.class)
     @ResponseBody
     public ResponseEntity<JSONObject> handleAdapterNotConnected(Exception ex) {
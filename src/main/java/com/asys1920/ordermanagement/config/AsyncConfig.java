@@ -0,0 +1,31 @@
+package com.asys1920.ordermanagement.config;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.time.Duration;
+
+/**
+ * Runs streamed responses, e.g. the order export, on a bounded pool instead of a new thread per response
+ */
+@Configuration
+public class AsyncConfig implements WebMvcConfigurer {
+    private final AsyncTaskExecutor streamingExecutor;
+    private final Duration timeout;
+
+    public AsyncConfig(@Qualifier("streamingExecutor") AsyncTaskExecutor streamingExecutor,
+                       @Value("${order.export.timeout}") Duration timeout) {
+        this.streamingExecutor = streamingExecutor;
+        this.timeout = timeout;
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(streamingExecutor);
+        configurer.setDefaultTimeout(timeout.toMillis());
+    }
+}
@@ -0,0 +1,63 @@
+package com.asys1920.ordermanagement.config;
+
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.sleuth.instrument.async.TraceableExecutorService;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+
+@Configuration
+public class ExecutorConfig {
+
+    /**
+     * Bounded pool the order service uses to run the lookups of a request concurrently.
+     * In the virtual thread mode every lookup gets its own virtual thread instead, a lookup that waits for a downstream
+     * service does not hold a platform thread then.
+     * The executor is wrapped for tracing here, sleuth would otherwise proxy it and create a new wrapper with its own
+     * bean lookups for every lookup that is started.
+     *
+     * @param poolSize       the number of lookups that may run at the same time
+     * @param queueCapacity  the number of lookups that may wait for a free thread
+     * @param virtualThreads if the lookups should run on virtual threads when the JVM supports them
+     * @param beanFactory    the bean factory the tracing of the lookups is resolved from
+     * @return the executor for downstream lookups
+     */
+    @Bean
+    public Executor lookupExecutor(@Value("${order.lookup.pool-size}") int poolSize,
+                                   @Value("${order.lookup.queue-capacity}") int queueCapacity,
+                                   @Value("${order.virtual-threads.enabled}") boolean virtualThreads,
+                                   BeanFactory beanFactory) {
+        if (virtualThreads && VirtualThreads.isSupported()) {
+            return new TraceableExecutorService(beanFactory, VirtualThreads.newThreadPerTaskExecutor("lookup-"));
+        }
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("lookup-");
+        // A saturated pool runs the lookup on the request thread instead of rejecting the order
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.initialize();
+        return new TraceableExecutorService(beanFactory, executor.getThreadPoolExecutor());
+    }
+
+    /**
+     * Bounded pool that writes streamed responses
+     *
+     * @param poolSize the number of responses that may be streamed at the same time
+     * @return the executor for streamed responses
+     */
+    @Bean
+    public ThreadPoolTaskExecutor streamingExecutor(@Value("${order.export.pool-size}") int poolSize) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(poolSize);
+        executor.setThreadNamePrefix("streaming-");
+        return executor;
+    }
+}
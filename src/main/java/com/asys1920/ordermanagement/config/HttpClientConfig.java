@@ -0,0 +1,144 @@
+package com.asys1920.ordermanagement.config;
+
+import com.asys1920.ordermanagement.adapter.Deadline;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Creates a pooled, keep-alive http client for each downstream service
+ */
+@Configuration
+@EnableConfigurationProperties(HttpClientProperties.class)
+public class HttpClientConfig {
+    private static final String POOL_METRIC = "http.client.pool.connections";
+
+    private final HttpClientProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    public HttpClientConfig(HttpClientProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Bean
+    public CloseableHttpClient carHttpClient() {
+        return pooledHttpClient("car");
+    }
+
+    @Bean
+    public CloseableHttpClient userHttpClient() {
+        return pooledHttpClient("user");
+    }
+
+    @Bean
+    public CloseableHttpClient accountingHttpClient() {
+        return pooledHttpClient("accounting");
+    }
+
+    @Bean
+    public RestTemplate carRestTemplate(RestTemplateBuilder restTemplateBuilder,
+                                        @Qualifier("carHttpClient") CloseableHttpClient httpClient) {
+        return restTemplate(restTemplateBuilder, httpClient);
+    }
+
+    @Bean
+    public RestTemplate userRestTemplate(RestTemplateBuilder restTemplateBuilder,
+                                         @Qualifier("userHttpClient") CloseableHttpClient httpClient) {
+        return restTemplate(restTemplateBuilder, httpClient);
+    }
+
+    @Bean
+    public RestTemplate accountingRestTemplate(RestTemplateBuilder restTemplateBuilder,
+                                               @Qualifier("accountingHttpClient") CloseableHttpClient httpClient) {
+        return restTemplate(restTemplateBuilder, httpClient);
+    }
+
+    private RestTemplate restTemplate(RestTemplateBuilder restTemplateBuilder, CloseableHttpClient httpClient) {
+        return restTemplateBuilder
+                .requestFactory(() -> {
+                    HttpComponentsClientHttpRequestFactory requestFactory = new HttpComponentsClientHttpRequestFactory(httpClient);
+                    requestFactory.setHttpContextFactory((method, uri) -> deadlineContext());
+                    return requestFactory;
+                })
+                .build();
+    }
+
+    /**
+     * Shortens the timeouts of a call to the time left until the deadline of the current thread
+     * @return the context with the shortened timeouts or null to use the configured timeouts
+     */
+    private HttpContext deadlineContext() {
+        if (Deadline.current() == null) {
+            return null;
+        }
+        HttpClientContext context = HttpClientContext.create();
+        context.setRequestConfig(RequestConfig.custom()
+                .setConnectTimeout(Deadline.shorten((int) properties.getConnectTimeout().toMillis()))
+                .setSocketTimeout(Deadline.shorten((int) properties.getReadTimeout().toMillis()))
+                .setConnectionRequestTimeout(Deadline.shorten((int) properties.getPoolAcquireTimeout().toMillis()))
+                .build());
+        return context;
+    }
+
+    /**
+     * Creates a http client with its own connection pool and registers the pool statistics as gauges
+     * @param downstream the name of the downstream service the client connects to
+     * @return the pooled http client
+     */
+    private CloseableHttpClient pooledHttpClient(String downstream) {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(properties.getMaxConnections());
+        connectionManager.setDefaultMaxPerRoute(properties.getMaxConnectionsPerRoute());
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout((int) properties.getConnectTimeout().toMillis())
+                .setSocketTimeout((int) properties.getReadTimeout().toMillis())
+                .setConnectionRequestTimeout((int) properties.getPoolAcquireTimeout().toMillis())
+                .build();
+
+        long keepAlive = properties.getKeepAlive().toMillis();
+        registerPoolGauge(downstream, "leased", connectionManager, PoolStats::getLeased);
+        registerPoolGauge(downstream, "pending", connectionManager, PoolStats::getPending);
+        registerPoolGauge(downstream, "available", connectionManager, PoolStats::getAvailable);
+        registerPoolGauge(downstream, "max", connectionManager, PoolStats::getMax);
+
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy((response, context) -> {
+                    // Use the keep alive the downstream service sends as long as it is shorter than ours
+                    long requested = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return requested > 0 ? Math.min(requested, keepAlive) : keepAlive;
+                })
+                .evictExpiredConnections()
+                .evictIdleConnections(properties.getIdleEviction().toMillis(), TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    private void registerPoolGauge(String downstream, String state, PoolingHttpClientConnectionManager connectionManager,
+                                   ToDoubleFunction<PoolStats> statistic) {
+        Gauge.builder(POOL_METRIC, connectionManager, manager -> statistic.applyAsDouble(manager.getTotalStats()))
+                .tag("downstream", downstream)
+                .tag("state", state)
+                .description("Connections of the pool to the downstream service")
+                .register(meterRegistry);
+    }
+}
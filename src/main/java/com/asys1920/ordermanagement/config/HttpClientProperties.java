@@ -0,0 +1,97 @@
+package com.asys1920.ordermanagement.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Settings of the connection pools to the car, user and accounting service. Every downstream service gets
+ * its own pool with these settings.
+ */
+@ConfigurationProperties(prefix = "http.client")
+public class HttpClientProperties {
+    /**
+     * Maximum number of open connections of a pool
+     */
+    private int maxConnections = 50;
+    /**
+     * Maximum number of open connections to a single host and port
+     */
+    private int maxConnectionsPerRoute = 50;
+    /**
+     * Time an idle connection is kept open unless the downstream service asks for less
+     */
+    private Duration keepAlive = Duration.ofSeconds(30);
+    /**
+     * Time after which idle connections are closed by the eviction thread
+     */
+    private Duration idleEviction = Duration.ofSeconds(60);
+    /**
+     * Time to wait for a connection to be established
+     */
+    private Duration connectTimeout = Duration.ofSeconds(2);
+    /**
+     * Time to wait for data after the request was sent
+     */
+    private Duration readTimeout = Duration.ofSeconds(5);
+    /**
+     * Time to wait for a free connection of the pool
+     */
+    private Duration poolAcquireTimeout = Duration.ofSeconds(1);
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    public int getMaxConnectionsPerRoute() {
+        return maxConnectionsPerRoute;
+    }
+
+    public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+    }
+
+    public Duration getKeepAlive() {
+        return keepAlive;
+    }
+
+    public void setKeepAlive(Duration keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    public Duration getIdleEviction() {
+        return idleEviction;
+    }
+
+    public void setIdleEviction(Duration idleEviction) {
+        this.idleEviction = idleEviction;
+    }
+
+    public Duration getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public void setConnectTimeout(Duration connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public Duration getReadTimeout() {
+        return readTimeout;
+    }
+
+    public void setReadTimeout(Duration readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    public Duration getPoolAcquireTimeout() {
+        return poolAcquireTimeout;
+    }
+
+    public void setPoolAcquireTimeout(Duration poolAcquireTimeout) {
+        this.poolAcquireTimeout = poolAcquireTimeout;
+    }
+}
@@ -0,0 +1,46 @@
+package com.asys1920.ordermanagement.config;
+
+import com.asys1920.ordermanagement.adapter.CarServiceAdapter;
+import com.asys1920.ordermanagement.adapter.UserServiceAdapter;
+import com.asys1920.ordermanagement.service.LookupContext;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.context.annotation.RequestScope;
+
+import java.time.Duration;
+import java.util.concurrent.Executor;
+
+@Configuration
+public class LookupConfig {
+    private final UserServiceAdapter userServiceAdapter;
+    private final CarServiceAdapter carServiceAdapter;
+    private final Executor lookupExecutor;
+    private final MeterRegistry meterRegistry;
+    private final Duration requestDeadline;
+
+    public LookupConfig(UserServiceAdapter userServiceAdapter, CarServiceAdapter carServiceAdapter,
+                        @Qualifier("lookupExecutor") Executor lookupExecutor, MeterRegistry meterRegistry,
+                        @Value("${order.request.deadline}") Duration requestDeadline) {
+        this.userServiceAdapter = userServiceAdapter;
+        this.carServiceAdapter = carServiceAdapter;
+        this.lookupExecutor = lookupExecutor;
+        this.meterRegistry = meterRegistry;
+        this.requestDeadline = requestDeadline;
+    }
+
+    /**
+     * Creates the lookups of a request from dependencies resolved once at startup.
+     * Autowiring the constructor of a request scoped component resolves every dependency and converts the deadline
+     * again for each request, which allocates more than the rest of creating an order.
+     *
+     * @return the lookups of the current request
+     */
+    @Bean
+    @RequestScope
+    public LookupContext lookupContext() {
+        return new LookupContext(userServiceAdapter, carServiceAdapter, lookupExecutor, meterRegistry, requestDeadline);
+    }
+}
@@ -0,0 +1,94 @@
+package com.asys1920.ordermanagement.config;
+
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.framework.Advised;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.repository.Repository;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the latency of the operations of the order service and of the repository methods.
+ * The calls to the other services are recorded by their adapters.
+ * Histogram buckets and service level objectives of all timers are configured with the
+ * {@code management.metrics.distribution.*.order} properties.
+ */
+@Configuration
+public class MetricsConfig {
+    static final String REPOSITORY_METRIC = "order.repository.queries";
+
+    /**
+     * Records the methods annotated with {@link io.micrometer.core.annotation.Timed}, tagged by class, method and
+     * the exception the method failed with
+     */
+    @Bean
+    public TimedAspect timedAspect(MeterRegistry meterRegistry) {
+        return new TimedAspect(meterRegistry);
+    }
+
+    /**
+     * Adds a timer to every Spring Data repository, tagged by the repository, its method and the outcome of the call.
+     * The timer runs before the transaction of the repository method, so it includes the time spent waiting for
+     * a connection and committing.
+     */
+    @Bean
+    public static BeanPostProcessor repositoryMetrics(ObjectProvider<MeterRegistry> meterRegistry) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof Repository && bean instanceof Advised && !((Advised) bean).isFrozen()) {
+                    ((Advised) bean).addAdvice(0, new RepositoryTimer(meterRegistry.getObject(), beanName));
+                }
+                return bean;
+            }
+        };
+    }
+
+    private static class RepositoryTimer implements MethodInterceptor {
+        private final MeterRegistry meterRegistry;
+        private final String repository;
+        private final ConcurrentMap<Method, Timer> successes = new ConcurrentHashMap<>();
+        private final ConcurrentMap<Method, Timer> errors = new ConcurrentHashMap<>();
+
+        RepositoryTimer(MeterRegistry meterRegistry, String repository) {
+            this.meterRegistry = meterRegistry;
+            this.repository = repository;
+        }
+
+        @Override
+        public Object invoke(MethodInvocation invocation) throws Throwable {
+            long start = System.nanoTime();
+            try {
+                Object result = invocation.proceed();
+                timer(successes, invocation.getMethod(), "success").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                return result;
+            } catch (Throwable ex) {
+                timer(errors, invocation.getMethod(), "error").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                throw ex;
+            }
+        }
+
+        private Timer timer(ConcurrentMap<Method, Timer> timers, Method method, String outcome) {
+            Timer timer = timers.get(method);
+            if (timer == null) {
+                timer = timers.computeIfAbsent(method, key -> Timer.builder(REPOSITORY_METRIC)
+                        .tag("repository", repository)
+                        .tag("method", key.getName())
+                        .tag("outcome", outcome)
+                        .description("Latency of the repository methods")
+                        .register(meterRegistry));
+            }
+            return timer;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.asys1920.ordermanagement.config;
+
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * Creates the non-blocking http clients and the repository scheduler of the reactive order endpoints.
+ * The connection pools of the web clients use the same settings as the pools of the blocking http clients.
+ */
+@Configuration
+@ConditionalOnProperty("order.reactive.enabled")
+public class ReactiveConfig {
+    private final HttpClientProperties properties;
+
+    public ReactiveConfig(HttpClientProperties properties) {
+        this.properties = properties;
+    }
+
+    @Bean
+    public WebClient carWebClient(WebClient.Builder webClientBuilder) {
+        return webClient(webClientBuilder, "car");
+    }
+
+    @Bean
+    public WebClient userWebClient(WebClient.Builder webClientBuilder) {
+        return webClient(webClientBuilder, "user");
+    }
+
+    /**
+     * Bounded scheduler the reactive order service runs its blocking repository calls on, so they never block
+     * the event loop of the web clients
+     *
+     * @param poolSize      the number of repository calls that may run at the same time
+     * @param queueCapacity the number of repository calls that may wait for a free thread
+     * @return the scheduler for repository calls
+     */
+    @Bean(destroyMethod = "dispose")
+    public Scheduler repositoryScheduler(@Value("${order.reactive.repository.pool-size}") int poolSize,
+                                         @Value("${order.reactive.repository.queue-capacity}") int queueCapacity) {
+        return Schedulers.newBoundedElastic(poolSize, queueCapacity, "repository");
+    }
+
+    /**
+     * Creates a web client with its own connection pool
+     * @param downstream the name of the downstream service the client connects to
+     * @return the web client
+     */
+    private WebClient webClient(WebClient.Builder webClientBuilder, String downstream) {
+        ConnectionProvider connectionProvider = ConnectionProvider.builder(downstream)
+                .maxConnections(properties.getMaxConnectionsPerRoute())
+                .pendingAcquireTimeout(properties.getPoolAcquireTimeout())
+                .maxIdleTime(properties.getKeepAlive())
+                .build();
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+                .tcpConfiguration(tcpClient -> tcpClient
+                        .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) properties.getConnectTimeout().toMillis()))
+                .responseTimeout(properties.getReadTimeout());
+        return webClientBuilder.clone()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build();
+    }
+}
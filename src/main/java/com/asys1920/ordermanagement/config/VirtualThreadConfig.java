@@ -0,0 +1,50 @@
+package com.asys1920.ordermanagement.config;
+
+import org.apache.coyote.ProtocolHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Runs the request handling of Tomcat on virtual threads, so a request that waits for the user, car or accounting
+ * service does not hold a platform thread. Without Java 21 the service keeps the platform thread pool of Tomcat.
+ */
+@Configuration
+@ConditionalOnProperty("order.virtual-threads.enabled")
+public class VirtualThreadConfig {
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualThreadConfig.class);
+    private ExecutorService requestExecutor;
+
+    public VirtualThreadConfig() {
+        if (!VirtualThreads.isSupported()) {
+            LOG.warn("Virtual threads are enabled but need Java 21 or later, running on {} with platform threads",
+                    System.getProperty("java.version"));
+        }
+    }
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadProtocolHandlerCustomizer() {
+        return protocolHandler -> {
+            if (VirtualThreads.isSupported()) {
+                requestExecutor = VirtualThreads.newThreadPerTaskExecutor("http-virtual-");
+                protocolHandler.setExecutor(requestExecutor);
+            }
+        };
+    }
+
+    /**
+     * Tomcat does not stop an executor it did not create itself
+     */
+    @PreDestroy
+    void shutdown() {
+        if (requestExecutor != null) {
+            requestExecutor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.asys1920.ordermanagement.config;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates executors that run every task on a new virtual thread. Virtual threads need Java 21, the service is built
+ * for Java 11, so they are created through reflection and are only available when the service runs on Java 21 or later.
+ */
+public final class VirtualThreads {
+    private static final Method OF_VIRTUAL = method(Thread.class, "ofVirtual");
+    private static final Method NAME = OF_VIRTUAL == null ? null : method(OF_VIRTUAL.getReturnType(), "name", String.class, long.class);
+    private static final Method FACTORY = OF_VIRTUAL == null ? null : method(OF_VIRTUAL.getReturnType(), "factory");
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR = method(Executors.class, "newThreadPerTaskExecutor", ThreadFactory.class);
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return if the running JVM supports virtual threads
+     */
+    public static boolean isSupported() {
+        // Java 19 and 20 only offer them as a preview feature
+        return Runtime.version().feature() >= 21 && OF_VIRTUAL != null && NAME != null && FACTORY != null && NEW_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * Creates an executor that starts a new virtual thread for every task
+     * @param namePrefix the prefix of the thread names, followed by a counter
+     * @return the executor
+     * @throws IllegalStateException if the running JVM does not support virtual threads
+     */
+    public static ExecutorService newThreadPerTaskExecutor(String namePrefix) {
+        if (!isSupported()) {
+            throw new IllegalStateException("Virtual threads need Java 21 or later, running on " + System.getProperty("java.version"));
+        }
+        try {
+            Object builder = NAME.invoke(OF_VIRTUAL.invoke(null), namePrefix, 0L);
+            ThreadFactory threadFactory = (ThreadFactory) FACTORY.invoke(builder);
+            return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, threadFactory);
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException("Could not create virtual thread executor", ex);
+        }
+    }
+
+    private static Method method(Class<?> type, String name, Class<?>... parameterTypes) {
+        try {
+            return type.getMethod(name, parameterTypes);
+        } catch (NoSuchMethodException ex) {
+            return null;
+        }
+    }
+}
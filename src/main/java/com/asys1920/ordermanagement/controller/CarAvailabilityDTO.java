@@ -0,0 +1,49 @@
+package com.asys1920.ordermanagement.controller;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Which of the requested cars are available in a time range
+ */
+public class CarAvailabilityDTO {
+    private final Instant from;
+    private final Instant to;
+    private final List<Long> available;
+    private final List<Long> booked;
+
+    CarAvailabilityDTO(Instant from, Instant to, List<Long> available, List<Long> booked) {
+        this.from = from;
+        this.to = to;
+        this.available = available;
+        this.booked = booked;
+    }
+
+    /**
+     * @return the inclusive start of the time range
+     */
+    public Instant getFrom() {
+        return from;
+    }
+
+    /**
+     * @return the exclusive end of the time range
+     */
+    public Instant getTo() {
+        return to;
+    }
+
+    /**
+     * @return the ids of the cars without an order or reservation in the time range, in the requested order
+     */
+    public List<Long> getAvailable() {
+        return available;
+    }
+
+    /**
+     * @return the ids of the cars with an order or reservation in the time range, in the requested order
+     */
+    public List<Long> getBooked() {
+        return booked;
+    }
+}
@@ -0,0 +1,46 @@
+package com.asys1920.ordermanagement.controller;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * The cars and the time range of an availability check whose car ids do not fit into the query string
+ */
+public class CarAvailabilityRequestDTO {
+    private Instant from;
+    private Instant to;
+    private List<Long> carIds;
+
+    /**
+     * @return the inclusive start of the time range
+     */
+    public Instant getFrom() {
+        return from;
+    }
+
+    public void setFrom(Instant from) {
+        this.from = from;
+    }
+
+    /**
+     * @return the exclusive end of the time range
+     */
+    public Instant getTo() {
+        return to;
+    }
+
+    public void setTo(Instant to) {
+        this.to = to;
+    }
+
+    /**
+     * @return the ids of the checked cars
+     */
+    public List<Long> getCarIds() {
+        return carIds;
+    }
+
+    public void setCarIds(List<Long> carIds) {
+        this.carIds = carIds;
+    }
+}
@@ -0,0 +1,63 @@
+package com.asys1920.ordermanagement.controller;
+
+import com.asys1920.dto.OrderDTO;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * The result of a single order of a batch, either the created or finished order or the reason it was rejected for
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class OrderBatchResultDTO {
+    public static final String CREATED = "created";
+    public static final String FINISHED = "finished";
+    public static final String REJECTED = "rejected";
+
+    private final int index;
+    private final String status;
+    private final String reason;
+    private final String message;
+    private final OrderDTO order;
+
+    private OrderBatchResultDTO(int index, String status, String reason, String message, OrderDTO order) {
+        this.index = index;
+        this.status = status;
+        this.reason = reason;
+        this.message = message;
+        this.order = order;
+    }
+
+    static OrderBatchResultDTO created(int index, OrderDTO order) {
+        return new OrderBatchResultDTO(index, CREATED, null, null, order);
+    }
+
+    static OrderBatchResultDTO finished(int index, OrderDTO order) {
+        return new OrderBatchResultDTO(index, FINISHED, null, null, order);
+    }
+
+    static OrderBatchResultDTO rejected(int index, String reason, String message) {
+        return new OrderBatchResultDTO(index, REJECTED, reason, message, null);
+    }
+
+    /**
+     * @return the position of the order in the request
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public OrderDTO getOrder() {
+        return order;
+    }
+}
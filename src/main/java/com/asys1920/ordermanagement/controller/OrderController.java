@@ -4,22 +4,36 @@ import com.asys1920.dto.OrderDTO;
 import com.asys1920.mapper.OrderMapper;
 import com.asys1920.model.Order;
 import com.asys1920.ordermanagement.exception.*;
+import com.asys1920.ordermanagement.repository.OrderFilter;
+import com.asys1920.ordermanagement.service.OrderBatchResult;
+import com.asys1920.ordermanagement.service.OrderExporter;
+import com.asys1920.ordermanagement.service.OrderPage;
+import com.asys1920.ordermanagement.service.OrderRejections;
 import com.asys1920.ordermanagement.service.OrderService;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import javax.naming.ServiceUnavailableException;
 import javax.validation.ConstraintViolation;
-import javax.validation.Validation;
+import javax.validation.Validator;
 import javax.validation.constraints.NotNull;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -27,10 +41,34 @@ import java.util.stream.Collectors;
 public class OrderController {
     private static final Logger LOG = LoggerFactory.getLogger(OrderController.class);
     private static final String PATH = "/orders";
+    private static final String NDJSON = "application/x-ndjson";
+    // 500 ids of up to ten digits fit into the 8 KB request line Tomcat accepts by default, more are posted
+    private static final int MAX_QUERY_CARS = 500;
     private final OrderService orderService;
+    private final OrderExporter orderExporter;
+    private final Validator validator;
+    private final int defaultPageSize;
+    private final int maxPageSize;
+    private final int maxBatchSize;
+    private final int maxAvailabilityCars;
+    private final OrderRejections rejections;
 
-    public OrderController(OrderService orderService) {
+    public OrderController(OrderService orderService,
+                           OrderExporter orderExporter,
+                           Validator validator,
+                           OrderRejections rejections,
+                           @Value("${order.page.default-size}") int defaultPageSize,
+                           @Value("${order.page.max-size}") int maxPageSize,
+                           @Value("${order.batch.max-size}") int maxBatchSize,
+                           @Value("${order.availability.max-cars}") int maxAvailabilityCars) {
         this.orderService = orderService;
+        this.orderExporter = orderExporter;
+        this.validator = validator;
+        this.defaultPageSize = defaultPageSize;
+        this.maxPageSize = maxPageSize;
+        this.maxBatchSize = maxBatchSize;
+        this.maxAvailabilityCars = maxAvailabilityCars;
+        this.rejections = rejections;
     }
     
     @ApiOperation(value = "Create a new order or reservation", response = OrderDTO.class)
@@ -41,8 +79,8 @@ public class OrderController {
             @ApiResponse(code = 404, message = "The resource you were trying to reach is not found")})
     @PostMapping(PATH)
     public ResponseEntity<OrderDTO> createOrder(@RequestBody OrderDTO orderDTO) throws ValidationException, CarNotAvailableException, UserMayNotRentException, IllegalReservationException, ServiceUnavailableException {
-        LOG.trace(String.format("POST %s initiated", PATH));
-        Set<ConstraintViolation<OrderDTO>> validate = Validation.buildDefaultValidatorFactory().getValidator().validate(orderDTO);
+        LOG.trace("POST {} initiated", PATH);
+        Set<ConstraintViolation<OrderDTO>> validate = validator.validate(orderDTO);
         if (!validate.isEmpty()) {
             throw new ValidationException(validate);
         }
@@ -55,6 +93,7 @@ public class OrderController {
                 order = orderService.reserveOrder(order);
             }
             else {
+                rejections.illegalReservation();
                 throw new IllegalReservationException("Requested reservation has no end date");
             }
         }
@@ -62,22 +101,95 @@ public class OrderController {
             // If startDate does not exist, it's a normal order starting exactly now
             order = orderService.createOrder(order);
         }
-        LOG.trace(String.format("POST %s completed", PATH));
+        LOG.trace("POST {} completed", PATH);
         return new ResponseEntity<>(OrderMapper.INSTANCE.orderToOrderDTO(order), HttpStatus.CREATED);
     }
     
+    @ApiOperation(value = "Create several orders or reservations, the result of every order is returned at its position", response = OrderBatchResultDTO.class, responseContainer = "List")
+    @ApiResponses(value = {
+            @ApiResponse(code = 201, message = "Successfully created all orders"),
+            @ApiResponse(code = 207, message = "Some of the orders were created, the others were rejected"),
+            @ApiResponse(code = 400, message = "The batch is empty or too large"),
+            @ApiResponse(code = 401, message = "You are not authorized to view the resource"),
+            @ApiResponse(code = 403, message = "Accessing the resource you were trying to reach is forbidden"),
+            @ApiResponse(code = 422, message = "None of the orders was created")})
+    @PostMapping(PATH + "/batch")
+    public ResponseEntity<List<OrderBatchResultDTO>> createOrders(@RequestBody List<OrderDTO> orderDTOs,
+                                                                  @RequestParam(defaultValue = "false") boolean allOrNothing) throws ValidationException {
+        LOG.trace("POST {}{} initiated", PATH, "/batch");
+        validateBatchSize(orderDTOs.size());
+        Instant now = Instant.now();
+        List<OrderBatchResultDTO> results = new ArrayList<>(orderDTOs.size());
+        List<Order> orders = new ArrayList<>(orderDTOs.size());
+        for (int i = 0; i < orderDTOs.size(); i++) {
+            OrderBatchResultDTO rejection = validate(i, orderDTOs.get(i), now);
+            results.add(rejection);
+            if (rejection == null) {
+                orders.add(OrderMapper.INSTANCE.orderDTOToOrder(orderDTOs.get(i)));
+            }
+        }
+        boolean rejected = orders.size() < orderDTOs.size();
+        Iterator<OrderBatchResult> created = allOrNothing && rejected
+                ? null
+                : orderService.createOrders(orders, allOrNothing).iterator();
+        int createdCount = 0;
+        for (int i = 0; i < results.size(); i++) {
+            if (results.get(i) != null) {
+                continue;
+            }
+            OrderBatchResult result = created == null ? OrderBatchResult.aborted() : created.next();
+            if (result.isAccepted()) {
+                createdCount++;
+                results.set(i, OrderBatchResultDTO.created(i, OrderMapper.INSTANCE.orderToOrderDTO(result.getOrder())));
+            } else {
+                results.set(i, OrderBatchResultDTO.rejected(i, result.getRejection(), result.getMessage()));
+            }
+        }
+        LOG.trace("POST {}{} completed with {} of {} orders created", PATH, "/batch", createdCount, results.size());
+        return new ResponseEntity<>(results, batchStatus(createdCount, results.size(), HttpStatus.CREATED));
+    }
+
     @ApiOperation(value = "Updates a specific Order", response = OrderDTO.class)
     @ApiResponses(value = {
             @ApiResponse(code = 200, message = "Successfully updated order"),
             @ApiResponse(code = 401, message = "You are not authorized to view the resource"),
             @ApiResponse(code = 403, message = "Accessing the resource you were trying to reach is forbidden"),
-            @ApiResponse(code = 404, message = "The resource you were trying to reach is not found")})
+            @ApiResponse(code = 404, message = "The resource you were trying to reach is not found"),
+            @ApiResponse(code = 409, message = "The order was canceled or finished before")})
     @PatchMapping(PATH+"/{orderId}")
-    public ResponseEntity<OrderDTO> finishOrder(@PathVariable long orderId) throws OrderNotFoundException, ServiceUnavailableException {
-        LOG.trace(String.format("PATCH %s initiated", PATH));
+    public ResponseEntity<OrderDTO> finishOrder(@PathVariable long orderId) throws OrderNotFoundException, OrderAlreadyFinishedException, ServiceUnavailableException {
+        LOG.trace("PATCH {} initiated", PATH);
         return new ResponseEntity<>(OrderMapper.INSTANCE.orderToOrderDTO(orderService.finishOrder(orderId)), HttpStatus.OK);
     }
     
+    @ApiOperation(value = "Finish or cancel several orders, the result of every order is returned at its position", response = OrderBatchResultDTO.class, responseContainer = "List")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Successfully finished all orders"),
+            @ApiResponse(code = 207, message = "Some of the orders were finished, the others were rejected"),
+            @ApiResponse(code = 400, message = "The batch is empty or too large"),
+            @ApiResponse(code = 401, message = "You are not authorized to view the resource"),
+            @ApiResponse(code = 403, message = "Accessing the resource you were trying to reach is forbidden"),
+            @ApiResponse(code = 422, message = "None of the orders was finished")})
+    @PatchMapping(PATH + "/batch")
+    public ResponseEntity<List<OrderBatchResultDTO>> finishOrders(@RequestBody List<Long> orderIds) throws ValidationException {
+        LOG.trace("PATCH {}{} initiated", PATH, "/batch");
+        validateBatchSize(orderIds.size());
+        List<OrderBatchResult> finished = orderService.finishOrders(orderIds);
+        List<OrderBatchResultDTO> results = new ArrayList<>(finished.size());
+        int finishedCount = 0;
+        for (int i = 0; i < finished.size(); i++) {
+            OrderBatchResult result = finished.get(i);
+            if (result.isAccepted()) {
+                finishedCount++;
+                results.add(OrderBatchResultDTO.finished(i, OrderMapper.INSTANCE.orderToOrderDTO(result.getOrder())));
+            } else {
+                results.add(OrderBatchResultDTO.rejected(i, result.getRejection(), result.getMessage()));
+            }
+        }
+        LOG.trace("PATCH {}{} completed with {} of {} orders finished", PATH, "/batch", finishedCount, results.size());
+        return new ResponseEntity<>(results, batchStatus(finishedCount, results.size(), HttpStatus.OK));
+    }
+
     @ApiOperation(value = "Get a existing order", response = OrderDTO.class)
     @ApiResponses(value = {
             @ApiResponse(code = 200, message = "Successfully fetched order"),
@@ -86,57 +198,226 @@ public class OrderController {
             @ApiResponse(code = 404, message = "The resource you were trying to reach is not found")})
     @GetMapping(PATH+"/{orderId}")
     public ResponseEntity<OrderDTO> getOrder(@PathVariable @NotNull long orderId) {
-        LOG.trace(String.format("GET %s initiated", PATH));
+        LOG.trace("GET {} initiated", PATH);
         return new ResponseEntity<>(OrderMapper.INSTANCE.orderToOrderDTO(orderService.getOrder(orderId)), HttpStatus.OK);
     }
     
-    @ApiOperation(value = "Get all existing order", response = OrderDTO.class,  responseContainer = "List")
+    @ApiOperation(value = "Get a page of the existing orders, the next page is linked in the Link header", response = OrderDTO.class,  responseContainer = "List")
     @ApiResponses(value = {
             @ApiResponse(code = 200, message = "Successfully fetched orders"),
+            @ApiResponse(code = 400, message = "The page size or status is invalid"),
             @ApiResponse(code = 401, message = "You are not authorized to view the resource"),
             @ApiResponse(code = 403, message = "Accessing the resource you were trying to reach is forbidden"),
             @ApiResponse(code = 404, message = "The resource you were trying to reach is not found")})
     @GetMapping(PATH)
-    public ResponseEntity<List<OrderDTO>> getAllOrders() {
-        LOG.trace(String.format("GET %s initiated", PATH));
-        List<Order> allOrders = orderService.getAllOrders();
-        List<OrderDTO> allOrderDTOs = allOrders.stream()
-                .map(OrderMapper.INSTANCE::orderToOrderDTO)
-                .collect(Collectors.toList());
-        LOG.trace(String.format("GET %s completed", PATH));
-        return ResponseEntity.ok().body(allOrderDTOs);
+    public ResponseEntity<List<OrderDTO>> getAllOrders(@RequestParam(required = false) Long after,
+                                                       @RequestParam(required = false) Integer size,
+                                                       @RequestParam(required = false) String status,
+                                                       @RequestParam(required = false) Instant from,
+                                                       @RequestParam(required = false) Instant to) throws ValidationException {
+        LOG.trace("GET {} initiated", PATH);
+        ResponseEntity<List<OrderDTO>> page = page(new OrderFilter(null, null, parseStatus(status), from, to), after, size);
+        LOG.trace("GET {} completed", PATH);
+        return page;
     }
 
-    @ApiOperation(value = "Get all existing orders for the specified car", response = OrderDTO.class,  responseContainer = "List")
+    @ApiOperation(value = "Get a page of the existing orders for the specified car", response = OrderDTO.class,  responseContainer = "List")
     @ApiResponses(value = {
             @ApiResponse(code = 200, message = "Successfully fetched orders"),
+            @ApiResponse(code = 400, message = "The page size or status is invalid"),
             @ApiResponse(code = 401, message = "You are not authorized to view the resource"),
             @ApiResponse(code = 403, message = "Accessing the resource you were trying to reach is forbidden"),
             @ApiResponse(code = 404, message = "The resource you were trying to reach is not found")})
     @GetMapping(PATH+"/bycar/{carId}")
-    public ResponseEntity<List<OrderDTO>> getAllOrdersByCar(@PathVariable long carId) {
-        LOG.trace(String.format("GET %s%s initiated", PATH,"/bycar"));
-        List<Order> allOrders = orderService.getAllOrdersByCar(carId);
-        List<OrderDTO> allOrderDTOs = allOrders.stream()
-                .map(OrderMapper.INSTANCE::orderToOrderDTO)
-                .collect(Collectors.toList());
-        LOG.trace(String.format("GET %s%s completed", PATH,"/bycar"));
-        return ResponseEntity.ok().body(allOrderDTOs);
+    public ResponseEntity<List<OrderDTO>> getAllOrdersByCar(@PathVariable long carId,
+                                                            @RequestParam(required = false) Long after,
+                                                            @RequestParam(required = false) Integer size,
+                                                            @RequestParam(required = false) String status,
+                                                            @RequestParam(required = false) Instant from,
+                                                            @RequestParam(required = false) Instant to) throws ValidationException {
+        LOG.trace("GET {}{} initiated", PATH, "/bycar");
+        ResponseEntity<List<OrderDTO>> page = page(new OrderFilter(carId, null, parseStatus(status), from, to), after, size);
+        LOG.trace("GET {}{} completed", PATH, "/bycar");
+        return page;
     }
-    @ApiOperation(value = "Get all existing orders for the specified user", response = OrderDTO.class,  responseContainer = "List")
+    @ApiOperation(value = "Get a page of the existing orders for the specified user", response = OrderDTO.class,  responseContainer = "List")
     @ApiResponses(value = {
             @ApiResponse(code = 200, message = "Successfully fetched orders"),
+            @ApiResponse(code = 400, message = "The page size or status is invalid"),
             @ApiResponse(code = 401, message = "You are not authorized to view the resource"),
             @ApiResponse(code = 403, message = "Accessing the resource you were trying to reach is forbidden"),
             @ApiResponse(code = 404, message = "The resource you were trying to reach is not found")})
     @GetMapping(PATH+"/byuser/{userId}")
-    public ResponseEntity<List<OrderDTO>> getAllOrdersByUser(@PathVariable long userId) {
-        LOG.trace(String.format("GET %s%s initiated", PATH,"/byuser"));
-        List<Order> allOrders = orderService.getAllOrdersByUser(userId);
-        List<OrderDTO> allOrderDTOs = allOrders.stream()
+    public ResponseEntity<List<OrderDTO>> getAllOrdersByUser(@PathVariable long userId,
+                                                             @RequestParam(required = false) Long after,
+                                                             @RequestParam(required = false) Integer size,
+                                                             @RequestParam(required = false) String status,
+                                                             @RequestParam(required = false) Instant from,
+                                                             @RequestParam(required = false) Instant to) throws ValidationException {
+        LOG.trace("GET {}{} initiated", PATH, "/byuser");
+        ResponseEntity<List<OrderDTO>> page = page(new OrderFilter(null, userId, parseStatus(status), from, to), after, size);
+        LOG.trace("GET {}{} completed", PATH, "/byuser");
+        return page;
+    }
+
+    @ApiOperation(value = "Get the summary of the orders of the specified user", response = UserOrderSummaryDTO.class)
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Successfully fetched the summary"),
+            @ApiResponse(code = 401, message = "You are not authorized to view the resource"),
+            @ApiResponse(code = 403, message = "Accessing the resource you were trying to reach is forbidden")})
+    @GetMapping(PATH+"/byuser/{userId}/summary")
+    public ResponseEntity<UserOrderSummaryDTO> getUserSummary(@PathVariable long userId) {
+        LOG.trace("GET {}{} initiated", PATH, "/byuser/summary");
+        return ResponseEntity.ok(UserOrderSummaryDTO.of(orderService.getUserSummary(userId)));
+    }
+
+    @ApiOperation(value = "Get which of the specified cars have no order or reservation in the time range [from, to)", response = CarAvailabilityDTO.class)
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Successfully checked the availability"),
+            @ApiResponse(code = 400, message = "The time range is empty or too many cars were specified"),
+            @ApiResponse(code = 401, message = "You are not authorized to view the resource"),
+            @ApiResponse(code = 403, message = "Accessing the resource you were trying to reach is forbidden")})
+    @GetMapping(PATH + "/availability")
+    public ResponseEntity<CarAvailabilityDTO> getAvailability(@RequestParam Instant from,
+                                                              @RequestParam Instant to,
+                                                              @RequestParam List<Long> carIds) throws ValidationException {
+        LOG.trace("GET {}{} initiated", PATH, "/availability");
+        CarAvailabilityDTO availability = availability(from, to, carIds, Math.min(maxAvailabilityCars, MAX_QUERY_CARS));
+        LOG.trace("GET {}{} completed with {} of {} cars available", PATH, "/availability",
+                availability.getAvailable().size(), availability.getAvailable().size() + availability.getBooked().size());
+        return ResponseEntity.ok(availability);
+    }
+
+    @ApiOperation(value = "Get which of the cars in the request body have no order or reservation in the time range [from, to), for more cars than fit into the query string", response = CarAvailabilityDTO.class)
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Successfully checked the availability"),
+            @ApiResponse(code = 400, message = "The time range is missing or empty or too many cars were specified"),
+            @ApiResponse(code = 401, message = "You are not authorized to view the resource"),
+            @ApiResponse(code = 403, message = "Accessing the resource you were trying to reach is forbidden")})
+    @PostMapping(PATH + "/availability")
+    public ResponseEntity<CarAvailabilityDTO> postAvailability(@RequestBody CarAvailabilityRequestDTO request) throws ValidationException {
+        LOG.trace("POST {}{} initiated", PATH, "/availability");
+        if (request.getFrom() == null || request.getTo() == null || request.getCarIds() == null) {
+            throw new ValidationException("The time range and the cars have to be specified");
+        }
+        CarAvailabilityDTO availability = availability(request.getFrom(), request.getTo(), request.getCarIds(), maxAvailabilityCars);
+        LOG.trace("POST {}{} completed with {} of {} cars available", PATH, "/availability",
+                availability.getAvailable().size(), availability.getAvailable().size() + availability.getBooked().size());
+        return ResponseEntity.ok(availability);
+    }
+
+    /**
+     * Checks which of the cars are booked in the time range
+     * @param maxCars the number of distinct cars that may be checked at once
+     * @return the available and the booked cars, each in the requested order
+     */
+    private CarAvailabilityDTO availability(Instant from, Instant to, List<Long> carIds, int maxCars) throws ValidationException {
+        if (!to.isAfter(from)) {
+            throw new ValidationException("The end of the time range has to be after its start");
+        }
+        Set<Long> requested = new LinkedHashSet<>(carIds);
+        requested.remove(null);
+        if (requested.isEmpty() || requested.size() > maxCars) {
+            throw new ValidationException(String.format("Between 1 and %d cars have to be specified", maxCars));
+        }
+        Set<Long> booked = orderService.bookedCars(requested, from, to);
+        List<Long> available = new ArrayList<>(requested.size() - booked.size());
+        List<Long> bookedInOrder = new ArrayList<>(booked.size());
+        for (Long carId : requested) {
+            (booked.contains(carId) ? bookedInOrder : available).add(carId);
+        }
+        return new CarAvailabilityDTO(from, to, available, bookedInOrder);
+    }
+
+    @ApiOperation(value = "Export all existing orders as newline delimited JSON")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Successfully exported orders"),
+            @ApiResponse(code = 401, message = "You are not authorized to view the resource"),
+            @ApiResponse(code = 403, message = "Accessing the resource you were trying to reach is forbidden")})
+    @GetMapping(value = PATH + "/export", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> exportOrders() {
+        LOG.trace("GET {}{} initiated", PATH, "/export");
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(NDJSON))
+                .body(out -> {
+                    long exported = orderExporter.export(out);
+                    LOG.trace("GET {}{} completed with {} orders", PATH, "/export", exported);
+                });
+    }
+
+    /**
+     * Fetches a page of orders and links the following page
+     * @param filter the conditions the orders have to match
+     * @param after the cursor of the page, null for the first page
+     * @param size the requested page size, capped at the maximum page size
+     * @return the orders of the page with a Link header to the next page if there is one
+     */
+    private ResponseEntity<List<OrderDTO>> page(OrderFilter filter, Long after, Integer size) throws ValidationException {
+        int pageSize = size == null ? defaultPageSize : Math.min(size, maxPageSize);
+        if (pageSize < 1) {
+            throw new ValidationException("The page size has to be at least 1");
+        }
+        OrderPage page = orderService.getOrders(filter, after, pageSize);
+        List<OrderDTO> orderDTOs = page.getOrders().stream()
                 .map(OrderMapper.INSTANCE::orderToOrderDTO)
                 .collect(Collectors.toList());
-        LOG.trace(String.format("GET %s%s completed", PATH,"/byuser"));
-        return ResponseEntity.ok().body(allOrderDTOs);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            String next = ServletUriComponentsBuilder.fromCurrentRequest()
+                    .replaceQueryParam("after", page.getNextCursor())
+                    .replaceQueryParam("size", pageSize)
+                    .build().toUriString();
+            response.header(HttpHeaders.LINK, String.format("<%s>; rel=\"next\"", next));
+        }
+        return response.body(orderDTOs);
+    }
+
+    private void validateBatchSize(int size) throws ValidationException {
+        if (size < 1 || size > maxBatchSize) {
+            throw new ValidationException(String.format("A batch has to contain between 1 and %d orders", maxBatchSize));
+        }
+    }
+
+    /**
+     * @param accepted the number of orders of the batch that were created or finished
+     * @param size the number of orders of the batch
+     * @param allAccepted the status if all orders were accepted
+     * @return the status of the response to a batch
+     */
+    private static HttpStatus batchStatus(int accepted, int size, HttpStatus allAccepted) {
+        if (accepted == size) {
+            return allAccepted;
+        }
+        return accepted == 0 ? HttpStatus.UNPROCESSABLE_ENTITY : HttpStatus.MULTI_STATUS;
+    }
+
+    /**
+     * Validates an order of a batch like a single order is validated
+     * @param index the position of the order in the batch
+     * @return the rejection of the order, null if it is valid
+     */
+    private OrderBatchResultDTO validate(int index, OrderDTO orderDTO, Instant now) {
+        Set<ConstraintViolation<OrderDTO>> violations = validator.validate(orderDTO);
+        if (!violations.isEmpty()) {
+            return OrderBatchResultDTO.rejected(index, OrderBatchResult.INVALID, new ValidationException(violations).getMessage());
+        }
+        Instant startDate = orderDTO.getStartDate();
+        Instant endDate = orderDTO.getEndDate();
+        if (startDate != null && startDate.isAfter(now) && (endDate == null || !endDate.isAfter(startDate))) {
+            rejections.illegalReservation();
+            return OrderBatchResultDTO.rejected(index, OrderBatchResult.ILLEGAL_RESERVATION, "Requested reservation has no end date");
+        }
+        return null;
+    }
+
+    private static OrderFilter.Status parseStatus(String status) throws ValidationException {
+        if (status == null) {
+            return null;
+        }
+        try {
+            return OrderFilter.Status.valueOf(status.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException ex) {
+            throw new ValidationException(String.format("Unknown order status %s, expected open, finished or canceled", status));
+        }
     }
 }
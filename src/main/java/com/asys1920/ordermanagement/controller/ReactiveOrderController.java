@@ -0,0 +1,90 @@
+package com.asys1920.ordermanagement.controller;
+
+import com.asys1920.dto.OrderDTO;
+import com.asys1920.mapper.OrderMapper;
+import com.asys1920.model.Order;
+import com.asys1920.ordermanagement.exception.IllegalReservationException;
+import com.asys1920.ordermanagement.exception.ValidationException;
+import com.asys1920.ordermanagement.service.OrderRejections;
+import com.asys1920.ordermanagement.service.ReactiveOrderService;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiResponse;
+import io.swagger.annotations.ApiResponses;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.time.Instant;
+import java.util.Set;
+
+/**
+ * Non-blocking variant of the order endpoints that change orders. The request thread is released while
+ * the car and user service answer, the response is written as soon as the order was saved.
+ */
+@RestController
+@ConditionalOnProperty("order.reactive.enabled")
+public class ReactiveOrderController {
+    private static final Logger LOG = LoggerFactory.getLogger(ReactiveOrderController.class);
+    private static final String PATH = "/reactive/orders";
+    private final ReactiveOrderService orderService;
+    private final Validator validator;
+    private final OrderRejections rejections;
+
+    public ReactiveOrderController(ReactiveOrderService orderService, Validator validator, OrderRejections rejections) {
+        this.orderService = orderService;
+        this.validator = validator;
+        this.rejections = rejections;
+    }
+
+    @ApiOperation(value = "Create a new order or reservation without blocking a request thread", response = OrderDTO.class)
+    @ApiResponses(value = {
+            @ApiResponse(code = 201, message = "Successfully created order"),
+            @ApiResponse(code = 401, message = "You are not authorized to view the resource"),
+            @ApiResponse(code = 403, message = "Accessing the resource you were trying to reach is forbidden"),
+            @ApiResponse(code = 404, message = "The resource you were trying to reach is not found")})
+    @PostMapping(PATH)
+    public Mono<ResponseEntity<OrderDTO>> createOrder(@RequestBody OrderDTO orderDTO) throws ValidationException, IllegalReservationException {
+        LOG.trace("POST {} initiated", PATH);
+        Set<ConstraintViolation<OrderDTO>> validate = validator.validate(orderDTO);
+        if (!validate.isEmpty()) {
+            throw new ValidationException(validate);
+        }
+        Order order = OrderMapper.INSTANCE.orderDTOToOrder(orderDTO);
+
+        Mono<Order> created;
+        if (order.getStartDate() != null && order.getStartDate().isAfter(Instant.now())) {
+            // If startDate already exists and is in future, it's a reserve request
+            if (order.getEndDate() == null || !order.getEndDate().isAfter(order.getStartDate())) {
+                rejections.illegalReservation();
+                throw new IllegalReservationException("Requested reservation has no end date");
+            }
+            created = orderService.reserveOrder(order);
+        } else {
+            // If startDate does not exist, it's a normal order starting exactly now
+            created = orderService.createOrder(order);
+        }
+        return created
+                .map(saved -> new ResponseEntity<>(OrderMapper.INSTANCE.orderToOrderDTO(saved), HttpStatus.CREATED))
+                .doOnSuccess(response -> LOG.trace("POST {} completed", PATH));
+    }
+
+    @ApiOperation(value = "Updates a specific Order without blocking a request thread", response = OrderDTO.class)
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Successfully updated order"),
+            @ApiResponse(code = 401, message = "You are not authorized to view the resource"),
+            @ApiResponse(code = 403, message = "Accessing the resource you were trying to reach is forbidden"),
+            @ApiResponse(code = 404, message = "The resource you were trying to reach is not found"),
+            @ApiResponse(code = 409, message = "The order was canceled or finished before")})
+    @PatchMapping(PATH + "/{orderId}")
+    public Mono<ResponseEntity<OrderDTO>> finishOrder(@PathVariable long orderId) {
+        LOG.trace("PATCH {} initiated", PATH);
+        return orderService.finishOrder(orderId)
+                .map(finished -> new ResponseEntity<>(OrderMapper.INSTANCE.orderToOrderDTO(finished), HttpStatus.OK));
+    }
+}
@@ -0,0 +1,71 @@
+package com.asys1920.ordermanagement.controller;
+
+import com.asys1920.ordermanagement.model.UserOrderSummary;
+
+import java.time.Instant;
+
+/**
+ * The orders of a user in numbers at the time of the request
+ */
+public class UserOrderSummaryDTO {
+    private final Long userId;
+    private final long activeOrders;
+    private final long upcomingReservations;
+    private final long lifetimeOrders;
+    private final long lifetimeBilledHours;
+    private final Instant lastOrderAt;
+
+    private UserOrderSummaryDTO(Long userId, long activeOrders, long upcomingReservations, long lifetimeOrders,
+                                long lifetimeBilledHours, Instant lastOrderAt) {
+        this.userId = userId;
+        this.activeOrders = activeOrders;
+        this.upcomingReservations = upcomingReservations;
+        this.lifetimeOrders = lifetimeOrders;
+        this.lifetimeBilledHours = lifetimeBilledHours;
+        this.lastOrderAt = lastOrderAt;
+    }
+
+    static UserOrderSummaryDTO of(UserOrderSummary summary) {
+        return new UserOrderSummaryDTO(summary.getUserId(), summary.getActiveOrders(), summary.getUpcomingReservations(),
+                summary.getLifetimeOrders(), summary.getBilledHours(), summary.getLastOrderAt());
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    /**
+     * @return the rentals and reservations that have started but not ended
+     */
+    public long getActiveOrders() {
+        return activeOrders;
+    }
+
+    /**
+     * @return the reservations that have not started yet
+     */
+    public long getUpcomingReservations() {
+        return upcomingReservations;
+    }
+
+    /**
+     * @return all orders of the user that were not canceled
+     */
+    public long getLifetimeOrders() {
+        return lifetimeOrders;
+    }
+
+    /**
+     * @return the hours all finished orders of the user were billed for
+     */
+    public long getLifetimeBilledHours() {
+        return lifetimeBilledHours;
+    }
+
+    /**
+     * @return the start of the latest order of the user, null if the user has no orders
+     */
+    public Instant getLastOrderAt() {
+        return lastOrderAt;
+    }
+}
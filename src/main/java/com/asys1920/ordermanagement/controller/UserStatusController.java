@@ -0,0 +1,38 @@
+package com.asys1920.ordermanagement.controller;
+
+import com.asys1920.ordermanagement.adapter.UserServiceAdapter;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiResponse;
+import io.swagger.annotations.ApiResponses;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Receives status changes of users from the user service
+ */
+@RestController
+public class UserStatusController {
+    private static final Logger LOG = LoggerFactory.getLogger(UserStatusController.class);
+    private static final String PATH = "/users";
+    private final UserServiceAdapter userServiceAdapter;
+
+    public UserStatusController(UserServiceAdapter userServiceAdapter) {
+        this.userServiceAdapter = userServiceAdapter;
+    }
+
+    @ApiOperation(value = "Notifies the service that a user was banned, deactivated or changed otherwise")
+    @ApiResponses(value = {
+            @ApiResponse(code = 204, message = "Successfully evicted the cached user"),
+            @ApiResponse(code = 401, message = "You are not authorized to view the resource"),
+            @ApiResponse(code = 403, message = "Accessing the resource you were trying to reach is forbidden")})
+    @PostMapping(PATH + "/{userId}/status-changed")
+    public ResponseEntity<Void> userStatusChanged(@PathVariable long userId) {
+        LOG.trace("POST {}/{}/status-changed initiated", PATH, userId);
+        userServiceAdapter.evictUser(userId);
+        return ResponseEntity.noContent().build();
+    }
+}
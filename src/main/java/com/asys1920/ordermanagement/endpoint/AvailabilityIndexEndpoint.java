@@ -0,0 +1,44 @@
+package com.asys1920.ordermanagement.endpoint;
+
+import com.asys1920.ordermanagement.service.AvailabilityIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Actuator endpoint to check the availability index against the database and to rebuild it
+ */
+@Component
+@Endpoint(id = "availabilityindex")
+public class AvailabilityIndexEndpoint {
+    private static final Logger LOG = LoggerFactory.getLogger(AvailabilityIndexEndpoint.class);
+    private final AvailabilityIndex availabilityIndex;
+
+    public AvailabilityIndexEndpoint(AvailabilityIndex availabilityIndex) {
+        this.availabilityIndex = availabilityIndex;
+    }
+
+    @ReadOperation
+    public Map<String, Object> consistency() {
+        List<String> differences = availabilityIndex.checkConsistency();
+        Map<String, Object> consistency = new LinkedHashMap<>();
+        consistency.put("ready", availabilityIndex.isReady());
+        consistency.put("bookings", availabilityIndex.size());
+        consistency.put("consistent", differences.isEmpty());
+        consistency.put("differences", differences);
+        return consistency;
+    }
+
+    @WriteOperation
+    public void rebuild() {
+        LOG.info("Rebuilding the availability index");
+        availabilityIndex.rebuild();
+    }
+}
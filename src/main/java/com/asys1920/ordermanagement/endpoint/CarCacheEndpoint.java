@@ -0,0 +1,52 @@
+package com.asys1920.ordermanagement.endpoint;
+
+import com.asys1920.ordermanagement.adapter.CarServiceAdapter;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Actuator endpoint to inspect the car cache and to evict cars when the fleet changes
+ */
+@Component
+@Endpoint(id = "carcache")
+public class CarCacheEndpoint {
+    private static final Logger LOG = LoggerFactory.getLogger(CarCacheEndpoint.class);
+    private final CarServiceAdapter carServiceAdapter;
+
+    public CarCacheEndpoint(CarServiceAdapter carServiceAdapter) {
+        this.carServiceAdapter = carServiceAdapter;
+    }
+
+    @ReadOperation
+    public Map<String, Object> statistics() {
+        CacheStats stats = carServiceAdapter.getCacheStats();
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("size", carServiceAdapter.getCacheSize());
+        statistics.put("hits", stats.hitCount());
+        statistics.put("misses", stats.missCount());
+        statistics.put("evictions", stats.evictionCount());
+        statistics.put("hitRate", stats.hitRate());
+        return statistics;
+    }
+
+    @DeleteOperation
+    public void evictAll() {
+        LOG.info("Evicting all cars from the car cache");
+        carServiceAdapter.evictAllCars();
+    }
+
+    @DeleteOperation
+    public void evict(@Selector Long carId) {
+        LOG.info("Evicting car {} from the car cache", carId);
+        carServiceAdapter.evictCar(carId);
+    }
+}
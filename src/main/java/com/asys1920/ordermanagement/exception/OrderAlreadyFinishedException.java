@@ -0,0 +1,7 @@
+package com.asys1920.ordermanagement.exception;
+
+public class OrderAlreadyFinishedException extends Exception {
+    public OrderAlreadyFinishedException(String message) {
+        super(message);
+    }
+}
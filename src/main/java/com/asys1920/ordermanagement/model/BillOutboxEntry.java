@@ -0,0 +1,139 @@
+package com.asys1920.ordermanagement.model;
+
+import com.asys1920.model.Bill;
+
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+import java.time.Instant;
+
+/**
+ * A bill of a finished order that still has to be saved in the accounting service.
+ * It is written in the same transaction as the finished order, so the bill is never lost. An order has at most one
+ * bill, the entry marks the order as finished.
+ */
+@Entity
+@Table(name = "bill_outbox", indexes = @Index(name = "idx_bill_outbox_due", columnList = "status, nextAttemptAt"),
+        uniqueConstraints = @UniqueConstraint(name = "uk_bill_outbox_order", columnNames = "orderId"))
+public class BillOutboxEntry {
+    public enum Status {
+        PENDING, SENT
+    }
+
+    @Id
+    @GeneratedValue
+    private Long id;
+    private Long orderId;
+    private Long userId;
+    private String name;
+    private String street;
+    private String zipCode;
+    private String city;
+    private String country;
+    private double value;
+    private Instant creationDate;
+    private Instant paymentDeadlineDate;
+    @Enumerated(EnumType.STRING)
+    private Status status;
+    private int attempts;
+    private Instant nextAttemptAt;
+    private Long billId;
+    // The dispatch that claimed the entry until its next attempt is due again
+    private String claim;
+
+    protected BillOutboxEntry() {
+    }
+
+    /**
+     * Creates a pending entry for the bill of an order
+     * @param orderId the order the bill belongs to
+     * @param bill the bill to be saved in the accounting service
+     */
+    public BillOutboxEntry(Long orderId, Bill bill) {
+        this.orderId = orderId;
+        this.userId = bill.getUserId();
+        this.name = bill.getName();
+        this.street = bill.getStreet();
+        this.zipCode = bill.getZipCode();
+        this.city = bill.getCity();
+        this.country = bill.getCountry();
+        this.value = bill.getValue();
+        this.creationDate = bill.getCreationDate();
+        this.paymentDeadlineDate = bill.getPaymentDeadlineDate();
+        this.status = Status.PENDING;
+        this.nextAttemptAt = bill.getCreationDate();
+    }
+
+    /**
+     * @return the bill as it is sent to the accounting service
+     */
+    public Bill toBill() {
+        Bill bill = new Bill();
+        bill.setUserId(userId);
+        bill.setName(name);
+        bill.setStreet(street);
+        bill.setZipCode(zipCode);
+        bill.setCity(city);
+        bill.setCountry(country);
+        bill.setValue(value);
+        bill.setCreationDate(creationDate);
+        bill.setPaymentDeadlineDate(paymentDeadlineDate);
+        return bill;
+    }
+
+    /**
+     * Marks the bill as saved in the accounting service
+     * @param billId the id the accounting service assigned to the bill
+     */
+    public void sent(Long billId) {
+        this.billId = billId;
+        this.status = Status.SENT;
+        this.attempts++;
+    }
+
+    /**
+     * Schedules the next attempt after a failed one
+     * @param nextAttemptAt the earliest time of the next attempt
+     */
+    public void failed(Instant nextAttemptAt) {
+        this.attempts++;
+        this.nextAttemptAt = nextAttemptAt;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Long getOrderId() {
+        return orderId;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public Instant getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    public Long getBillId() {
+        return billId;
+    }
+
+    /**
+     * @return the key the accounting service recognizes a bill it already saved by, e.g. when it is sent again
+     * because the instance that sent it failed before storing the bill id
+     */
+    public String getIdempotencyKey() {
+        return "order-" + orderId;
+    }
+}
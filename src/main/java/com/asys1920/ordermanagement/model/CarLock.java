@@ -0,0 +1,27 @@
+package com.asys1920.ordermanagement.model;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * The row of a car that is locked while an order for the car is booked, so instances of the service that share
+ * the database book the car one after another. It is created with the first booking of the car.
+ */
+@Entity
+@Table(name = "car_lock")
+public class CarLock {
+    @Id
+    private Long carId;
+
+    protected CarLock() {
+    }
+
+    public CarLock(Long carId) {
+        this.carId = carId;
+    }
+
+    public Long getCarId() {
+        return carId;
+    }
+}
@@ -0,0 +1,127 @@
+package com.asys1920.ordermanagement.model;
+
+import com.asys1920.model.Order;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.Transient;
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * The lifetime numbers of the orders of a user, updated together with every order of the user, so they are read
+ * without loading the order history of the user. Canceled orders are not counted.
+ * The active and upcoming orders change with the time instead of with the orders, they are counted when the summary
+ * is read and not stored.
+ */
+@Entity
+@Table(name = "user_order_summary")
+public class UserOrderSummary {
+    @Id
+    private Long userId;
+    // Defaults, so a summary is created by inserting only the id of the user
+    @Column(columnDefinition = "bigint default 0 not null")
+    private long lifetimeOrders;
+    @Column(columnDefinition = "bigint default 0 not null")
+    private long billedHours;
+    private Instant lastOrderAt;
+    @Transient
+    private long activeOrders;
+    @Transient
+    private long upcomingReservations;
+
+    protected UserOrderSummary() {
+    }
+
+    public UserOrderSummary(Long userId) {
+        this.userId = userId;
+    }
+
+    /**
+     * Counts an order of the user, when the summary is rebuilt from the orders
+     * @param order the order
+     */
+    public void add(Order order) {
+        if (order.isCanceled() || order.getStartDate() == null) {
+            return;
+        }
+        lifetimeOrders++;
+        if (lastOrderAt == null || order.getStartDate().isAfter(lastOrderAt)) {
+            lastOrderAt = order.getStartDate();
+        }
+    }
+
+    /**
+     * Adds the hours a finished order of the user was billed for, when the summary is rebuilt from the orders
+     */
+    public void addBilledHours(long hours) {
+        billedHours += hours;
+    }
+
+    /**
+     * Replaces the numbers with those of another summary, e.g. one rebuilt from the orders of the user
+     */
+    public void copyOf(UserOrderSummary other) {
+        lifetimeOrders = other.lifetimeOrders;
+        billedHours = other.billedHours;
+        lastOrderAt = other.lastOrderAt;
+    }
+
+    /**
+     * @return if both summaries count the same orders
+     */
+    public boolean matches(UserOrderSummary other) {
+        return lifetimeOrders == other.lifetimeOrders
+                && billedHours == other.billedHours
+                && Objects.equals(lastOrderAt, other.lastOrderAt);
+    }
+
+    /**
+     * Sets the orders of the user that have not ended at the time the summary is read
+     */
+    public void setOpenOrders(long activeOrders, long upcomingReservations) {
+        this.activeOrders = activeOrders;
+        this.upcomingReservations = upcomingReservations;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    /**
+     * @return the rentals and reservations that have started but not ended
+     */
+    public long getActiveOrders() {
+        return activeOrders;
+    }
+
+    /**
+     * @return the reservations that have not started yet
+     */
+    public long getUpcomingReservations() {
+        return upcomingReservations;
+    }
+
+    /**
+     * @return the number of all orders of the user
+     */
+    public long getLifetimeOrders() {
+        return lifetimeOrders;
+    }
+
+    /**
+     * @return the hours all finished orders of the user were billed for
+     */
+    public long getBilledHours() {
+        return billedHours;
+    }
+
+    /**
+     * @return the start of the latest order of the user, null if the user has no orders
+     */
+    public Instant getLastOrderAt() {
+        return lastOrderAt;
+    }
+}
@@ -0,0 +1,47 @@
+package com.asys1920.ordermanagement.repository;
+
+import com.asys1920.ordermanagement.model.BillOutboxEntry;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+public interface BillOutboxRepository extends JpaRepository<BillOutboxEntry, Long> {
+    @Query("select e.id from BillOutboxEntry e where e.status = :status and e.nextAttemptAt <= :now order by e.id asc")
+    List<Long> findDueIds(@Param("status") BillOutboxEntry.Status status, @Param("now") Instant now, Pageable pageable);
+
+    /**
+     * Claims the entries that are still due for a dispatch, by moving their next attempt to the end of the lease.
+     * An entry another instance claimed in the meantime is no longer due and not claimed again, an entry whose
+     * dispatch did not finish within the lease becomes due again.
+     * @param ids the ids of the due entries
+     * @param claim the unique key of the dispatch
+     * @param leaseEnd the time until the entries are claimed
+     * @return the number of claimed entries
+     */
+    @Modifying
+    @Query("update BillOutboxEntry e set e.claim = :claim, e.nextAttemptAt = :leaseEnd " +
+            "where e.id in :ids and e.status = :status and e.nextAttemptAt <= :now")
+    int claim(@Param("ids") List<Long> ids, @Param("status") BillOutboxEntry.Status status, @Param("now") Instant now,
+              @Param("claim") String claim, @Param("leaseEnd") Instant leaseEnd);
+
+    List<BillOutboxEntry> findAllByClaimOrderByIdAsc(String claim);
+
+    long countByStatus(BillOutboxEntry.Status status);
+
+    // A query of its own instead of a derived one, its plan is cached instead of built from criteria on every call
+    @Query("select case when count(e) > 0 then true else false end from BillOutboxEntry e where e.orderId = :orderId")
+    boolean existsByOrderId(@Param("orderId") Long orderId);
+
+    @Query("select e.orderId from BillOutboxEntry e where e.orderId in :orderIds")
+    Set<Long> findBilledOrderIds(@Param("orderIds") Collection<Long> orderIds);
+
+    @Query("select e.orderId from BillOutboxEntry e where e.userId = :userId")
+    List<Long> findOrderIdsByUserId(@Param("userId") Long userId);
+}
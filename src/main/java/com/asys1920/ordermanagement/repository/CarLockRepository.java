@@ -0,0 +1,33 @@
+package com.asys1920.ordermanagement.repository;
+
+import com.asys1920.ordermanagement.model.CarLock;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import javax.persistence.LockModeType;
+import java.util.Optional;
+
+public interface CarLockRepository extends JpaRepository<CarLock, Long> {
+    /**
+     * Locks the row of a car until the end of the current transaction, waits while another transaction holds it
+     * @param carId the id of the car
+     * @return the locked row, empty if the car has no row yet
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select l from CarLock l where l.carId = :carId")
+    Optional<CarLock> lockByCarId(@Param("carId") Long carId);
+
+    /**
+     * Creates the row of a car in the current transaction unless it exists. The merge updates an existing row
+     * instead, and waits for a concurrent transaction that creates the same row, so it does not fail with a duplicate
+     * key. On PostgreSQL this is {@code INSERT INTO car_lock (car_id) VALUES (:carId) ON CONFLICT DO NOTHING}.
+     * @param carId the id of the car
+     * @return the number of created or updated rows
+     */
+    @Modifying
+    @Query(value = "MERGE INTO car_lock (car_id) KEY (car_id) VALUES (:carId)", nativeQuery = true)
+    int insertIfAbsent(@Param("carId") Long carId);
+}
@@ -0,0 +1,61 @@
+package com.asys1920.ordermanagement.repository;
+
+import java.time.Instant;
+
+/**
+ * Optional conditions for the orders of a page. Conditions that are null are not applied.
+ */
+public class OrderFilter {
+    public enum Status {
+        /**
+         * Running rentals and reservations
+         */
+        OPEN,
+        /**
+         * Rentals whose car was handed in
+         */
+        FINISHED,
+        CANCELED
+    }
+
+    private final Long carId;
+    private final Long userId;
+    private final Status status;
+    private final Instant from;
+    private final Instant to;
+
+    /**
+     * @param carId the car of the orders
+     * @param userId the user of the orders
+     * @param status the status of the orders
+     * @param from the inclusive lower bound of the start date
+     * @param to the exclusive upper bound of the start date
+     */
+    public OrderFilter(Long carId, Long userId, Status status, Instant from, Instant to) {
+        this.carId = carId;
+        this.userId = userId;
+        this.status = status;
+        this.from = from;
+        this.to = to;
+    }
+
+    public Long getCarId() {
+        return carId;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public Instant getFrom() {
+        return from;
+    }
+
+    public Instant getTo() {
+        return to;
+    }
+}
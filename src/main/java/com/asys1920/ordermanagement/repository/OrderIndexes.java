@@ -0,0 +1,58 @@
+package com.asys1920.ordermanagement.repository;
+
+import com.asys1920.model.Order;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * Creates the indexes the order queries rely on. The order entity is shared with the other services and declares no
+ * indexes itself, so table and column names are taken from the mapping of the entity. The service does not start if
+ * an index can not be created, the availability checks would scan the whole order table otherwise.
+ */
+@Component
+public class OrderIndexes {
+    private static final Logger LOG = LoggerFactory.getLogger(OrderIndexes.class);
+    private final EntityManagerFactory entityManagerFactory;
+    private final JdbcTemplate jdbcTemplate;
+
+    public OrderIndexes(EntityManagerFactory entityManagerFactory, JdbcTemplate jdbcTemplate) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void createIndexes() {
+        AbstractEntityPersister persister = (AbstractEntityPersister) entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getMetamodel().entityPersister(Order.class);
+        // Bookings that end after a requested range starts are a range seek, finished rentals are skipped
+        createIndex(persister, "idx_order_car_end_start", "carId", "endDate", "startDate");
+        createIndex(persister, "idx_order_user_start", "userId", "startDate");
+        // The orders of a user that have not ended are a range seek, the history of the user is skipped
+        createIndex(persister, "idx_order_user_end", "userId", "endDate");
+    }
+
+    private void createIndex(AbstractEntityPersister persister, String name, String... properties) {
+        StringBuilder columns = new StringBuilder();
+        for (String property : properties) {
+            if (columns.length() > 0) {
+                columns.append(", ");
+            }
+            columns.append(persister.getPropertyColumnNames(property)[0]);
+        }
+        String statement = String.format("CREATE INDEX IF NOT EXISTS %s ON %s (%s)", name, persister.getTableName(), columns);
+        try {
+            jdbcTemplate.execute(statement);
+            LOG.debug("Created index {}", statement);
+        } catch (DataAccessException ex) {
+            throw new IllegalStateException("Could not create index " + name, ex);
+        }
+    }
+}
@@ -2,12 +2,62 @@ package com.asys1920.ordermanagement.repository;
 
 import com.asys1920.model.Order;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import javax.persistence.QueryHint;
 import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
+
+public interface OrderRepository extends JpaRepository<Order, Long>, OrderRepositoryCustom {
+    /**
+     * Streams all orders ordered by id. The rows are fetched from the database in chunks while the stream is consumed,
+     * which requires an open transaction. The orders are not tracked for changes, but stay in the persistence context
+     * until they are detached.
+     * @return the stream of all orders, has to be closed
+     */
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READONLY, value = "true")})
+    Stream<Order> streamAllByOrderByIdAsc();
+
+    /**
+     * Streams the orders that book their car at any time after the given time, like {@link #streamAllByOrderByIdAsc()}
+     * @param now the time before which ended bookings are skipped
+     * @return the stream of the orders, has to be closed
+     */
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READONLY, value = "true")})
+    @Query("select o from Order o where o.canceled = false and o.startDate is not null and o.carId is not null " +
+            "and (o.endDate is null or o.endDate > :now)")
+    Stream<Order> streamBookingsEndingAfter(@Param("now") Instant now);
 
-public interface OrderRepository extends JpaRepository<Order, Long> {
-    List<Order> findAllByCarIdAndEndDateNotNullAndEndDateIsBefore(Long carId, Instant now);
-    List<Order> findAllByCarId(Long carId);
     List<Order> findAllByUserId(Long userId);
+
+    /**
+     * Reads with one query if an order can not be finished anymore
+     * @param id the id of the order
+     * @return "canceled" if the order was canceled, "already_finished" if it has a bill in the outbox, null otherwise
+     */
+    @Query("select case when o.canceled = true then 'canceled' " +
+            "when exists (select e.id from BillOutboxEntry e where e.orderId = o.id) then 'already_finished' end " +
+            "from Order o where o.id = :id")
+    String findFinishedState(@Param("id") Long id);
+
+    @Query("select o.id from Order o where o.id in :ids and o.canceled = true")
+    Set<Long> findCanceledIds(@Param("ids") Collection<Long> ids);
+
+    @Query("select distinct o.userId from Order o")
+    List<Long> findUserIds();
+
+    @Query("select max(o.startDate) from Order o where o.userId = :userId and o.canceled = false")
+    Instant findLastStartDateByUserId(@Param("userId") Long userId);
+
+    long countByUserIdAndCanceledFalseAndEndDateIsNull(Long userId);
+    long countByUserIdAndCanceledFalseAndEndDateAfterAndStartDateLessThanEqual(Long userId, Instant now, Instant started);
+    long countByUserIdAndCanceledFalseAndStartDateAfter(Long userId, Instant now);
 }
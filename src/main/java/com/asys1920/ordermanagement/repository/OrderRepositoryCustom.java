@@ -0,0 +1,49 @@
+package com.asys1920.ordermanagement.repository;
+
+import com.asys1920.model.Order;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+public interface OrderRepositoryCustom {
+    /**
+     * Retrieves the orders following a cursor, ordered by id. The cursor is the id of the last order of the previous
+     * page, so every page is a seek on the primary key no matter how far the client walked already.
+     * @param filter the conditions the orders have to match
+     * @param after the id of the last order of the previous page, null for the first page
+     * @param limit the maximum number of orders
+     * @return the orders of the page
+     */
+    List<Order> findPage(OrderFilter filter, Long after, int limit);
+
+    /**
+     * Checks if an order books the car at any time of the range [start, end) with a single query.
+     * The rentals without end and the bookings that end after the range starts are two seeks on the
+     * (car_id, end_date, start_date) index, so the cost does not grow with the rental history of the car.
+     * @param carId the car to be checked
+     * @param start the inclusive start of the range
+     * @param end the exclusive end of the range, null for a range without end
+     * @return if the car is booked in the range
+     */
+    boolean existsBookingOverlapping(Long carId, Instant start, Instant end);
+
+    /**
+     * Retrieves the orders that book any of the cars at any time of the range [start, end) in a single query
+     * @param carIds the cars to be checked
+     * @param start the inclusive start of the range
+     * @param end the exclusive end of the range
+     * @return the bookings of the cars in the range
+     */
+    List<Order> findBookingsOverlapping(Collection<Long> carIds, Instant start, Instant end);
+
+    /**
+     * Retrieves which of the cars are booked at any time of the range [start, end) in a single query
+     * @param carIds the cars to be checked
+     * @param start the inclusive start of the range
+     * @param end the exclusive end of the range
+     * @return the ids of the booked cars
+     */
+    Set<Long> findBookedCarIds(Collection<Long> carIds, Instant start, Instant end);
+}
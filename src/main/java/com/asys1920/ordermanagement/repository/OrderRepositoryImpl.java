@@ -0,0 +1,141 @@
+package com.asys1920.ordermanagement.repository;
+
+import com.asys1920.model.Order;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class OrderRepositoryImpl implements OrderRepositoryCustom {
+    @PersistenceContext
+    private EntityManager entityManager;
+    private volatile String[] bookingOverlappingStatements;
+
+    @Override
+    public List<Order> findPage(OrderFilter filter, Long after, int limit) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Order> query = builder.createQuery(Order.class);
+        Root<Order> order = query.from(Order.class);
+        List<Predicate> predicates = new ArrayList<>();
+        if (after != null) {
+            predicates.add(builder.greaterThan(order.get("id"), after));
+        }
+        if (filter.getCarId() != null) {
+            predicates.add(builder.equal(order.get("carId"), filter.getCarId()));
+        }
+        if (filter.getUserId() != null) {
+            predicates.add(builder.equal(order.get("userId"), filter.getUserId()));
+        }
+        if (filter.getFrom() != null) {
+            predicates.add(builder.greaterThanOrEqualTo(order.get("startDate"), filter.getFrom()));
+        }
+        if (filter.getTo() != null) {
+            predicates.add(builder.lessThan(order.get("startDate"), filter.getTo()));
+        }
+        if (filter.getStatus() != null) {
+            predicates.add(status(builder, order, filter.getStatus()));
+        }
+        query.select(order)
+                .where(predicates.toArray(new Predicate[0]))
+                .orderBy(builder.asc(order.get("id")));
+        return entityManager.createQuery(query)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    @Override
+    public boolean existsBookingOverlapping(Long carId, Instant start, Instant end) {
+        String[] statements = bookingOverlappingStatements();
+        Query query = entityManager.createNativeQuery(end == null ? statements[1] : statements[0])
+                .setParameter("carId", carId)
+                .setParameter("start", start);
+        if (end != null) {
+            query.setParameter("end", end);
+        }
+        // Drivers map a boolean column to different types, a number is returned as a number by all of them
+        return ((Number) query.getSingleResult()).intValue() == 1;
+    }
+
+    @Override
+    public List<Order> findBookingsOverlapping(Collection<Long> carIds, Instant start, Instant end) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Order> query = builder.createQuery(Order.class);
+        Root<Order> order = query.from(Order.class);
+        query.select(order)
+                .where(overlapping(builder, order, carIds, start, end));
+        return entityManager.createQuery(query).getResultList();
+    }
+
+    @Override
+    public Set<Long> findBookedCarIds(Collection<Long> carIds, Instant start, Instant end) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> query = builder.createQuery(Long.class);
+        Root<Order> order = query.from(Order.class);
+        query.select(order.get("carId")).distinct(true)
+                .where(overlapping(builder, order, carIds, start, end));
+        return new HashSet<>(entityManager.createQuery(query).getResultList());
+    }
+
+    /**
+     * @return the conditions of the orders that book any of the cars at any time of the range [start, end)
+     */
+    private static Predicate[] overlapping(CriteriaBuilder builder, Root<Order> order, Collection<Long> carIds, Instant start, Instant end) {
+        return new Predicate[]{order.get("carId").in(carIds),
+                builder.isFalse(order.get("canceled")),
+                builder.lessThan(order.get("startDate"), end),
+                builder.or(builder.isNull(order.get("endDate")), builder.greaterThan(order.get("endDate"), start))};
+    }
+
+    /**
+     * Builds the statements of {@link #existsBookingOverlapping} from the mapping of the order entity, which is shared
+     * with the other services. JPQL has no select without an entity and an OR of both conditions in one WHERE clause
+     * is not a seek, so each condition is an EXISTS of its own.
+     * @return the statement for a range with end and the one for a range without end
+     */
+    private String[] bookingOverlappingStatements() {
+        String[] statements = bookingOverlappingStatements;
+        if (statements == null) {
+            AbstractEntityPersister persister = (AbstractEntityPersister) entityManager.getEntityManagerFactory()
+                    .unwrap(SessionFactoryImplementor.class).getMetamodel().entityPersister(Order.class);
+            String bookings = String.format("SELECT 1 FROM %s WHERE %s = :carId AND %s = FALSE AND ",
+                    persister.getTableName(), column(persister, "carId"), column(persister, "canceled"));
+            String endDate = column(persister, "endDate");
+            String startsBefore = String.format(" AND %s < :end", column(persister, "startDate"));
+            String exists = "SELECT CASE WHEN EXISTS (" + bookings + endDate + " > :start%1$s) "
+                    + "OR EXISTS (" + bookings + endDate + " IS NULL%1$s) THEN 1 ELSE 0 END";
+            statements = new String[]{String.format(exists, startsBefore), String.format(exists, "")};
+            bookingOverlappingStatements = statements;
+        }
+        return statements;
+    }
+
+    private static String column(AbstractEntityPersister persister, String property) {
+        return persister.getPropertyColumnNames(property)[0];
+    }
+
+    private static Predicate status(CriteriaBuilder builder, Root<Order> order, OrderFilter.Status status) {
+        Instant now = Instant.now();
+        switch (status) {
+            case CANCELED:
+                return builder.isTrue(order.get("canceled"));
+            case FINISHED:
+                return builder.and(builder.isFalse(order.get("canceled")),
+                        builder.lessThanOrEqualTo(order.get("endDate"), now));
+            default:
+                return builder.and(builder.isFalse(order.get("canceled")),
+                        builder.or(builder.isNull(order.get("endDate")), builder.greaterThan(order.get("endDate"), now)));
+        }
+    }
+}
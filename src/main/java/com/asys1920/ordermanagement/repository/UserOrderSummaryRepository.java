@@ -0,0 +1,58 @@
+package com.asys1920.ordermanagement.repository;
+
+import com.asys1920.ordermanagement.model.UserOrderSummary;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import javax.persistence.LockModeType;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The updates of the summaries are single statements that lock the row of the summary until the end of the current
+ * transaction. They do not load the summary, and return 0 if the user has no summary yet.
+ */
+public interface UserOrderSummaryRepository extends JpaRepository<UserOrderSummary, Long> {
+    /**
+     * Locks the summary of a user until the end of the current transaction, waits while another transaction holds it
+     * @param userId the id of the user
+     * @return the locked summary, empty if the user has no summary yet
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select s from UserOrderSummary s where s.userId = :userId")
+    Optional<UserOrderSummary> lockByUserId(@Param("userId") Long userId);
+
+    @Query("select s.userId from UserOrderSummary s")
+    List<Long> findUserIds();
+
+    /**
+     * Creates the empty summary of a user in the current transaction unless it exists. The merge updates an existing
+     * summary instead, without changing its numbers, and waits for a concurrent transaction that creates the same
+     * summary, so it does not fail with a duplicate key. On PostgreSQL this is
+     * {@code INSERT INTO user_order_summary (user_id) VALUES (:userId) ON CONFLICT DO NOTHING}.
+     * @param userId the id of the user
+     * @return the number of created or updated summaries
+     */
+    @Modifying
+    @Query(value = "MERGE INTO user_order_summary (user_id) KEY (user_id) VALUES (:userId)", nativeQuery = true)
+    int insertIfAbsent(@Param("userId") Long userId);
+
+    @Modifying
+    @Query("update UserOrderSummary s set s.lifetimeOrders = s.lifetimeOrders + :orders, " +
+            "s.lastOrderAt = case when s.lastOrderAt is null or s.lastOrderAt < :lastOrderAt then :lastOrderAt else s.lastOrderAt end " +
+            "where s.userId = :userId")
+    int addOrders(@Param("userId") Long userId, @Param("orders") long orders, @Param("lastOrderAt") Instant lastOrderAt);
+
+    @Modifying
+    @Query("update UserOrderSummary s set s.lifetimeOrders = s.lifetimeOrders - :orders, s.lastOrderAt = :lastOrderAt " +
+            "where s.userId = :userId")
+    int removeOrders(@Param("userId") Long userId, @Param("orders") long orders, @Param("lastOrderAt") Instant lastOrderAt);
+
+    @Modifying
+    @Query("update UserOrderSummary s set s.billedHours = s.billedHours + :hours where s.userId = :userId")
+    int addBilledHours(@Param("userId") Long userId, @Param("hours") long hours);
+}
@@ -0,0 +1,265 @@
+package com.asys1920.ordermanagement.service;
+
+import com.asys1920.model.Order;
+import com.asys1920.ordermanagement.repository.OrderRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * In-memory index of the time ranges in which the cars are booked, so availability checks do not have to load
+ * the rental history of a car. Every car has its own {@link IntervalTree}, which is rebuilt from the repository
+ * at startup and kept up to date by the order service whenever an order is saved.
+ * A running rental without an end date books the car from its start on. Bookings that already ended are not indexed,
+ * availability is only checked for time ranges that did not end yet. Until the first rebuild is complete the index is
+ * not {@link #isReady() ready} and availability is checked against the database.
+ */
+@Component
+public class AvailabilityIndex {
+    private static final Logger LOG = LoggerFactory.getLogger(AvailabilityIndex.class);
+    private final OrderRepository orderRepository;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private volatile ConcurrentMap<Long, IntervalTree> cars = new ConcurrentHashMap<>();
+    private volatile ConcurrentMap<Long, Booking> bookings = new ConcurrentHashMap<>();
+    // A lock instead of synchronized, a virtual thread that waits for the repository while rebuilding is not pinned
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile boolean ready;
+
+    public AvailabilityIndex(OrderRepository orderRepository, EntityManager entityManager, PlatformTransactionManager transactionManager) {
+        this.orderRepository = orderRepository;
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+    }
+
+    /**
+     * Replaces the content of the index with the bookings of the repository that did not end yet.
+     * Queries keep using the previous content until the new one is complete.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        writeLock.lock();
+        try {
+            ConcurrentMap<Long, IntervalTree> rebuiltCars = new ConcurrentHashMap<>();
+            ConcurrentMap<Long, Booking> rebuiltBookings = new ConcurrentHashMap<>();
+            forEachBooking(Instant.now(), booking -> {
+                rebuiltBookings.put(booking.orderId, booking);
+                rebuiltCars.computeIfAbsent(booking.carId, carId -> new IntervalTree())
+                        .insert(booking.orderId, booking.start, booking.end);
+            });
+            cars = rebuiltCars;
+            bookings = rebuiltBookings;
+            ready = true;
+            LOG.info("Rebuilt availability index with {} bookings of {} cars", bookings.size(), cars.size());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @return if the index was built from the repository, the web server accepts orders before that
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Streams the bookings of the repository that did not end before a time
+     * @param now the time before which ended bookings are skipped
+     * @param consumer called for every booking
+     */
+    private void forEachBooking(Instant now, Consumer<Booking> consumer) {
+        transactionTemplate.executeWithoutResult(status -> {
+            try (Stream<Order> orders = orderRepository.streamBookingsEndingAfter(now)) {
+                orders.forEach(order -> {
+                    Booking booking = Booking.of(order);
+                    if (booking != null && booking.end.isAfter(now)) {
+                        consumer.accept(booking);
+                    }
+                    // The persistence context would keep all orders otherwise
+                    entityManager.detach(order);
+                });
+            }
+        });
+    }
+
+    /**
+     * Adds, moves or removes the booking of an order after the order was saved
+     * @param order the saved order
+     */
+    public void update(Order order) {
+        if (order.getId() == null) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            Booking booking = Booking.of(order);
+            Booking previous = booking == null ? bookings.remove(order.getId()) : bookings.put(order.getId(), booking);
+            if (previous != null) {
+                IntervalTree tree = cars.get(previous.carId);
+                if (tree != null) {
+                    synchronized (tree) {
+                        tree.remove(previous.orderId, previous.start);
+                    }
+                }
+            }
+            if (booking != null) {
+                IntervalTree tree = cars.computeIfAbsent(booking.carId, carId -> new IntervalTree());
+                synchronized (tree) {
+                    tree.insert(booking.orderId, booking.start, booking.end);
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @param carId the car to be checked
+     * @param start the inclusive start of the time range
+     * @param end the exclusive end of the time range, null for a time range without end
+     * @return if the car is booked at any time of the range [start, end)
+     */
+    public boolean isBooked(Long carId, Instant start, Instant end) {
+        IntervalTree tree = cars.get(carId);
+        if (tree == null) {
+            return false;
+        }
+        synchronized (tree) {
+            return tree.overlaps(start, end == null ? Instant.MAX : end);
+        }
+    }
+
+    /**
+     * @param carIds the cars to be checked
+     * @param start the inclusive start of the time range
+     * @param end the exclusive end of the time range
+     * @return the ids of the cars that are booked at any time of the range [start, end)
+     */
+    public Set<Long> bookedCars(Collection<Long> carIds, Instant start, Instant end) {
+        Set<Long> booked = new HashSet<>();
+        for (Long carId : carIds) {
+            if (isBooked(carId, start, end)) {
+                booked.add(carId);
+            }
+        }
+        return booked;
+    }
+
+    /**
+     * Compares the index with the orders of the repository, bookings that already ended are not compared
+     * @return a description of every booking that differs between the index and the repository, empty if they match
+     */
+    public List<String> checkConsistency() {
+        Instant now = Instant.now();
+        Map<Long, Booking> expected = new HashMap<>();
+        forEachBooking(now, booking -> expected.put(booking.orderId, booking));
+        List<String> differences = new ArrayList<>();
+        Map<Long, Booking> indexed = new HashMap<>();
+        cars.forEach((carId, tree) -> {
+            synchronized (tree) {
+                tree.forEach((orderId, node) -> {
+                    if (node.getEnd().isAfter(now)) {
+                        indexed.put(orderId, new Booking(orderId, carId, node.getStart(), node.getEnd()));
+                    }
+                });
+            }
+        });
+        expected.forEach((orderId, booking) -> {
+            Booking actual = indexed.get(orderId);
+            if (actual == null) {
+                differences.add(String.format("Order %d is missing in the index", orderId));
+            } else if (!actual.equals(booking)) {
+                differences.add(String.format("Order %d is indexed as %s but stored as %s", orderId, actual, booking));
+            }
+        });
+        indexed.keySet().stream()
+                .filter(orderId -> !expected.containsKey(orderId))
+                .forEach(orderId -> differences.add(String.format("Order %d is indexed but not booked", orderId)));
+        if (!differences.isEmpty()) {
+            LOG.warn("Availability index differs from the repository in {} bookings", differences.size());
+        }
+        return differences;
+    }
+
+    /**
+     * @return the number of indexed bookings
+     */
+    public int size() {
+        return bookings.size();
+    }
+
+    private static final class Booking {
+        private final Long orderId;
+        private final Long carId;
+        private final Instant start;
+        private final Instant end;
+
+        private Booking(Long orderId, Long carId, Instant start, Instant end) {
+            this.orderId = orderId;
+            this.carId = carId;
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * @param order the order
+         * @return the booking of the order or null if the order does not book its car
+         */
+        private static Booking of(Order order) {
+            if (order.isCanceled() || order.getStartDate() == null || order.getCarId() == null) {
+                return null;
+            }
+            Instant end = order.getEndDate() == null ? Instant.MAX : order.getEndDate();
+            if (!end.isAfter(order.getStartDate())) {
+                return null;
+            }
+            return new Booking(order.getId(), order.getCarId(), order.getStartDate(), end);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof Booking)) {
+                return false;
+            }
+            Booking booking = (Booking) other;
+            return orderId.equals(booking.orderId) && carId.equals(booking.carId)
+                    && start.equals(booking.start) && end.equals(booking.end);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(orderId, carId, start, end);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("car %d [%s, %s)", carId, start, end == Instant.MAX ? "open" : end);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.asys1920.ordermanagement.service;
+
+import com.asys1920.model.Bill;
+import com.asys1920.ordermanagement.adapter.AccountingServiceAdapter;
+import com.asys1920.ordermanagement.model.BillOutboxEntry;
+import com.asys1920.ordermanagement.repository.BillOutboxRepository;
+import com.asys1920.ordermanagement.repository.OrderRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.naming.ServiceUnavailableException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+/**
+ * Sends the bills of the outbox to the accounting service and stores the assigned bill id in the order.
+ * Failed attempts are retried with an exponential backoff until the accounting service accepts the bill.
+ * Several instances that share the database dispatch the same outbox, every due entry is claimed by one of them for
+ * {@code bill.outbox.lease} before it is sent. The order id is sent as idempotency key, so a bill sent again after an
+ * instance failed before storing the bill id is not saved twice.
+ */
+@Component
+public class BillOutboxDispatcher {
+    private static final Logger LOG = LoggerFactory.getLogger(BillOutboxDispatcher.class);
+    private final BillOutboxRepository billOutboxRepository;
+    private final OrderRepository orderRepository;
+    private final AccountingServiceAdapter accountingServiceAdapter;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+    private final Duration lease;
+
+    public BillOutboxDispatcher(BillOutboxRepository billOutboxRepository,
+                                OrderRepository orderRepository,
+                                AccountingServiceAdapter accountingServiceAdapter,
+                                TransactionTemplate transactionTemplate,
+                                MeterRegistry meterRegistry,
+                                @Value("${bill.outbox.batch-size}") int batchSize,
+                                @Value("${bill.outbox.initial-backoff}") Duration initialBackoff,
+                                @Value("${bill.outbox.max-backoff}") Duration maxBackoff,
+                                @Value("${bill.outbox.lease}") Duration lease) {
+        this.billOutboxRepository = billOutboxRepository;
+        this.orderRepository = orderRepository;
+        this.accountingServiceAdapter = accountingServiceAdapter;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.lease = lease;
+        Gauge.builder("bill.outbox.pending", billOutboxRepository, repository -> repository.countByStatus(BillOutboxEntry.Status.PENDING))
+                .description("Bills that were not accepted by the accounting service yet")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Sends all bills whose next attempt is due
+     */
+    @Scheduled(fixedDelayString = "${bill.outbox.poll-interval}")
+    public void dispatchPendingBills() {
+        List<Long> dueIds;
+        do {
+            Instant now = Instant.now();
+            dueIds = billOutboxRepository.findDueIds(BillOutboxEntry.Status.PENDING, now, PageRequest.of(0, batchSize));
+            if (dueIds.isEmpty()) {
+                return;
+            }
+            List<BillOutboxEntry> dueEntries = claim(dueIds, now);
+            boolean accepted = true;
+            if (accountingServiceAdapter.isBatchEnabled()) {
+                accepted = dispatch(dueEntries);
+            } else {
+                for (int i = 0; accepted && i < dueEntries.size(); i++) {
+                    accepted = dispatch(dueEntries.get(i));
+                }
+            }
+            if (!accepted) {
+                // The accounting service is not available, try again with the next poll
+                return;
+            }
+        } while (dueIds.size() == batchSize);
+    }
+
+    /**
+     * @param dueIds the ids of the entries that were due
+     * @param now the time the entries were due at
+     * @return the entries this dispatch claimed, without those another instance claimed in the meantime
+     */
+    private List<BillOutboxEntry> claim(List<Long> dueIds, Instant now) {
+        String claim = UUID.randomUUID().toString();
+        transactionTemplate.executeWithoutResult(status ->
+                billOutboxRepository.claim(dueIds, BillOutboxEntry.Status.PENDING, now, claim, now.plus(lease)));
+        return billOutboxRepository.findAllByClaimOrderByIdAsc(claim);
+    }
+
+    /**
+     * Sends a single bill to the accounting service
+     * @param entry the outbox entry of the bill
+     * @return if the accounting service accepted the bill
+     */
+    private boolean dispatch(BillOutboxEntry entry) {
+        Bill bill;
+        try {
+            bill = accountingServiceAdapter.saveBill(entry.toBill(), entry.getIdempotencyKey());
+        } catch (ServiceUnavailableException ex) {
+            bill = null;
+        }
+        if (bill == null || bill.getId() == null) {
+            failed(entry);
+            return false;
+        }
+        sent(entry, bill.getId());
+        return true;
+    }
+
+    /**
+     * Submits the bills of several entries to the accounting service before waiting for any of them, so with batching
+     * enabled they are collected into the same bulk requests
+     * @param entries the outbox entries of the bills
+     * @return if the accounting service accepted all bills
+     */
+    private boolean dispatch(List<BillOutboxEntry> entries) {
+        List<CompletableFuture<Bill>> bills = entries.stream()
+                .map(entry -> accountingServiceAdapter.submitBill(entry.toBill(), entry.getIdempotencyKey()))
+                .collect(Collectors.toList());
+        boolean accepted = true;
+        for (int i = 0; i < entries.size(); i++) {
+            Bill bill = bills.get(i).exceptionally(ex -> null).join();
+            if (bill == null || bill.getId() == null) {
+                failed(entries.get(i));
+                accepted = false;
+            } else {
+                sent(entries.get(i), bill.getId());
+            }
+        }
+        return accepted;
+    }
+
+    private void failed(BillOutboxEntry entry) {
+        entry.failed(Instant.now().plus(backoff(entry.getAttempts())));
+        billOutboxRepository.save(entry);
+        LOG.warn("Bill of order {} could not be saved in the accounting service, attempt {}", entry.getOrderId(), entry.getAttempts());
+    }
+
+    private void sent(BillOutboxEntry entry, Long billId) {
+        transactionTemplate.executeWithoutResult(status -> {
+            entry.sent(billId);
+            billOutboxRepository.save(entry);
+            orderRepository.findById(entry.getOrderId()).ifPresent(order -> {
+                order.setBillId(billId);
+                orderRepository.save(order);
+            });
+        });
+    }
+
+    /**
+     * @param attempts the number of failed attempts so far
+     * @return the time to wait before the next attempt
+     */
+    private Duration backoff(int attempts) {
+        Duration backoff = initialBackoff.multipliedBy(1L << Math.min(attempts, 20));
+        return backoff.compareTo(maxBackoff) > 0 ? maxBackoff : backoff;
+    }
+}
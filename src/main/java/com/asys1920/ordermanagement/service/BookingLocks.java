@@ -0,0 +1,106 @@
+package com.asys1920.ordermanagement.service;
+
+import com.asys1920.ordermanagement.repository.CarLockRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Serializes the bookings of a car, so the availability check and the insert of an order cannot interleave with
+ * those of a concurrent order for the same car. The cars are spread over a fixed number of lock stripes, orders for
+ * cars on different stripes are booked in parallel.
+ * With {@code order.booking.database-lock.enabled} the booking transaction also locks the row of the car in the
+ * database, which serializes the bookings of a car across all instances of the service that share the database.
+ */
+@Component
+public class BookingLocks {
+    // Locks instead of synchronized, a virtual thread that waits for the repository while holding one is not pinned
+    private final ReentrantLock[] stripes;
+    private final boolean databaseLockEnabled;
+    private final CarLockRepository carLockRepository;
+
+    public BookingLocks(@Value("${order.booking.lock-stripes}") int lockStripes,
+                        @Value("${order.booking.database-lock.enabled}") boolean databaseLockEnabled,
+                        CarLockRepository carLockRepository) {
+        // A power of two, so the stripe of a car is selected with a mask
+        this.stripes = new ReentrantLock[Integer.highestOneBit(Math.max(1, lockStripes - 1)) << 1];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        this.databaseLockEnabled = databaseLockEnabled;
+        this.carLockRepository = carLockRepository;
+    }
+
+    /**
+     * @param carId the id of the car
+     * @return the lock that has to be held while the car is booked in this instance
+     */
+    public ReentrantLock stripe(Long carId) {
+        return stripes[stripeIndex(carId)];
+    }
+
+    /**
+     * Collects the locks of several cars, e.g. of the orders of a batch. Taking them in the returned order cannot
+     * deadlock with another caller that takes the locks of an overlapping set of cars.
+     * @param carIds the ids of the cars
+     * @return the distinct locks of the cars in the order of their stripes
+     */
+    public List<ReentrantLock> stripes(Collection<Long> carIds) {
+        SortedSet<Integer> indexes = new TreeSet<>();
+        for (Long carId : carIds) {
+            indexes.add(stripeIndex(carId));
+        }
+        List<ReentrantLock> locks = new ArrayList<>(indexes.size());
+        for (int index : indexes) {
+            locks.add(stripes[index]);
+        }
+        return locks;
+    }
+
+    /**
+     * @return if the bookings are serialized in the database as well, then other instances may have booked the car
+     * and the availability has to be checked against the database instead of the availability index
+     */
+    public boolean isDatabaseLockEnabled() {
+        return databaseLockEnabled;
+    }
+
+    /**
+     * Locks the rows of several cars in the order of their ids until the current transaction ends, if the database
+     * lock is enabled
+     * @param carIds the ids of the cars
+     */
+    public void lockInDatabase(Collection<Long> carIds) {
+        if (!databaseLockEnabled) {
+            return;
+        }
+        for (Long carId : new TreeSet<>(carIds)) {
+            lockInDatabase(carId);
+        }
+    }
+
+    /**
+     * Locks the row of the car until the current transaction ends, if the database lock is enabled.
+     * Creates the row in the same transaction if the car was never booked before.
+     * @param carId the id of the car
+     */
+    public void lockInDatabase(Long carId) {
+        if (!databaseLockEnabled || carLockRepository.lockByCarId(carId).isPresent()) {
+            return;
+        }
+        carLockRepository.insertIfAbsent(carId);
+        carLockRepository.lockByCarId(carId)
+                .orElseThrow(() -> new IllegalStateException("The lock of car " + carId + " was not created"));
+    }
+
+    private int stripeIndex(Long carId) {
+        int hash = Long.hashCode(carId);
+        return (hash ^ (hash >>> 16)) & (stripes.length - 1);
+    }
+}
@@ -0,0 +1,66 @@
+package com.asys1920.ordermanagement.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the latency of the stages of finishing an order, tagged by the stage: loading the order, waiting for the
+ * car and user service and saving the order with its bill. Every stage starts when the previous one ended.
+ */
+@Component
+public class FinishStages {
+    static final String METRIC = "order.finish.stages";
+
+    private final Timer load;
+    private final Timer lookups;
+    private final Timer save;
+
+    public FinishStages(MeterRegistry meterRegistry) {
+        this.load = timer(meterRegistry, "load");
+        this.lookups = timer(meterRegistry, "lookups");
+        this.save = timer(meterRegistry, "save");
+    }
+
+    /**
+     * The order was loaded
+     * @param start the {@link System#nanoTime()} the stage started at
+     * @return the {@link System#nanoTime()} the stage ended at
+     */
+    public long loaded(long start) {
+        return record(load, start);
+    }
+
+    /**
+     * The car and the user of a finished order were fetched, not recorded for a canceled order
+     * @param start the {@link System#nanoTime()} the stage started at
+     * @return the {@link System#nanoTime()} the stage ended at
+     */
+    public long lookedUp(long start) {
+        return record(lookups, start);
+    }
+
+    /**
+     * The order was saved
+     * @param start the {@link System#nanoTime()} the stage started at
+     * @return the {@link System#nanoTime()} the stage ended at
+     */
+    public long saved(long start) {
+        return record(save, start);
+    }
+
+    private static long record(Timer timer, long start) {
+        long end = System.nanoTime();
+        timer.record(end - start, TimeUnit.NANOSECONDS);
+        return end;
+    }
+
+    private static Timer timer(MeterRegistry meterRegistry, String stage) {
+        return Timer.builder(METRIC)
+                .tag("stage", stage)
+                .description("Latency of the stages of finishing an order")
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,214 @@
+package com.asys1920.ordermanagement.service;
+
+import java.time.Instant;
+import java.util.function.BiConsumer;
+
+/**
+ * Balanced search tree of the bookings of a single car, ordered by start and order id.
+ * Every node knows the latest end in its subtree, so an overlap query only descends into subtrees that can
+ * contain an overlapping booking and runs in O(log n). Bookings without an end are stored with {@link Instant#MAX}.
+ * Not thread safe.
+ */
+class IntervalTree {
+    private Node root;
+    private int size;
+
+    /**
+     * Adds a booking to the tree
+     * @param orderId the id of the booked order
+     * @param start the inclusive start of the booking
+     * @param end the exclusive end of the booking
+     */
+    void insert(Long orderId, Instant start, Instant end) {
+        root = insert(root, new Node(orderId, start, end));
+        size++;
+    }
+
+    /**
+     * Removes a booking from the tree
+     * @param orderId the id of the booked order
+     * @param start the start the booking was added with
+     * @return if the booking was part of the tree
+     */
+    boolean remove(Long orderId, Instant start) {
+        int sizeBefore = size;
+        root = remove(root, orderId, start);
+        return size < sizeBefore;
+    }
+
+    /**
+     * @param start the inclusive start of the window
+     * @param end the exclusive end of the window
+     * @return if a booking overlaps the window [start, end)
+     */
+    boolean overlaps(Instant start, Instant end) {
+        Node node = root;
+        while (node != null) {
+            if (node.start.isBefore(end) && node.end.isAfter(start)) {
+                return true;
+            }
+            // The left subtree can only hold an overlapping booking if one of its bookings ends after the start,
+            // otherwise all candidates start later than this node and are on the right
+            if (node.left != null && node.left.maxEnd.isAfter(start)) {
+                node = node.left;
+            } else {
+                node = node.right;
+            }
+        }
+        return false;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Visits all bookings ordered by their start
+     * @param visitor receives the order id and the node of every booking
+     */
+    void forEach(BiConsumer<Long, Node> visitor) {
+        forEach(root, visitor);
+    }
+
+    private static void forEach(Node node, BiConsumer<Long, Node> visitor) {
+        if (node == null) {
+            return;
+        }
+        forEach(node.left, visitor);
+        visitor.accept(node.orderId, node);
+        forEach(node.right, visitor);
+    }
+
+    private Node insert(Node node, Node added) {
+        if (node == null) {
+            return added;
+        }
+        if (compare(added.start, added.orderId, node) < 0) {
+            node.left = insert(node.left, added);
+        } else {
+            node.right = insert(node.right, added);
+        }
+        return balance(node);
+    }
+
+    private Node remove(Node node, Long orderId, Instant start) {
+        if (node == null) {
+            return null;
+        }
+        int comparison = compare(start, orderId, node);
+        if (comparison < 0) {
+            node.left = remove(node.left, orderId, start);
+        } else if (comparison > 0) {
+            node.right = remove(node.right, orderId, start);
+        } else {
+            size--;
+            if (node.left == null) {
+                return node.right;
+            }
+            if (node.right == null) {
+                return node.left;
+            }
+            Node successor = node.right;
+            while (successor.left != null) {
+                successor = successor.left;
+            }
+            successor.right = removeMin(node.right);
+            successor.left = node.left;
+            return balance(successor);
+        }
+        return balance(node);
+    }
+
+    private Node removeMin(Node node) {
+        if (node.left == null) {
+            return node.right;
+        }
+        node.left = removeMin(node.left);
+        return balance(node);
+    }
+
+    private static int compare(Instant start, Long orderId, Node node) {
+        int comparison = start.compareTo(node.start);
+        return comparison != 0 ? comparison : orderId.compareTo(node.orderId);
+    }
+
+    private static Node balance(Node node) {
+        node.update();
+        int balance = height(node.left) - height(node.right);
+        if (balance > 1) {
+            if (height(node.left.left) < height(node.left.right)) {
+                node.left = rotateLeft(node.left);
+            }
+            return rotateRight(node);
+        }
+        if (balance < -1) {
+            if (height(node.right.right) < height(node.right.left)) {
+                node.right = rotateRight(node.right);
+            }
+            return rotateLeft(node);
+        }
+        return node;
+    }
+
+    private static Node rotateLeft(Node node) {
+        Node right = node.right;
+        node.right = right.left;
+        right.left = node;
+        node.update();
+        right.update();
+        return right;
+    }
+
+    private static Node rotateRight(Node node) {
+        Node left = node.left;
+        node.left = left.right;
+        left.right = node;
+        node.update();
+        left.update();
+        return left;
+    }
+
+    private static int height(Node node) {
+        return node == null ? 0 : node.height;
+    }
+
+    static final class Node {
+        private final Long orderId;
+        private final Instant start;
+        private final Instant end;
+        private Instant maxEnd;
+        private int height = 1;
+        private Node left;
+        private Node right;
+
+        private Node(Long orderId, Instant start, Instant end) {
+            this.orderId = orderId;
+            this.start = start;
+            this.end = end;
+            this.maxEnd = end;
+        }
+
+        Instant getStart() {
+            return start;
+        }
+
+        Instant getEnd() {
+            return end;
+        }
+
+        private void update() {
+            height = 1 + Math.max(height(left), height(right));
+            maxEnd = end;
+            if (left != null && left.maxEnd.isAfter(maxEnd)) {
+                maxEnd = left.maxEnd;
+            }
+            if (right != null && right.maxEnd.isAfter(maxEnd)) {
+                maxEnd = right.maxEnd;
+            }
+        }
+    }
+}
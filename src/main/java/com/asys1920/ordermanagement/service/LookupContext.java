@@ -0,0 +1,113 @@
+package com.asys1920.ordermanagement.service;
+
+import com.asys1920.model.Car;
+import com.asys1920.model.User;
+import com.asys1920.ordermanagement.adapter.CarServiceAdapter;
+import com.asys1920.ordermanagement.adapter.Deadline;
+import com.asys1920.ordermanagement.adapter.UserServiceAdapter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PreDestroy;
+import javax.naming.ServiceUnavailableException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Resolves users and cars for a single request. Every entity is fetched from its service at most once
+ * per request, later lookups of the same id share the first result. All lookups of a request have to complete
+ * within the same deadline. A context is created for every request by
+ * {@link com.asys1920.ordermanagement.config.LookupConfig#lookupContext()}.
+ */
+public class LookupContext {
+    private static final Logger LOG = LoggerFactory.getLogger(LookupContext.class);
+    static final String REMOTE_LOOKUPS = "order.lookups.remote";
+    static final String REUSED_LOOKUPS = "order.lookups.reused";
+
+    private final UserServiceAdapter userServiceAdapter;
+    private final CarServiceAdapter carServiceAdapter;
+    private final Executor lookupExecutor;
+    private final Deadline deadline;
+
+    private final ConcurrentMap<Long, CompletableFuture<User>> users = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, CompletableFuture<Car>> cars = new ConcurrentHashMap<>();
+
+    private final Counter remoteUserLookups;
+    private final Counter remoteCarLookups;
+    private final Counter reusedUserLookups;
+    private final Counter reusedCarLookups;
+
+    public LookupContext(UserServiceAdapter userServiceAdapter, CarServiceAdapter carServiceAdapter,
+                         Executor lookupExecutor, MeterRegistry meterRegistry, Duration requestDeadline) {
+        this.userServiceAdapter = userServiceAdapter;
+        this.carServiceAdapter = carServiceAdapter;
+        this.lookupExecutor = lookupExecutor;
+        this.deadline = Deadline.after(requestDeadline);
+        this.remoteUserLookups = meterRegistry.counter(REMOTE_LOOKUPS, "entity", "user");
+        this.remoteCarLookups = meterRegistry.counter(REMOTE_LOOKUPS, "entity", "car");
+        this.reusedUserLookups = meterRegistry.counter(REUSED_LOOKUPS, "entity", "user");
+        this.reusedCarLookups = meterRegistry.counter(REUSED_LOOKUPS, "entity", "car");
+    }
+
+    /**
+     * Starts fetching the user unless it was already requested in this request
+     * @param userId the id of the user
+     * @return the pending user
+     */
+    public CompletableFuture<User> user(Long userId) {
+        CompletableFuture<User> user = users.get(userId);
+        if (user != null) {
+            reusedUserLookups.increment();
+            return user;
+        }
+        return users.computeIfAbsent(userId, id -> {
+            remoteUserLookups.increment();
+            return Lookups.async(() -> deadline.run(() -> userServiceAdapter.getUser(id)), lookupExecutor);
+        });
+    }
+
+    /**
+     * Starts fetching the car unless it was already requested in this request
+     * @param carId the id of the car
+     * @return the pending car
+     */
+    public CompletableFuture<Car> car(Long carId) {
+        CompletableFuture<Car> car = cars.get(carId);
+        if (car != null) {
+            reusedCarLookups.increment();
+            return car;
+        }
+        return cars.computeIfAbsent(carId, id -> {
+            remoteCarLookups.increment();
+            return Lookups.async(() -> deadline.run(() -> carServiceAdapter.getCar(id)), lookupExecutor);
+        });
+    }
+
+    /**
+     * Fetches the user unless it was already fetched in this request
+     * @param userId the id of the user
+     * @return the user
+     */
+    public User getUser(Long userId) throws ServiceUnavailableException {
+        return Lookups.await(user(userId));
+    }
+
+    /**
+     * Fetches the car unless it was already fetched in this request
+     * @param carId the id of the car
+     * @return the car
+     */
+    public Car getCar(Long carId) throws ServiceUnavailableException {
+        return Lookups.await(car(carId));
+    }
+
+    @PreDestroy
+    void requestCompleted() {
+        LOG.debug("Request resolved {} users and {} cars", users.size(), cars.size());
+    }
+}
@@ -0,0 +1,56 @@
+package com.asys1920.ordermanagement.service;
+
+import javax.naming.ServiceUnavailableException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Helpers to run downstream lookups concurrently without losing their checked exceptions
+ */
+public final class Lookups {
+
+    private Lookups() {
+    }
+
+    /**
+     * Runs a downstream lookup on the given executor
+     * @param lookup the call to the downstream service
+     * @param executor the executor the call runs on
+     * @return the pending result of the lookup
+     */
+    public static <T> CompletableFuture<T> async(RemoteLookup<T> lookup, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return lookup.get();
+            } catch (ServiceUnavailableException ex) {
+                throw new CompletionException(ex);
+            }
+        }, executor);
+    }
+
+    /**
+     * Waits for a lookup and rethrows its failure as it was thrown by the lookup
+     * @param future the pending lookup
+     * @return the result of the lookup
+     */
+    public static <T> T await(CompletableFuture<T> future) throws ServiceUnavailableException {
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof ServiceUnavailableException) {
+                throw (ServiceUnavailableException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw ex;
+        }
+    }
+
+    @FunctionalInterface
+    public interface RemoteLookup<T> {
+        T get() throws ServiceUnavailableException;
+    }
+}
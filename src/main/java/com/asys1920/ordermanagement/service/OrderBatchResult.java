@@ -0,0 +1,75 @@
+package com.asys1920.ordermanagement.service;
+
+import com.asys1920.model.Order;
+
+/**
+ * The result of a single order of a batch, either the created or finished order or the reason it was rejected
+ */
+public class OrderBatchResult {
+    public static final String INVALID = "invalid";
+    public static final String ILLEGAL_RESERVATION = "illegal_reservation";
+    public static final String CAR_EOL = "car_eol";
+    public static final String CAR_IN_USE = "car_in_use";
+    public static final String USER_INACTIVE = "user_inactive";
+    public static final String USER_BANNED = "user_banned";
+    public static final String NOT_FOUND = "not_found";
+    public static final String CANCELED = "canceled";
+    public static final String ALREADY_FINISHED = "already_finished";
+    public static final String SERVICE_UNAVAILABLE = "service_unavailable";
+    public static final String ABORTED = "aborted";
+
+    private final Order order;
+    private final String rejection;
+    private final String message;
+
+    private OrderBatchResult(Order order, String rejection, String message) {
+        this.order = order;
+        this.rejection = rejection;
+        this.message = message;
+    }
+
+    public static OrderBatchResult created(Order order) {
+        return new OrderBatchResult(order, null, null);
+    }
+
+    public static OrderBatchResult finished(Order order) {
+        return new OrderBatchResult(order, null, null);
+    }
+
+    public static OrderBatchResult rejected(String rejection, String message) {
+        return new OrderBatchResult(null, rejection, message);
+    }
+
+    /**
+     * The result of an order that passed its checks, but was not created because another order of an all-or-nothing
+     * batch was rejected
+     */
+    public static OrderBatchResult aborted() {
+        return rejected(ABORTED, "Another order of the batch was rejected");
+    }
+
+    /**
+     * @return if the order was created or finished
+     */
+    public boolean isAccepted() {
+        return order != null;
+    }
+
+    /**
+     * @return the created or finished order, null if the order was rejected
+     */
+    public Order getOrder() {
+        return order;
+    }
+
+    /**
+     * @return the reason the order was rejected for, null if it was accepted
+     */
+    public String getRejection() {
+        return rejection;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+}
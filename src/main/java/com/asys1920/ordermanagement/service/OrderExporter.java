@@ -0,0 +1,75 @@
+package com.asys1920.ordermanagement.service;
+
+import com.asys1920.mapper.OrderMapper;
+import com.asys1920.model.Order;
+import com.asys1920.ordermanagement.repository.OrderRepository;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.stream.Stream;
+
+/**
+ * Writes all orders as newline delimited JSON. The orders are streamed from the database and written one by one,
+ * so the memory used does not depend on the number of orders.
+ */
+@Component
+public class OrderExporter {
+    private static final Logger LOG = LoggerFactory.getLogger(OrderExporter.class);
+    private final OrderRepository orderRepository;
+    private final ObjectWriter objectWriter;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public OrderExporter(OrderRepository orderRepository, ObjectMapper objectMapper, PlatformTransactionManager transactionManager) {
+        this.orderRepository = orderRepository;
+        this.objectMapper = objectMapper;
+        // The output is flushed by the generator when its buffer is full, not after every order
+        this.objectWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+    }
+
+    /**
+     * Writes every order as one line of JSON
+     * @param out the stream the orders are written to, stays open
+     * @return the number of written orders
+     */
+    public long export(OutputStream out) {
+        LOG.trace("SERVICE {} initiated", "export");
+        Long exported = transactionTemplate.execute(status -> {
+            long count = 0;
+            try (Stream<Order> orders = orderRepository.streamAllByOrderByIdAsc();
+                 JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                generator.setRootValueSeparator(null);
+                for (Order order : (Iterable<Order>) orders::iterator) {
+                    objectWriter.writeValue(generator, OrderMapper.INSTANCE.orderToOrderDTO(order));
+                    generator.writeRaw('\n');
+                    // Written orders are not needed anymore, the persistence context would keep all of them otherwise
+                    entityManager.detach(order);
+                    count++;
+                }
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            return count;
+        });
+        LOG.trace("SERVICE {} completed", "export");
+        return exported == null ? 0 : exported;
+    }
+}
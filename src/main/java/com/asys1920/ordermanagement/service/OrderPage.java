@@ -0,0 +1,29 @@
+package com.asys1920.ordermanagement.service;
+
+import com.asys1920.model.Order;
+
+import java.util.List;
+
+/**
+ * A page of orders and the cursor of the following page
+ */
+public class OrderPage {
+    private final List<Order> orders;
+    private final Long nextCursor;
+
+    public OrderPage(List<Order> orders, Long nextCursor) {
+        this.orders = orders;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<Order> getOrders() {
+        return orders;
+    }
+
+    /**
+     * @return the cursor of the following page, null if this is the last page
+     */
+    public Long getNextCursor() {
+        return nextCursor;
+    }
+}
@@ -0,0 +1,68 @@
+package com.asys1920.ordermanagement.service;
+
+import com.asys1920.model.User;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+/**
+ * Counts the orders and reservations that were rejected, tagged by the reason of the rejection
+ */
+@Component
+public class OrderRejections {
+    static final String METRIC = "order.rejections";
+
+    private final Counter carEol;
+    private final Counter carInUse;
+    private final Counter userInactive;
+    private final Counter userBanned;
+    private final Counter illegalReservation;
+
+    public OrderRejections(MeterRegistry meterRegistry) {
+        this.carEol = counter(meterRegistry, "car_eol");
+        this.carInUse = counter(meterRegistry, "car_in_use");
+        this.userInactive = counter(meterRegistry, "user_inactive");
+        this.userBanned = counter(meterRegistry, "user_banned");
+        this.illegalReservation = counter(meterRegistry, "illegal_reservation");
+    }
+
+    /**
+     * The requested car is end of life
+     */
+    public void carEol() {
+        carEol.increment();
+    }
+
+    /**
+     * The requested car is booked at the requested time
+     */
+    public void carInUse() {
+        carInUse.increment();
+    }
+
+    /**
+     * The requested user may not rent a car
+     * @param user the user who is either inactive or banned
+     */
+    public void userMayNotRent(User user) {
+        if (!user.isActive()) {
+            userInactive.increment();
+        } else {
+            userBanned.increment();
+        }
+    }
+
+    /**
+     * The requested reservation does not end after its start
+     */
+    public void illegalReservation() {
+        illegalReservation.increment();
+    }
+
+    private static Counter counter(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder(METRIC)
+                .tag("reason", reason)
+                .description("Orders and reservations that were rejected")
+                .register(meterRegistry);
+    }
+}
@@ -4,36 +4,78 @@ import com.asys1920.model.Bill;
 import com.asys1920.model.Car;
 import com.asys1920.model.Order;
 import com.asys1920.model.User;
-import com.asys1920.ordermanagement.adapter.AccountingServiceAdapter;
-import com.asys1920.ordermanagement.adapter.CarServiceAdapter;
-import com.asys1920.ordermanagement.adapter.UserServiceAdapter;
 import com.asys1920.ordermanagement.exception.CarNotAvailableException;
+import com.asys1920.ordermanagement.exception.OrderAlreadyFinishedException;
 import com.asys1920.ordermanagement.exception.OrderNotFoundException;
 import com.asys1920.ordermanagement.exception.UserMayNotRentException;
+import com.asys1920.ordermanagement.model.BillOutboxEntry;
+import com.asys1920.ordermanagement.model.UserOrderSummary;
+import com.asys1920.ordermanagement.repository.BillOutboxRepository;
+import com.asys1920.ordermanagement.repository.OrderFilter;
 import com.asys1920.ordermanagement.repository.OrderRepository;
+import io.micrometer.core.annotation.Timed;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.naming.ServiceUnavailableException;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
 
 @Service
 public class OrderService {
     private static final Logger LOG = LoggerFactory.getLogger(OrderService.class);
+    private static final String OPERATION_METRIC = "order.service.operations";
+    private static final String CANCELED_MESSAGE = "The requested order was canceled";
+    private static final String FINISHED_MESSAGE = "The requested order was already finished";
     private final OrderRepository orderRepository;
 
-    private final UserServiceAdapter userServiceAdapter;
-    private final CarServiceAdapter carServiceAdapter;
-    private final AccountingServiceAdapter accountingServiceAdapter;
+    private final BillOutboxRepository billOutboxRepository;
+    private final LookupContext lookupContext;
+    private final Executor lookupExecutor;
+    private final TransactionTemplate transactionTemplate;
+    private final AvailabilityIndex availabilityIndex;
+    private final boolean availabilityIndexEnabled;
+    private final OrderRejections rejections;
+    private final BookingLocks bookingLocks;
+    private final UserOrderSummaries userOrderSummaries;
+    private final FinishStages finishStages;
 
-    public OrderService(OrderRepository orderRepository, UserServiceAdapter userServiceAdapter, CarServiceAdapter carServiceAdapter, AccountingServiceAdapter accountingServiceAdapter) {
+    public OrderService(OrderRepository orderRepository, BillOutboxRepository billOutboxRepository, LookupContext lookupContext, @Qualifier("lookupExecutor") Executor lookupExecutor, TransactionTemplate transactionTemplate,
+                        AvailabilityIndex availabilityIndex, @Value("${order.availability.index.enabled}") boolean availabilityIndexEnabled,
+                        OrderRejections rejections, BookingLocks bookingLocks, UserOrderSummaries userOrderSummaries,
+                        FinishStages finishStages) {
         this.orderRepository = orderRepository;
-        this.userServiceAdapter = userServiceAdapter;
-        this.carServiceAdapter = carServiceAdapter;
-        this.accountingServiceAdapter = accountingServiceAdapter;
+        this.billOutboxRepository = billOutboxRepository;
+        this.lookupContext = lookupContext;
+        this.lookupExecutor = lookupExecutor;
+        this.transactionTemplate = transactionTemplate;
+        this.availabilityIndex = availabilityIndex;
+        this.availabilityIndexEnabled = availabilityIndexEnabled;
+        this.rejections = rejections;
+        this.bookingLocks = bookingLocks;
+        this.userOrderSummaries = userOrderSummaries;
+        this.finishStages = finishStages;
     }
 
     /**
@@ -42,8 +84,8 @@ public class OrderService {
      * @return if the user is not active
      */
     public boolean userIsNotActive(Long userId) throws ServiceUnavailableException {
-        LOG.trace(String.format("SERVICE %s %d initiated", "userIsNotActive", userId));
-        User user = userServiceAdapter.getUser(userId);
+        LOG.trace("SERVICE {} {} initiated", "userIsNotActive", userId);
+        User user = lookupContext.getUser(userId);
         return !user.isActive();
     }
 
@@ -53,8 +95,8 @@ public class OrderService {
      * @return if the user is banned
      */
     public boolean userIsBanned(Long userId) throws ServiceUnavailableException {
-        LOG.trace(String.format("SERVICE %s %d initiated", "userIsBanned", userId));
-        return userServiceAdapter.getUser(userId).isBanned();
+        LOG.trace("SERVICE {} {} initiated", "userIsBanned", userId);
+        return lookupContext.getUser(userId).isBanned();
     }
 
     /**
@@ -63,8 +105,8 @@ public class OrderService {
      * @return if the car is end of life
      */
     public boolean carIsEol(Long carId) throws ServiceUnavailableException {
-        LOG.trace(String.format("SERVICE %s %d initiated", "carIsEol", carId));
-        Car car = carServiceAdapter.getCar(carId);
+        LOG.trace("SERVICE {} {} initiated", "carIsEol", carId);
+        Car car = lookupContext.getCar(carId);
         return car.isEol();
     }
 
@@ -76,13 +118,52 @@ public class OrderService {
      * @return if the car is in use
      */
     public boolean carIsInUse(Long carId, Instant time) {
-        LOG.trace(String.format("SERVICE %s initiated", "carIsInUse"));
-        // If list is empty, no order with this car has been made yet
-        List<Order> allOrdersWithCar = orderRepository.findAllByCarId(carId);
-        // If list is empty, the car is not available
-        List<Order> validOrdersWithCar = orderRepository.findAllByCarIdAndEndDateNotNullAndEndDateIsBefore(carId, time);
-        LOG.trace(String.format("SERVICE %s completed", "carIsInUse"));
-        return !allOrdersWithCar.isEmpty() && validOrdersWithCar.isEmpty();
+        // The smallest range that contains the point in time
+        return carIsInUse(carId, time, time.plusNanos(1));
+    }
+
+    /**
+     * Checks if the car is booked at any time of a time range
+     * @param carId the car to be checked
+     * @param start the inclusive start of the time range
+     * @param end the exclusive end of the time range
+     * @return if the car is in use
+     */
+    public boolean carIsInUse(Long carId, Instant start, Instant end) {
+        LOG.trace("SERVICE {} initiated", "carIsInUse");
+        if (!availabilityFromDatabase()) {
+            return availabilityIndex.isBooked(carId, start, end);
+        }
+        boolean inUse = orderRepository.existsBookingOverlapping(carId, start, end);
+        LOG.trace("SERVICE {} completed", "carIsInUse");
+        return inUse;
+    }
+
+    /**
+     * @return if the availability is checked against the database instead of the availability index. Bookings of
+     * other instances that share the database are only in the database, not in the availability index, and the index
+     * is empty until it was built at startup.
+     */
+    private boolean availabilityFromDatabase() {
+        return bookingLocks.isDatabaseLockEnabled() || !availabilityIndexEnabled || !availabilityIndex.isReady();
+    }
+
+    /**
+     * Checks which of several cars are booked at any time of a time range, with one lookup in the availability index
+     * or one query instead of a check per car
+     * @param carIds the cars to be checked
+     * @param start the inclusive start of the time range
+     * @param end the exclusive end of the time range
+     * @return the ids of the booked cars
+     */
+    @Timed(OPERATION_METRIC)
+    public Set<Long> bookedCars(Collection<Long> carIds, Instant start, Instant end) {
+        LOG.trace("SERVICE {} {} initiated", "bookedCars", carIds.size());
+        Set<Long> booked = availabilityFromDatabase()
+                ? orderRepository.findBookedCarIds(carIds, start, end)
+                : availabilityIndex.bookedCars(carIds, start, end);
+        LOG.trace("SERVICE {} {} completed", "bookedCars", carIds.size());
+        return booked;
     }
 
     /**
@@ -92,21 +173,31 @@ public class OrderService {
      * @throws CarNotAvailableException gets thrown if the car is either in use or eol in the timeframe
      * @throws UserMayNotRentException gets thrown if the user is either banned or not active
      */
+    @Timed(OPERATION_METRIC)
     public Order createOrder(Order order) throws CarNotAvailableException, UserMayNotRentException, ServiceUnavailableException {
         // Set start date on server to prevent fraud
-        LOG.trace(String.format("SERVICE %s initiated", "createOrder"));
-        if (carIsEol(order.getCarId())) {
+        LOG.trace("SERVICE {} initiated", "createOrder");
+        Instant now = Instant.now();
+        // All checks are started at once, their results are evaluated in the original order
+        CompletableFuture<Car> car = lookupContext.car(order.getCarId());
+        CompletableFuture<Boolean> inUse = CompletableFuture.supplyAsync(() -> carIsInUse(order.getCarId(), now), lookupExecutor);
+        CompletableFuture<User> user = lookupContext.user(order.getUserId());
+        if (Lookups.await(car).isEol()) {
+            rejections.carEol();
             throw new CarNotAvailableException("The requested car is EOL");
         }
-        if (carIsInUse(order.getCarId(), Instant.now())) {
+        if (Lookups.await(inUse)) {
+            rejections.carInUse();
             throw new CarNotAvailableException("The requested car is already in use");
         }
-        if (userIsNotActive(order.getUserId()) || userIsBanned(order.getUserId())) {
+        User checkedUser = Lookups.await(user);
+        if (mayNotRent(checkedUser)) {
+            rejections.userMayNotRent(checkedUser);
             throw new UserMayNotRentException("The requested user is inactive or banned");
         }
-        LOG.trace(String.format("SERVICE %s completed", "createOrder"));
+        LOG.trace("SERVICE {} completed", "createOrder");
         order.setStartDate(Instant.now());
-        return orderRepository.save(order);
+        return book(order, order.getStartDate(), order.getStartDate().plusNanos(1));
     }
 
     /**
@@ -116,67 +207,548 @@ public class OrderService {
      * @throws CarNotAvailableException gets thrown if the car is either in use or eol in the timeframe
      * @throws UserMayNotRentException gets thrown if the user is either banned or not active
      */
+    @Timed(OPERATION_METRIC)
     public Order reserveOrder(Order order) throws UserMayNotRentException, CarNotAvailableException, ServiceUnavailableException {
-        LOG.trace(String.format("SERVICE %s initiated", "reverseOrder"));
-        if (userIsNotActive(order.getUserId()) || userIsBanned(order.getUserId())) {
+        LOG.trace("SERVICE {} initiated", "reverseOrder");
+        // All checks are started at once, their results are evaluated in the original order
+        CompletableFuture<User> user = lookupContext.user(order.getUserId());
+        CompletableFuture<Car> car = lookupContext.car(order.getCarId());
+        CompletableFuture<Boolean> inUse = CompletableFuture.supplyAsync(() -> carIsInUse(order.getCarId(), order.getStartDate(), order.getEndDate()), lookupExecutor);
+        User checkedUser = Lookups.await(user);
+        if (mayNotRent(checkedUser)) {
+            rejections.userMayNotRent(checkedUser);
             throw new UserMayNotRentException("The requested user is inactive or banned");
         }
-        if (carIsEol(order.getCarId())) {
+        if (Lookups.await(car).isEol()) {
+            rejections.carEol();
             throw new CarNotAvailableException("The requested car is EOL");
         }
-        if (carIsInUse(order.getCarId(), order.getStartDate())) {
+        if (Lookups.await(inUse)) {
+            rejections.carInUse();
             throw new CarNotAvailableException("The requested car is already in use");
         }
-        LOG.trace(String.format("SERVICE %s completed", "reverseOrder"));
-        return orderRepository.save(order);
+        LOG.trace("SERVICE {} completed", "reverseOrder");
+        return book(order, order.getStartDate(), order.getEndDate());
+    }
+
+    /**
+     * Creates several orders and reservations at once. Every distinct car and user is fetched once and the availability
+     * of all cars is checked with a single query, the accepted orders are saved together.
+     * An order with a start date in the future is a reservation, all other orders start now.
+     * The orders are checked in the order of the list, an order that overlaps an earlier accepted order of the batch
+     * is rejected like one that overlaps a saved order.
+     * @param orders the validated orders, reservations have an end date after their start date
+     * @param allOrNothing if no order is saved as soon as one of them is rejected
+     * @return the result of every order, in the order of the given orders
+     */
+    @Timed(OPERATION_METRIC)
+    public List<OrderBatchResult> createOrders(List<Order> orders, boolean allOrNothing) {
+        LOG.trace("SERVICE {} {} initiated", "createOrders", orders.size());
+        Instant now = Instant.now();
+        // All lookups are started at once, the lookup context fetches every distinct car and user once
+        for (Order order : orders) {
+            lookupContext.car(order.getCarId());
+            lookupContext.user(order.getUserId());
+        }
+        OrderBatchResult[] results = new OrderBatchResult[orders.size()];
+        for (int i = 0; i < orders.size(); i++) {
+            Order order = orders.get(i);
+            results[i] = check(order);
+            if (order.getStartDate() == null || !order.getStartDate().isAfter(now)) {
+                // Set start date on server to prevent fraud
+                order.setStartDate(now);
+            }
+        }
+        if (allOrNothing && Arrays.stream(results).anyMatch(Objects::nonNull)) {
+            return abortAccepted(results);
+        }
+        bookAll(orders, results, now, allOrNothing);
+        LOG.trace("SERVICE {} {} completed", "createOrders", orders.size());
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Checks the car and the user of an order of a batch
+     * @return the rejection of the order, null if it passed the checks
+     */
+    private OrderBatchResult check(Order order) {
+        try {
+            if (lookupContext.getCar(order.getCarId()).isEol()) {
+                rejections.carEol();
+                return OrderBatchResult.rejected(OrderBatchResult.CAR_EOL, "The requested car is EOL");
+            }
+            User user = lookupContext.getUser(order.getUserId());
+            if (mayNotRent(user)) {
+                rejections.userMayNotRent(user);
+                return OrderBatchResult.rejected(user.isActive() ? OrderBatchResult.USER_BANNED : OrderBatchResult.USER_INACTIVE,
+                        "The requested user is inactive or banned");
+            }
+            return null;
+        } catch (ServiceUnavailableException ex) {
+            return OrderBatchResult.rejected(OrderBatchResult.SERVICE_UNAVAILABLE, ex.getMessage());
+        }
+    }
+
+    /**
+     * Saves the orders of a batch that passed their checks if their cars are available, while holding the booking
+     * locks of all their cars
+     * @param orders the orders of the batch
+     * @param results the results of the orders, null for the orders that passed their checks
+     * @param now the start of the rentals of the batch
+     * @param allOrNothing if no order is saved as soon as one of them is rejected
+     */
+    private void bookAll(List<Order> orders, OrderBatchResult[] results, Instant now, boolean allOrNothing) {
+        List<Order> pending = new ArrayList<>();
+        Set<Long> carIds = new HashSet<>();
+        Instant start = null;
+        Instant end = null;
+        for (int i = 0; i < orders.size(); i++) {
+            if (results[i] == null) {
+                Order order = orders.get(i);
+                pending.add(order);
+                carIds.add(order.getCarId());
+                start = start == null || order.getStartDate().isBefore(start) ? order.getStartDate() : start;
+                end = end == null || checkedEnd(order, now).isAfter(end) ? checkedEnd(order, now) : end;
+            }
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+        Instant rangeStart = start;
+        Instant rangeEnd = end;
+        List<ReentrantLock> locks = bookingLocks.stripes(carIds);
+        locks.forEach(ReentrantLock::lock);
+        try {
+            Set<Order> accepted = Collections.newSetFromMap(new IdentityHashMap<>());
+            List<Order> saved = transactionTemplate.execute(status -> {
+                bookingLocks.lockInDatabase(carIds);
+                Map<Long, List<Order>> bookings = new HashMap<>();
+                boolean fromDatabase = availabilityFromDatabase();
+                if (fromDatabase) {
+                    for (Order booking : orderRepository.findBookingsOverlapping(carIds, rangeStart, rangeEnd)) {
+                        bookings.computeIfAbsent(booking.getCarId(), carId -> new ArrayList<>()).add(booking);
+                    }
+                }
+                for (Order order : pending) {
+                    List<Order> carBookings = bookings.computeIfAbsent(order.getCarId(), carId -> new ArrayList<>());
+                    Instant checkedEnd = checkedEnd(order, now);
+                    boolean inUse = overlaps(carBookings, order.getStartDate(), checkedEnd)
+                            || !fromDatabase && availabilityIndex.isBooked(order.getCarId(), order.getStartDate(), checkedEnd);
+                    if (!inUse) {
+                        accepted.add(order);
+                        // Later orders of the batch must not overlap this one
+                        carBookings.add(order);
+                    }
+                }
+                if (accepted.isEmpty() || allOrNothing && accepted.size() < pending.size()) {
+                    return Collections.emptyList();
+                }
+                List<Order> savedOrders = orderRepository.saveAll(pending.stream().filter(accepted::contains).collect(Collectors.toList()));
+                userOrderSummaries.booked(savedOrders);
+                return savedOrders;
+            });
+            Iterator<Order> savedOrders = saved.iterator();
+            for (int i = 0; i < orders.size(); i++) {
+                if (results[i] != null) {
+                    continue;
+                }
+                if (!accepted.contains(orders.get(i))) {
+                    rejections.carInUse();
+                    results[i] = OrderBatchResult.rejected(OrderBatchResult.CAR_IN_USE, "The requested car is already in use");
+                } else if (savedOrders.hasNext()) {
+                    // Indexed before the locks are released, so the next booking of the car sees this one
+                    results[i] = OrderBatchResult.created(indexed(savedOrders.next()));
+                }
+            }
+        } finally {
+            for (int i = locks.size() - 1; i >= 0; i--) {
+                locks.get(i).unlock();
+            }
+        }
+        if (allOrNothing) {
+            abortAccepted(results);
+        }
+    }
+
+    /**
+     * Marks the orders of an all-or-nothing batch that have no result yet as aborted
+     * @return the results of the batch
+     */
+    private static List<OrderBatchResult> abortAccepted(OrderBatchResult[] results) {
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] == null) {
+                results[i] = OrderBatchResult.aborted();
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * @return the exclusive end of the time range the car of an order has to be available in, a rental only has
+     * to be available when it starts
+     */
+    private static Instant checkedEnd(Order order, Instant now) {
+        return order.getStartDate().isAfter(now) ? order.getEndDate() : order.getStartDate().plusNanos(1);
+    }
+
+    /**
+     * @return if any of the bookings books the car at any time of the range [start, end)
+     */
+    private static boolean overlaps(List<Order> bookings, Instant start, Instant end) {
+        for (Order booking : bookings) {
+            if (booking.getStartDate().isBefore(end) && (booking.getEndDate() == null || booking.getEndDate().isAfter(start))) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
      * Marks an order as complete. E.g. when a car is returned.
+     * The order is read once, then the user and the car of the bill are fetched concurrently, so finishing an order
+     * waits for a single round trip to the other services. The latency of every stage is recorded by {@link FinishStages}.
+     * The bill is written to the outbox together with the order and sent to the accounting service in the background,
+     * the bill id of the order is set as soon as the accounting service accepted the bill. A reservation that is handed
+     * in after its planned end date is billed until now like any other started order.
      * @param orderId the id of the order that is completed
      * @return the completed order
      * @throws OrderNotFoundException gets thrown if the order was not found
+     * @throws OrderAlreadyFinishedException gets thrown if the order was canceled or finished before
      */
-    public Order finishOrder(Long orderId) throws OrderNotFoundException, ServiceUnavailableException {
-        LOG.trace(String.format("SERVICE %s %d initiated", "finishOrder", orderId));
-        if (!orderRepository.existsById(orderId)) {
-            throw new OrderNotFoundException("The requested order was not found");
+    @Timed(OPERATION_METRIC)
+    public Order finishOrder(Long orderId) throws OrderNotFoundException, OrderAlreadyFinishedException, ServiceUnavailableException {
+        LOG.trace("SERVICE {} {} initiated", "finishOrder", orderId);
+        long start = System.nanoTime();
+        Order order = orderRepository.findById(orderId)
+                .orElseThrow(() -> new OrderNotFoundException("The requested order was not found"));
+        long stageStart = finishStages.loaded(start);
+        // Rejected before the lookups, checked again while saving
+        checkNotFinished(order);
+
+        Instant now = Instant.now();
+        User user = null;
+        Car car = null;
+        if (!notStarted(order, now)) {
+            // Both lookups are started before waiting for either of them
+            CompletableFuture<User> userLookup = lookupContext.user(order.getUserId());
+            CompletableFuture<Car> carLookup = lookupContext.car(order.getCarId());
+            user = Lookups.await(userLookup);
+            car = Lookups.await(carLookup);
+            stageStart = finishStages.lookedUp(stageStart);
         }
-        Order order = orderRepository.getOne(orderId);
+        Order saved = finishLoaded(order, now, user, car);
+        finishStages.saved(stageStart);
+        LOG.trace("SERVICE {} {} completed", "finishOrder", orderId);
+        return saved;
+    }
 
-        if (order.getStartDate().isAfter(Instant.now())) {
+    /**
+     * Finishes or cancels several orders at once, e.g. when a wave of cars is returned at a depot.
+     * The orders are loaded with one query, the distinct users and cars of the finished orders are fetched
+     * concurrently and the finished orders are saved together with their bills in one transaction.
+     * Like a single order, the orders are checked and saved while holding the booking locks of their cars.
+     * An order that is unknown or can not be finished is rejected without affecting the others.
+     * @param orderIds the ids of the orders that are completed
+     * @return the result of every order at its position
+     */
+    @Timed(OPERATION_METRIC)
+    public List<OrderBatchResult> finishOrders(List<Long> orderIds) {
+        LOG.trace("SERVICE {} {} initiated", "finishOrders", orderIds.size());
+        Map<Long, Order> orders = new HashMap<>();
+        for (Order order : orderRepository.findAllById(orderIds.stream().filter(Objects::nonNull).collect(Collectors.toSet()))) {
+            orders.put(order.getId(), order);
+        }
+        Set<Long> billed = orders.isEmpty() ? Collections.emptySet() : billOutboxRepository.findBilledOrderIds(orders.keySet());
+        Instant now = Instant.now();
+        // All lookups are started at once, the lookup context fetches every distinct car and user once
+        for (Order order : orders.values()) {
+            if (!order.isCanceled() && !billed.contains(order.getId()) && !notStarted(order, now)) {
+                lookupContext.user(order.getUserId());
+                lookupContext.car(order.getCarId());
+            }
+        }
+        OrderBatchResult[] results = new OrderBatchResult[orderIds.size()];
+        User[] users = new User[orderIds.size()];
+        Car[] cars = new Car[orderIds.size()];
+        List<Integer> pending = new ArrayList<>(orders.size());
+        Set<Long> seen = new HashSet<>();
+        for (int i = 0; i < orderIds.size(); i++) {
+            Long orderId = orderIds.get(i);
+            Order order = orders.get(orderId);
+            if (order == null) {
+                results[i] = OrderBatchResult.rejected(OrderBatchResult.NOT_FOUND, "The requested order was not found");
+            } else if (!seen.add(orderId)) {
+                results[i] = OrderBatchResult.rejected(OrderBatchResult.INVALID, "The order is finished more than once in the batch");
+            } else if (order.isCanceled()) {
+                results[i] = OrderBatchResult.rejected(OrderBatchResult.CANCELED, CANCELED_MESSAGE);
+            } else if (order.getBillId() != null || billed.contains(orderId)) {
+                results[i] = OrderBatchResult.rejected(OrderBatchResult.ALREADY_FINISHED, FINISHED_MESSAGE);
+            } else if (notStarted(order, now)) {
+                pending.add(i);
+            } else {
+                try {
+                    // Both are fetched before the order is changed, an order that can not be billed stays untouched
+                    users[i] = lookupContext.getUser(order.getUserId());
+                    cars[i] = lookupContext.getCar(order.getCarId());
+                    pending.add(i);
+                } catch (ServiceUnavailableException ex) {
+                    results[i] = OrderBatchResult.rejected(OrderBatchResult.SERVICE_UNAVAILABLE, ex.getMessage());
+                }
+            }
+        }
+        if (!pending.isEmpty()) {
+            finishAll(orderIds, orders, pending, results, users, cars, now);
+        }
+        LOG.trace("SERVICE {} {} completed", "finishOrders", orderIds.size());
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Finishes and saves the orders of a batch that passed their checks, while holding the booking locks of all their
+     * cars. An order that was canceled or billed by a concurrent request in the meantime is rejected.
+     * @param orderIds the ids of the orders of the batch
+     * @param orders the loaded orders by id
+     * @param pending the positions of the orders that passed their checks
+     * @param results the results of the orders
+     * @param users the users of the orders that are billed at their positions
+     * @param cars the cars of the orders that are billed at their positions
+     * @param now the time the orders are finished at
+     */
+    private void finishAll(List<Long> orderIds, Map<Long, Order> orders, List<Integer> pending, OrderBatchResult[] results,
+                           User[] users, Car[] cars, Instant now) {
+        Set<Long> pendingIds = new HashSet<>();
+        Set<Long> carIds = new HashSet<>();
+        for (int i : pending) {
+            pendingIds.add(orderIds.get(i));
+            carIds.add(orders.get(orderIds.get(i)).getCarId());
+        }
+        List<ReentrantLock> locks = bookingLocks.stripes(carIds);
+        locks.forEach(ReentrantLock::lock);
+        try {
+            List<Integer> finished = new ArrayList<>(pending.size());
+            List<Order> saved = transactionTemplate.execute(status -> {
+                bookingLocks.lockInDatabase(carIds);
+                // Read before any order is changed, the loaded orders may have been finished in the meantime
+                Set<Long> canceled = orderRepository.findCanceledIds(pendingIds);
+                Set<Long> billed = billOutboxRepository.findBilledOrderIds(pendingIds);
+                List<Order> finishedOrders = new ArrayList<>(pending.size());
+                List<BillOutboxEntry> bills = new ArrayList<>(pending.size());
+                for (int i : pending) {
+                    Long orderId = orderIds.get(i);
+                    if (canceled.contains(orderId)) {
+                        results[i] = OrderBatchResult.rejected(OrderBatchResult.CANCELED, CANCELED_MESSAGE);
+                    } else if (billed.contains(orderId)) {
+                        results[i] = OrderBatchResult.rejected(OrderBatchResult.ALREADY_FINISHED, FINISHED_MESSAGE);
+                    } else {
+                        Order order = orders.get(orderId);
+                        Bill bill = finish(order, now, users[i], cars[i]);
+                        if (bill != null) {
+                            bills.add(new BillOutboxEntry(orderId, bill));
+                        }
+                        finishedOrders.add(order);
+                        finished.add(i);
+                    }
+                }
+                if (finishedOrders.isEmpty()) {
+                    return Collections.<Order>emptyList();
+                }
+                billOutboxRepository.saveAll(bills);
+                List<Order> savedOrders = orderRepository.saveAll(finishedOrders);
+                userOrderSummaries.finished(savedOrders);
+                return savedOrders;
+            });
+            Iterator<Order> savedOrders = saved.iterator();
+            for (int i : finished) {
+                results[i] = OrderBatchResult.finished(indexed(savedOrders.next()));
+            }
+        } finally {
+            for (int i = locks.size() - 1; i >= 0; i--) {
+                locks.get(i).unlock();
+            }
+        }
+    }
+
+    /**
+     * Loads an order with all its attributes, so it can be used outside of the request thread
+     * @param orderId the id of the order
+     * @return the order
+     * @throws OrderNotFoundException gets thrown if the order was not found
+     */
+    Order loadOrder(Long orderId) throws OrderNotFoundException {
+        return orderRepository.findById(orderId)
+                .orElseThrow(() -> new OrderNotFoundException("The requested order was not found"));
+    }
+
+    /**
+     * Checks a loaded order before the user and the car of its bill are looked up. An order is finished once it was
+     * canceled or has a bill, its end date is only the planned end of a reservation.
+     * @param order the order that is finished
+     * @throws OrderAlreadyFinishedException gets thrown if the order was canceled or finished before, it must not be
+     * billed again
+     */
+    void checkNotFinished(Order order) throws OrderAlreadyFinishedException {
+        if (order.isCanceled()) {
+            throw new OrderAlreadyFinishedException(CANCELED_MESSAGE);
+        }
+        // Every finished order has an end date, a running rental without one is not looked up in the outbox
+        if (order.getEndDate() != null && (order.getBillId() != null || billOutboxRepository.existsByOrderId(order.getId()))) {
+            throw new OrderAlreadyFinishedException(FINISHED_MESSAGE);
+        }
+    }
+
+    /**
+     * Reads if an order was finished from the database, not from a loaded order that may have been finished by a
+     * concurrent request in the meantime. Has to be called while holding the booking lock of the car.
+     * @param orderId the id of the order
+     * @return the message why the order can not be finished, null if it can be finished
+     */
+    private String finishedMessage(Long orderId) {
+        String state = orderRepository.findFinishedState(orderId);
+        if (OrderBatchResult.CANCELED.equals(state)) {
+            return CANCELED_MESSAGE;
+        }
+        return OrderBatchResult.ALREADY_FINISHED.equals(state) ? FINISHED_MESSAGE : null;
+    }
+
+    /**
+     * @param order the order
+     * @param now the current time
+     * @return if the order is a reservation that has not started yet, it is canceled instead of billed when finished
+     */
+    static boolean notStarted(Order order, Instant now) {
+        return order.getStartDate().isAfter(now);
+    }
+
+    /**
+     * Finishes a loaded order: a reservation that has not started yet is canceled, a started order ends now and is billed
+     * @param order the loaded order, changed in place
+     * @param now the time the order is finished at
+     * @param user the user who rented the car, not needed if the order is canceled
+     * @param car the rented car, not needed if the order is canceled
+     * @return the bill of the order, null if the order was canceled
+     */
+    static Bill finish(Order order, Instant now, User user, Car car) {
+        if (notStarted(order, now)) {
             order.setCanceled(true);
             order.setStartDate(null);
             order.setEndDate(null);
-        } else {
-
-            // Set end date on server to prevent fraud
-            order.setEndDate(Instant.now());
-            Bill bill = new Bill();
-            bill.setUserId(order.getUserId());
-            User user = userServiceAdapter.getUser(order.getUserId());
-            bill.setCity(user.getCity());
-            bill.setCountry(user.getCountry());
-            bill.setName(user.getName());
-            bill.setStreet(user.getStreet());
-            bill.setZipCode(user.getZipCode());
-            // Bill created right now
-            bill.setCreationDate(Instant.now());
-            // Payment is due in 7 days
-            bill.setPaymentDeadlineDate(bill.getCreationDate().plus(Duration.ofDays(7)));
-
-            long billableHours = Duration.between(order.getStartDate(), order.getEndDate()).toHours();
-            if (billableHours < 1) {
-                billableHours = 1;
+            return null;
+        }
+        // Set end date on server to prevent fraud
+        order.setEndDate(now);
+        return createBill(order, user, car);
+    }
+
+    /**
+     * Creates the bill of a finished order
+     * @param order the order with its end date set
+     * @param user the user who rented the car
+     * @param car the rented car
+     * @return the bill
+     */
+    static Bill createBill(Order order, User user, Car car) {
+        Bill bill = new Bill();
+        bill.setUserId(order.getUserId());
+        bill.setCity(user.getCity());
+        bill.setCountry(user.getCountry());
+        bill.setName(user.getName());
+        bill.setStreet(user.getStreet());
+        bill.setZipCode(user.getZipCode());
+        // Bill created right now
+        bill.setCreationDate(Instant.now());
+        // Payment is due in 7 days
+        bill.setPaymentDeadlineDate(bill.getCreationDate().plus(Duration.ofDays(7)));
+
+        bill.setValue(car.getCarBaseRentPrice() * billableHours(order));
+        return bill;
+    }
+
+    /**
+     * @param order the order with its end date set
+     * @return the started hours the order is billed for, at least one
+     */
+    static long billableHours(Order order) {
+        long billableHours = Duration.between(order.getStartDate(), order.getEndDate()).toHours();
+        return Math.max(billableHours, 1);
+    }
+
+    /**
+     * Finishes a loaded order and saves it together with its bill in the outbox. The order is checked and saved while
+     * holding the booking lock of its car, so concurrent requests cannot both finish it. The outbox holds one bill per
+     * order, an instance that does not share the lock cannot bill it twice either.
+     * @param order the loaded order
+     * @param now the time the order is finished at
+     * @param user the user who rented the car, not needed if the order is canceled
+     * @param car the rented car, not needed if the order is canceled
+     * @return the saved order
+     * @throws OrderAlreadyFinishedException gets thrown if the order was canceled or finished in the meantime
+     */
+    Order finishLoaded(Order order, Instant now, User user, Car car) throws OrderAlreadyFinishedException {
+        ReentrantLock lock = bookingLocks.stripe(order.getCarId());
+        lock.lock();
+        try {
+            String[] rejected = new String[1];
+            Order saved;
+            try {
+                saved = transactionTemplate.execute(status -> {
+                    bookingLocks.lockInDatabase(order.getCarId());
+                    rejected[0] = finishedMessage(order.getId());
+                    if (rejected[0] != null) {
+                        return null;
+                    }
+                    Bill bill = finish(order, now, user, car);
+                    if (bill != null) {
+                        billOutboxRepository.save(new BillOutboxEntry(order.getId(), bill));
+                    }
+                    Order savedOrder = orderRepository.save(order);
+                    userOrderSummaries.finished(Collections.singletonList(savedOrder));
+                    return savedOrder;
+                });
+            } catch (DataIntegrityViolationException ex) {
+                saved = null;
+                rejected[0] = FINISHED_MESSAGE;
+            }
+            if (saved == null) {
+                throw new OrderAlreadyFinishedException(rejected[0]);
             }
-            bill.setValue(carServiceAdapter.getCar(order.getCarId()).getCarBaseRentPrice() *
-                    billableHours);
+            return indexed(saved);
+        } finally {
+            lock.unlock();
+        }
+    }
 
-            bill = accountingServiceAdapter.saveBill(bill);
-            order.setBillId(bill.getId());
+    /**
+     * Saves a new order or reservation if the car is still available in the checked time range.
+     * The concurrent checks of the order only reject it early, the availability is checked again while holding the
+     * booking lock of the car, so two concurrent orders for the same car cannot both be saved.
+     * @param order the checked order
+     * @param start the inclusive start of the time range the car has to be available in
+     * @param end the exclusive end of the time range the car has to be available in
+     * @return the saved order
+     * @throws CarNotAvailableException gets thrown if the car was booked in the time range in the meantime
+     */
+    Order book(Order order, Instant start, Instant end) throws CarNotAvailableException {
+        ReentrantLock lock = bookingLocks.stripe(order.getCarId());
+        lock.lock();
+        try {
+            Order saved = transactionTemplate.execute(status -> {
+                bookingLocks.lockInDatabase(order.getCarId());
+                if (carIsInUse(order.getCarId(), start, end)) {
+                    return null;
+                }
+                Order savedOrder = orderRepository.save(order);
+                userOrderSummaries.booked(Collections.singletonList(savedOrder));
+                return savedOrder;
+            });
+            if (saved == null) {
+                rejections.carInUse();
+                throw new CarNotAvailableException("The requested car is already in use");
+            }
+            // Indexed before the lock is released, so the next booking of the car sees this one
+            return indexed(saved);
+        } finally {
+            lock.unlock();
         }
-        LOG.trace(String.format("SERVICE %s %d completed", "finishOrder", orderId));
-        return orderRepository.save(order);
     }
 
     /**
@@ -184,38 +756,53 @@ public class OrderService {
      * @param orderId the id of the order to be retrieved
      * @return the retried order
      */
+    @Timed(OPERATION_METRIC)
     public Order getOrder(Long orderId) {
-        LOG.trace(String.format("SERVICE %s %d initiated", "getOrder", orderId));
+        LOG.trace("SERVICE {} {} initiated", "getOrder", orderId);
         return orderRepository.getOne(orderId);
     }
 
     /**
-     * Retrieves all orders from the repository
-     * @return a list of the retried orders
+     * Retrieves a page of the orders matching a filter, ordered by id
+     * @param filter the conditions the orders have to match
+     * @param after the cursor of the page, null for the first page
+     * @param size the maximum number of orders of the page
+     * @return the page
      */
-    public List<Order> getAllOrders() {
-
-        LOG.trace(String.format("SERVICE %s initiated", "getAllOrders"));
-        return orderRepository.findAll();
+    @Timed(OPERATION_METRIC)
+    public OrderPage getOrders(OrderFilter filter, Long after, int size) {
+        LOG.trace("SERVICE {} initiated", "getOrders");
+        // One order more than requested tells if there is a following page
+        List<Order> orders = orderRepository.findPage(filter, after, size + 1);
+        if (orders.size() <= size) {
+            return new OrderPage(orders, null);
+        }
+        List<Order> page = orders.subList(0, size);
+        return new OrderPage(page, page.get(size - 1).getId());
     }
 
     /**
-     * Retrieves all orders from the repository that match the user
-     * @param userId the user to get the associated orders for
-     * @return a list of the retried orders
+     * Retrieves the summary of the orders of a user, without loading the orders
+     * @param userId the id of the user
+     * @return the summary, an empty summary if the user has no orders
      */
-    public List<Order> getAllOrdersByUser(Long userId) {
-        LOG.trace(String.format("SERVICE %s %d initiated", "getAllOrdersByUser", userId));
-        return orderRepository.findAllByUserId(userId);
+    @Timed(OPERATION_METRIC)
+    public UserOrderSummary getUserSummary(Long userId) {
+        LOG.trace("SERVICE {} {} initiated", "getUserSummary", userId);
+        return userOrderSummaries.get(userId);
     }
 
     /**
-     * Retrieves all orders from the repository that match the car
-     * @param carId the car to get the associated orders for
-     * @return a list of the retried orders
+     * Updates the booking of a saved order in the availability index
+     * @param order the saved order
+     * @return the saved order
      */
-    public List<Order> getAllOrdersByCar(Long carId) {
-        LOG.trace(String.format("SERVICE %s %d initiated", "getAllOrdersByCar", carId));
-        return orderRepository.findAllByCarId(carId);
+    private Order indexed(Order order) {
+        availabilityIndex.update(order);
+        return order;
+    }
+
+    static boolean mayNotRent(User user) {
+        return !user.isActive() || user.isBanned();
     }
 }
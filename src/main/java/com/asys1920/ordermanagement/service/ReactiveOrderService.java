@@ -0,0 +1,168 @@
+package com.asys1920.ordermanagement.service;
+
+import com.asys1920.model.Car;
+import com.asys1920.model.Order;
+import com.asys1920.model.User;
+import com.asys1920.ordermanagement.adapter.ReactiveCarServiceAdapter;
+import com.asys1920.ordermanagement.adapter.ReactiveUserServiceAdapter;
+import com.asys1920.ordermanagement.exception.CarNotAvailableException;
+import com.asys1920.ordermanagement.exception.OrderAlreadyFinishedException;
+import com.asys1920.ordermanagement.exception.OrderNotFoundException;
+import com.asys1920.ordermanagement.exception.UserMayNotRentException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import javax.naming.ServiceUnavailableException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.Callable;
+
+/**
+ * Non-blocking counterpart of the {@link OrderService} for creating, reserving and finishing orders.
+ * The checks of an order are composed without holding a thread while the car and user service answer,
+ * only the repository calls run on the bounded repository scheduler.
+ * Orders are saved and billed by the {@link OrderService}, so both execution modes keep the availability index
+ * and the bill outbox in the same way.
+ */
+@Service
+@ConditionalOnProperty("order.reactive.enabled")
+public class ReactiveOrderService {
+    private static final Logger LOG = LoggerFactory.getLogger(ReactiveOrderService.class);
+    private final OrderService orderService;
+    private final ReactiveCarServiceAdapter carServiceAdapter;
+    private final ReactiveUserServiceAdapter userServiceAdapter;
+    private final Scheduler repositoryScheduler;
+    private final Duration requestDeadline;
+    private final OrderRejections rejections;
+
+    public ReactiveOrderService(OrderService orderService, ReactiveCarServiceAdapter carServiceAdapter,
+                                ReactiveUserServiceAdapter userServiceAdapter,
+                                @Qualifier("repositoryScheduler") Scheduler repositoryScheduler,
+                                @Value("${order.request.deadline}") Duration requestDeadline,
+                                OrderRejections rejections) {
+        this.orderService = orderService;
+        this.carServiceAdapter = carServiceAdapter;
+        this.userServiceAdapter = userServiceAdapter;
+        this.repositoryScheduler = repositoryScheduler;
+        this.requestDeadline = requestDeadline;
+        this.rejections = rejections;
+    }
+
+    /**
+     * Creates an order starting now and saves it to the repository
+     * @param order the order to be created
+     * @return the order that was created, fails with a {@link CarNotAvailableException} if the car is either in use
+     * or eol and with a {@link UserMayNotRentException} if the user is either banned or not active
+     */
+    public Mono<Order> createOrder(Order order) {
+        LOG.trace("SERVICE {} initiated", "createOrder");
+        return Mono.defer(() -> {
+            // Set start date on server to prevent fraud
+            Instant now = Instant.now();
+            // All checks run at once, their results are evaluated in the order of the blocking service
+            return Mono.zip(car(order.getCarId()), carIsInUse(order.getCarId(), now, now.plusNanos(1)), user(order.getUserId()))
+                    .flatMap(checks -> {
+                        if (checks.getT1().isEol()) {
+                            rejections.carEol();
+                            return Mono.error(new CarNotAvailableException("The requested car is EOL"));
+                        }
+                        if (checks.getT2()) {
+                            rejections.carInUse();
+                            return Mono.error(new CarNotAvailableException("The requested car is already in use"));
+                        }
+                        if (OrderService.mayNotRent(checks.getT3())) {
+                            rejections.userMayNotRent(checks.getT3());
+                            return Mono.error(new UserMayNotRentException("The requested user is inactive or banned"));
+                        }
+                        order.setStartDate(Instant.now());
+                        return onRepository(() -> orderService.book(order, order.getStartDate(), order.getStartDate().plusNanos(1)));
+                    });
+        }).doOnSuccess(created -> LOG.trace("SERVICE {} completed", "createOrder"));
+    }
+
+    /**
+     * Creates a reservation
+     * @param order the reservation order
+     * @return the created reservation, fails with a {@link CarNotAvailableException} if the car is either in use
+     * or eol in the timeframe and with a {@link UserMayNotRentException} if the user is either banned or not active
+     */
+    public Mono<Order> reserveOrder(Order order) {
+        LOG.trace("SERVICE {} initiated", "reserveOrder");
+        return Mono.zip(user(order.getUserId()), car(order.getCarId()), carIsInUse(order.getCarId(), order.getStartDate(), order.getEndDate()))
+                .flatMap(checks -> {
+                    if (OrderService.mayNotRent(checks.getT1())) {
+                        rejections.userMayNotRent(checks.getT1());
+                        return Mono.error(new UserMayNotRentException("The requested user is inactive or banned"));
+                    }
+                    if (checks.getT2().isEol()) {
+                        rejections.carEol();
+                        return Mono.error(new CarNotAvailableException("The requested car is EOL"));
+                    }
+                    if (checks.getT3()) {
+                        rejections.carInUse();
+                        return Mono.error(new CarNotAvailableException("The requested car is already in use"));
+                    }
+                    return onRepository(() -> orderService.book(order, order.getStartDate(), order.getEndDate()));
+                })
+                .doOnSuccess(reserved -> LOG.trace("SERVICE {} completed", "reserveOrder"));
+    }
+
+    /**
+     * Marks an order as complete, a reservation that has not started yet is canceled.
+     * The bill is written to the outbox together with the order.
+     * @param orderId the id of the order that is completed
+     * @return the completed order, fails with an {@link OrderNotFoundException} if the order was not found and with an
+     * {@link OrderAlreadyFinishedException} if it was canceled or finished before
+     */
+    public Mono<Order> finishOrder(Long orderId) {
+        LOG.trace("SERVICE {} {} initiated", "finishOrder", orderId);
+        return onRepository(() -> {
+                    Order order = orderService.loadOrder(orderId);
+                    // Rejected before the lookups, checked again while saving
+                    orderService.checkNotFinished(order);
+                    return order;
+                })
+                .flatMap(order -> {
+                    Instant now = Instant.now();
+                    if (OrderService.notStarted(order, now)) {
+                        return onRepository(() -> orderService.finishLoaded(order, now, null, null));
+                    }
+                    return Mono.zip(user(order.getUserId()), car(order.getCarId()))
+                            .flatMap(lookups -> onRepository(() -> orderService.finishLoaded(order, now, lookups.getT1(), lookups.getT2())));
+                })
+                .doOnSuccess(finished -> LOG.trace("SERVICE {} {} completed", "finishOrder", orderId));
+    }
+
+    private Mono<Car> car(Long carId) {
+        return withinDeadline(carServiceAdapter.getCar(carId), "CarService");
+    }
+
+    private Mono<User> user(Long userId) {
+        return withinDeadline(userServiceAdapter.getUser(userId), "UserService");
+    }
+
+    private Mono<Boolean> carIsInUse(Long carId, Instant start, Instant end) {
+        return onRepository(() -> orderService.carIsInUse(carId, start, end));
+    }
+
+    /**
+     * Fails a lookup that is not completed within the request deadline, like the blocking lookups do
+     */
+    private <T> Mono<T> withinDeadline(Mono<T> lookup, String service) {
+        return lookup.timeout(requestDeadline, Mono.error(() -> new ServiceUnavailableException(
+                String.format("%s did not answer within the request deadline.", service))));
+    }
+
+    /**
+     * Runs a blocking repository call on the repository scheduler
+     */
+    private <T> Mono<T> onRepository(Callable<T> call) {
+        return Mono.fromCallable(call).subscribeOn(repositoryScheduler);
+    }
+}
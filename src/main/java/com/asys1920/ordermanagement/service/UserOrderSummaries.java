@@ -0,0 +1,190 @@
+package com.asys1920.ordermanagement.service;
+
+import com.asys1920.model.Order;
+import com.asys1920.ordermanagement.model.UserOrderSummary;
+import com.asys1920.ordermanagement.repository.BillOutboxRepository;
+import com.asys1920.ordermanagement.repository.OrderRepository;
+import com.asys1920.ordermanagement.repository.UserOrderSummaryRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the order summary of every user up to date. The summary of a user is updated in the transaction that saves
+ * an order of the user, so it always counts the committed orders. An update is a single statement per user that does
+ * not load the summary, its cost does not grow with the orders of the user.
+ * A scheduled job rebuilds every summary from the orders and repairs those that differ.
+ */
+@Component
+public class UserOrderSummaries {
+    private static final Logger LOG = LoggerFactory.getLogger(UserOrderSummaries.class);
+    private final UserOrderSummaryRepository summaryRepository;
+    private final OrderRepository orderRepository;
+    private final BillOutboxRepository billOutboxRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter repairs;
+
+    public UserOrderSummaries(UserOrderSummaryRepository summaryRepository,
+                              OrderRepository orderRepository,
+                              BillOutboxRepository billOutboxRepository,
+                              TransactionTemplate transactionTemplate,
+                              MeterRegistry meterRegistry) {
+        this.summaryRepository = summaryRepository;
+        this.orderRepository = orderRepository;
+        this.billOutboxRepository = billOutboxRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.repairs = Counter.builder("order.user-summary.repairs")
+                .description("User order summaries that differed from the orders and were rebuilt")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Counts new orders in the summaries of their users, within the transaction that saved them
+     * @param orders the saved orders
+     */
+    public void booked(Collection<Order> orders) {
+        // Sorted by user, so two transactions that update an overlapping set of summaries cannot deadlock
+        Map<Long, Order> latest = new TreeMap<>();
+        Map<Long, Long> counts = new TreeMap<>();
+        for (Order order : orders) {
+            if (order == null || order.getUserId() == null || order.isCanceled() || order.getStartDate() == null) {
+                continue;
+            }
+            latest.merge(order.getUserId(), order, (a, b) -> a.getStartDate().isBefore(b.getStartDate()) ? b : a);
+            counts.merge(order.getUserId(), 1L, Long::sum);
+        }
+        for (Map.Entry<Long, Order> entry : latest.entrySet()) {
+            Long userId = entry.getKey();
+            update(userId, () -> summaryRepository.addOrders(userId, counts.get(userId), entry.getValue().getStartDate()));
+        }
+    }
+
+    /**
+     * Updates the summaries of the users of finished or canceled orders, within the transaction that saved them
+     * @param orders the saved orders
+     */
+    public void finished(Collection<Order> orders) {
+        Map<Long, Long> canceled = new TreeMap<>();
+        Map<Long, Long> billedHours = new TreeMap<>();
+        for (Order order : orders) {
+            if (order == null || order.getUserId() == null) {
+                continue;
+            }
+            if (order.isCanceled()) {
+                canceled.merge(order.getUserId(), 1L, Long::sum);
+            } else if (order.getStartDate() != null && order.getEndDate() != null) {
+                billedHours.merge(order.getUserId(), OrderService.billableHours(order), Long::sum);
+            }
+        }
+        SortedSet<Long> userIds = new TreeSet<>(canceled.keySet());
+        userIds.addAll(billedHours.keySet());
+        for (Long userId : userIds) {
+            Long hours = billedHours.get(userId);
+            if (hours != null) {
+                update(userId, () -> summaryRepository.addBilledHours(userId, hours));
+            }
+            Long count = canceled.get(userId);
+            if (count != null) {
+                // A canceled order may have been the latest, the query flushes and no longer sees it
+                Instant lastOrderAt = orderRepository.findLastStartDateByUserId(userId);
+                update(userId, () -> summaryRepository.removeOrders(userId, count, lastOrderAt));
+            }
+        }
+    }
+
+    /**
+     * Reads the summary of a user and counts the orders of the user that have not ended. The counts only seek the
+     * orders that end after now in the indexes of the orders, not the history of the user.
+     * @param userId the id of the user
+     * @return the summary of the user, an empty summary if the user has no orders
+     */
+    public UserOrderSummary get(Long userId) {
+        Instant now = Instant.now();
+        UserOrderSummary summary = new UserOrderSummary(userId);
+        summaryRepository.findById(userId).ifPresent(summary::copyOf);
+        long runningRentals = orderRepository.countByUserIdAndCanceledFalseAndEndDateIsNull(userId);
+        long startedReservations = orderRepository.countByUserIdAndCanceledFalseAndEndDateAfterAndStartDateLessThanEqual(userId, now, now);
+        summary.setOpenOrders(runningRentals + startedReservations,
+                orderRepository.countByUserIdAndCanceledFalseAndStartDateAfter(userId, now));
+        return summary;
+    }
+
+    /**
+     * Rebuilds the summary of every user from the orders and bills of the user and repairs the summaries that differ.
+     * Every summary is compared while it is locked, so orders saved in the meantime are counted by both.
+     * @return the number of repaired summaries
+     */
+    @Scheduled(fixedDelayString = "${order.user-summary.verify-interval}", initialDelayString = "${order.user-summary.verify-interval}")
+    public int verify() {
+        SortedSet<Long> userIds = new TreeSet<>(summaryRepository.findUserIds());
+        orderRepository.findUserIds().stream().filter(Objects::nonNull).forEach(userIds::add);
+        int repaired = 0;
+        for (Long userId : userIds) {
+            Boolean matched = transactionTemplate.execute(status -> {
+                UserOrderSummary summary = summaryRepository.lockByUserId(userId).orElse(null);
+                if (summary == null) {
+                    summaryRepository.insertIfAbsent(userId);
+                    summary = summaryRepository.lockByUserId(userId).orElseThrow();
+                }
+                UserOrderSummary rebuilt = rebuild(userId);
+                if (summary.matches(rebuilt)) {
+                    return true;
+                }
+                LOG.warn("Summary of user {} differs from the orders, {} instead of {} orders and {} instead of {} billed hours",
+                        userId, summary.getLifetimeOrders(), rebuilt.getLifetimeOrders(), summary.getBilledHours(), rebuilt.getBilledHours());
+                summary.copyOf(rebuilt);
+                return false;
+            });
+            if (!Boolean.TRUE.equals(matched)) {
+                repaired++;
+                repairs.increment();
+            }
+        }
+        LOG.info("Verified the order summaries of {} users, repaired {}", userIds.size(), repaired);
+        return repaired;
+    }
+
+    /**
+     * @return the summary of a user counted from all orders and bills of the user
+     */
+    private UserOrderSummary rebuild(Long userId) {
+        Set<Long> billedOrderIds = new HashSet<>(billOutboxRepository.findOrderIdsByUserId(userId));
+        UserOrderSummary summary = new UserOrderSummary(userId);
+        for (Order order : orderRepository.findAllByUserId(userId)) {
+            summary.add(order);
+            if (billedOrderIds.contains(order.getId()) && order.getStartDate() != null && order.getEndDate() != null) {
+                summary.addBilledHours(OrderService.billableHours(order));
+            }
+        }
+        return summary;
+    }
+
+    /**
+     * Runs an update of the summary of a user, creates the summary first in the same transaction if the user has
+     * none yet
+     */
+    private void update(Long userId, Supplier<Integer> update) {
+        if (update.get() > 0) {
+            return;
+        }
+        summaryRepository.insertIfAbsent(userId);
+        if (update.get() == 0) {
+            throw new IllegalStateException("The summary of user " + userId + " was not created");
+        }
+    }
+}
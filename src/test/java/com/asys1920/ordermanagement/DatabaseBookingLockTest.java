@@ -0,0 +1,88 @@
+package com.asys1920.ordermanagement;
+
+import com.asys1920.model.Order;
+import com.asys1920.ordermanagement.repository.CarLockRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the double booking stress test with the bookings serialized in the database and checked against it,
+ * like several instances of the service that share the database do
+ */
+@SpringBootTest(classes = OrderManagementApplication.class, properties = {
+        "bill.outbox.poll-interval=3600000",
+        "order.booking.database-lock.enabled=true",
+        "order.availability.index.enabled=false"})
+@AutoConfigureMockMvc
+public class DatabaseBookingLockTest extends DoubleBookingStressTest {
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private CarLockRepository carLockRepository;
+
+    @Test
+    public void should_reject_order_when_other_instance_booked_car_while_holding_its_lock() throws Exception {
+        long carId = 1;
+        Instant start = Instant.now().plus(Duration.ofDays(1));
+        Instant end = start.plus(Duration.ofHours(2));
+        CountDownLatch locked = new CountDownLatch(1);
+        // Another instance books the car, its booking lock in this instance is not taken
+        CompletableFuture<Void> otherInstance = CompletableFuture.runAsync(() -> transactionTemplate.executeWithoutResult(status -> {
+            bookingLocks.lockInDatabase(carId);
+            locked.countDown();
+            try {
+                Thread.sleep(300);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            Order order = new Order();
+            order.setCarId(carId);
+            order.setUserId(2L);
+            order.setStartDate(start);
+            order.setEndDate(end);
+            orderRepository.save(order);
+        }));
+        Assertions.assertTrue(locked.await(10, TimeUnit.SECONDS));
+
+        Assertions.assertEquals(HttpStatus.UNPROCESSABLE_ENTITY.value(), order(carId, start, end));
+        otherInstance.get(10, TimeUnit.SECONDS);
+        Assertions.assertEquals(1, orderRepository.count());
+    }
+
+    @Test
+    public void should_wait_for_other_instance_that_creates_lock_of_new_car() throws Exception {
+        long carId = 2;
+        CountDownLatch locked = new CountDownLatch(1);
+        // Another instance books the car first and creates its lock, the row is not committed while it holds it
+        CompletableFuture<Void> otherInstance = CompletableFuture.runAsync(() -> transactionTemplate.executeWithoutResult(status -> {
+            bookingLocks.lockInDatabase(carId);
+            locked.countDown();
+            try {
+                Thread.sleep(300);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        Assertions.assertTrue(locked.await(10, TimeUnit.SECONDS));
+
+        long start = System.nanoTime();
+        transactionTemplate.executeWithoutResult(status -> bookingLocks.lockInDatabase(carId));
+        long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        otherInstance.get(10, TimeUnit.SECONDS);
+        Assertions.assertTrue(waited >= 200, "Locked the car after " + waited + " ms while the other instance held it");
+        Assertions.assertTrue(carLockRepository.existsById(carId));
+    }
+}
@@ -0,0 +1,15 @@
+package com.asys1920.ordermanagement;
+
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+
+/**
+ * Runs the batch tests with the availability of the cars checked against the database in one query
+ */
+@SpringBootTest(classes = OrderManagementApplication.class, properties = {
+        "bill.outbox.poll-interval=3600000",
+        "order.booking.database-lock.enabled=true",
+        "order.availability.index.enabled=false"})
+@AutoConfigureMockMvc
+public class DatabaseOrderBatchTest extends OrderBatchTest {
+}
@@ -0,0 +1,183 @@
+package com.asys1920.ordermanagement;
+
+import com.asys1920.model.Car;
+import com.asys1920.model.Order;
+import com.asys1920.model.User;
+import com.asys1920.ordermanagement.adapter.AccountingServiceAdapter;
+import com.asys1920.ordermanagement.adapter.CarServiceAdapter;
+import com.asys1920.ordermanagement.adapter.UserServiceAdapter;
+import com.asys1920.ordermanagement.repository.BillOutboxRepository;
+import com.asys1920.ordermanagement.repository.CarLockRepository;
+import com.asys1920.ordermanagement.repository.OrderRepository;
+import com.asys1920.ordermanagement.service.AvailabilityIndex;
+import com.asys1920.ordermanagement.service.BookingLocks;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+/**
+ * Sends many concurrent orders for the same few cars and checks that no car is booked twice at the same time
+ */
+@SpringBootTest(classes = OrderManagementApplication.class, properties = "bill.outbox.poll-interval=3600000")
+@AutoConfigureMockMvc
+public class DoubleBookingStressTest {
+    private static final int CARS = 4;
+    private static final int THREADS = 32;
+    private static final int ROUNDS = 25;
+    private static final Instant START = Instant.now().plus(Duration.ofDays(1)).truncatedTo(ChronoUnit.HOURS);
+
+    @MockBean
+    private UserServiceAdapter userServiceAdapter;
+
+    @MockBean
+    private CarServiceAdapter carServiceAdapter;
+
+    @MockBean
+    private AccountingServiceAdapter accountingServiceAdapter;
+
+    @Autowired
+    protected MockMvc mockMvc;
+
+    @Autowired
+    protected OrderRepository orderRepository;
+
+    @Autowired
+    private BillOutboxRepository billOutboxRepository;
+
+    @Autowired
+    private CarLockRepository carLockRepository;
+
+    @Autowired
+    private AvailabilityIndex availabilityIndex;
+
+    @Autowired
+    protected BookingLocks bookingLocks;
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        User user = new User();
+        user.setId(1L);
+        user.setActive(true);
+        Mockito.when(userServiceAdapter.getUser(Mockito.anyLong())).thenReturn(user);
+        Mockito.when(carServiceAdapter.getCar(Mockito.anyLong())).thenReturn(new Car());
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+        billOutboxRepository.deleteAllInBatch();
+        orderRepository.deleteAllInBatch();
+        carLockRepository.deleteAllInBatch();
+        availabilityIndex.rebuild();
+    }
+
+    @Test
+    public void should_book_every_car_once_when_ordering_it_concurrently() throws Exception {
+        for (int round = 0; round < ROUNDS; round++) {
+            // Every reservation overlaps those of the previous round
+            Instant start = START.plus(Duration.ofHours(round));
+            CountDownLatch ready = new CountDownLatch(THREADS);
+            List<CompletableFuture<Integer>> statuses = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                // Half of the threads reserve the first cars, the others rent the following cars from now on
+                boolean rental = i % 2 == 0;
+                long carId = i / 2 % CARS + (rental ? CARS : 0) + 1;
+                statuses.add(CompletableFuture.supplyAsync(() -> {
+                    ready.countDown();
+                    try {
+                        ready.await();
+                        return rental ? order(carId, null, null) : order(carId, start, start.plus(Duration.ofHours(2)));
+                    } catch (Exception ex) {
+                        throw new IllegalStateException(ex);
+                    }
+                }, executor));
+            }
+            for (CompletableFuture<Integer> status : statuses) {
+                int code = status.get(30, TimeUnit.SECONDS);
+                Assertions.assertTrue(code == HttpStatus.CREATED.value() || code == HttpStatus.UNPROCESSABLE_ENTITY.value(),
+                        "Unexpected status " + code);
+            }
+        }
+
+        Map<Long, List<Order>> bookings = orderRepository.findAll().stream()
+                .collect(Collectors.groupingBy(Order::getCarId));
+        Assertions.assertEquals(2 * CARS, bookings.size());
+        for (long carId = CARS + 1; carId <= 2 * CARS; carId++) {
+            Assertions.assertEquals(1, bookings.get(carId).size(), "Car " + carId + " was rented twice");
+        }
+        for (List<Order> orders : bookings.values()) {
+            orders.sort(Comparator.comparing(Order::getStartDate));
+            for (int i = 1; i < orders.size(); i++) {
+                Order previous = orders.get(i - 1);
+                Assertions.assertNotNull(previous.getEndDate(), "A running rental without end was booked before another order");
+                Assertions.assertFalse(previous.getEndDate().isAfter(orders.get(i).getStartDate()),
+                        "Car " + previous.getCarId() + " was booked twice");
+            }
+        }
+    }
+
+    @Test
+    public void should_book_other_car_while_booking_lock_of_car_is_held() throws Exception {
+        long lockedCar = 1;
+        long otherCar = 2;
+        Assertions.assertNotSame(bookingLocks.stripe(lockedCar), bookingLocks.stripe(otherCar));
+        ReentrantLock lock = bookingLocks.stripe(lockedCar);
+        CompletableFuture<Integer> blocked;
+        lock.lock();
+        try {
+            Assertions.assertEquals(HttpStatus.CREATED.value(), CompletableFuture.supplyAsync(() -> order(otherCar, null, null), executor)
+                    .get(10, TimeUnit.SECONDS));
+            blocked = CompletableFuture.supplyAsync(() -> order(lockedCar, null, null), executor);
+            Thread.sleep(200);
+            Assertions.assertFalse(blocked.isDone());
+        } finally {
+            lock.unlock();
+        }
+        Assertions.assertEquals(HttpStatus.CREATED.value(), blocked.get(10, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Creates a rental starting now or a reservation
+     * @return the status of the response
+     */
+    protected int order(long carId, Instant start, Instant end) {
+        String body = start == null
+                ? String.format("{\"carId\":%d,\"userId\":1}", carId)
+                : String.format("{\"carId\":%d,\"userId\":1,\"startDate\":\"%s\",\"endDate\":\"%s\"}", carId, start, end);
+        try {
+            return mockMvc.perform(post("/orders").contentType(MediaType.APPLICATION_JSON).content(body))
+                    .andReturn().getResponse().getStatus();
+        } catch (Exception ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
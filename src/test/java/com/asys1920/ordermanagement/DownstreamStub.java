@@ -0,0 +1,135 @@
+package com.asys1920.ordermanagement;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerResponse;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Car, user and accounting service that answer every request after a delay without holding a thread while waiting.
+ * A share of the requests can be answered with 503 Service Unavailable.
+ */
+final class DownstreamStub {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private final DisposableServer server;
+    private final Latency latency;
+    private final double errorRate;
+    private final AtomicLong nextBillId = new AtomicLong();
+
+    DownstreamStub(int latencyMillis) {
+        this(Latency.fixed(latencyMillis), 0);
+    }
+
+    /**
+     * @param latency   the delay of every answer
+     * @param errorRate the share of requests that fail, between 0 and 1
+     */
+    DownstreamStub(Latency latency, double errorRate) {
+        this.latency = latency;
+        this.errorRate = errorRate;
+        server = HttpServer.create()
+                .host("localhost")
+                .port(0)
+                .route(routes -> routes
+                        .get("/cars/{id}", (request, response) -> respond(response, String.format(
+                                "{\"id\":%s,\"name\":\"TestCar\",\"carBaseRentPrice\":10.0,\"eol\":false}", request.param("id"))))
+                        .get("/users/{id}", (request, response) -> respond(response, String.format(
+                                "{\"id\":%s,\"firstName\":\"Alexander\",\"active\":true,\"banned\":false}", request.param("id"))))
+                        .post("/bills/bulk", (request, response) -> request.receive().aggregate().asString()
+                                .flatMap(body -> Mono.from(respond(response, savedBills(body)))))
+                        .post("/bills/", (request, response) -> request.receive().then()
+                                .then(Mono.from(respond(response, savedBill())))))
+                .bindNow();
+    }
+
+    String url(String resource) {
+        return String.format("http://localhost:%d/%s/", server.port(), resource);
+    }
+
+    void stop() {
+        server.disposeNow();
+    }
+
+    private Publisher<Void> respond(HttpServerResponse response, String body) {
+        Mono<Void> answer = ThreadLocalRandom.current().nextDouble() < errorRate
+                ? response.status(503).send()
+                : response.header("Content-Type", "application/json").sendString(Mono.just(body)).then();
+        return Mono.delay(latency.next()).then(answer);
+    }
+
+    private String savedBill() {
+        return String.format("{\"id\":%d}", nextBillId.incrementAndGet());
+    }
+
+    /**
+     * Answers a bulk request with one saved bill per sent bill
+     */
+    private String savedBills(String body) {
+        JsonNode bills;
+        try {
+            bills = MAPPER.readTree(body);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        StringBuilder saved = new StringBuilder("[");
+        for (int i = 0; i < bills.size(); i++) {
+            saved.append(i == 0 ? "" : ",").append(savedBill());
+        }
+        return saved.append(']').toString();
+    }
+
+    /**
+     * Distribution of the delay of the answers
+     */
+    @FunctionalInterface
+    interface Latency {
+        Duration next();
+
+        static Latency fixed(long millis) {
+            Duration latency = Duration.ofMillis(millis);
+            return () -> latency;
+        }
+
+        static Latency uniform(long minMillis, long maxMillis) {
+            return () -> Duration.ofMillis(ThreadLocalRandom.current().nextLong(minMillis, maxMillis + 1));
+        }
+
+        /**
+         * Mostly short delays with a long tail, like a service under load
+         */
+        static Latency exponential(long meanMillis) {
+            return () -> Duration.ofNanos((long) (-Math.log(1 - ThreadLocalRandom.current().nextDouble()) * meanMillis * 1_000_000));
+        }
+
+        /**
+         * @param spec {@code fixed:<millis>}, {@code uniform:<min>-<max>} or {@code exponential:<mean>}
+         * @return the distribution
+         */
+        static Latency parse(String spec) {
+            String[] parts = spec.split(":", 2);
+            if (parts.length == 2) {
+                switch (parts[0]) {
+                    case "fixed":
+                        return fixed(Long.parseLong(parts[1]));
+                    case "uniform":
+                        String[] range = parts[1].split("-", 2);
+                        return uniform(Long.parseLong(range[0]), Long.parseLong(range[1]));
+                    case "exponential":
+                        return exponential(Long.parseLong(parts[1]));
+                    default:
+                }
+            }
+            throw new IllegalArgumentException(String.format(
+                    "Unknown latency %s, expected fixed:<millis>, uniform:<min>-<max> or exponential:<mean>", spec));
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.asys1920.ordermanagement;
+
+import com.asys1920.dto.OrderDTO;
+import com.asys1920.model.Car;
+import com.asys1920.model.User;
+import com.asys1920.ordermanagement.adapter.AccountingServiceAdapter;
+import com.asys1920.ordermanagement.adapter.CarServiceAdapter;
+import com.asys1920.ordermanagement.adapter.UserServiceAdapter;
+import com.asys1920.ordermanagement.controller.OrderController;
+import com.asys1920.ordermanagement.repository.BillOutboxRepository;
+import com.asys1920.ordermanagement.repository.OrderRepository;
+import com.asys1920.ordermanagement.service.AvailabilityIndex;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the bytes the order endpoints allocate per request, summed over all threads of the service, so the
+ * create, reserve and finish path does not regress to per-request bootstraps or eager log messages.
+ * The endpoints are called directly, each call in a request of its own, the allocations of the servlet container
+ * and the JSON mapping are not counted.
+ */
+@SpringBootTest(classes = OrderManagementApplication.class, properties = "bill.outbox.poll-interval=3600000")
+public class OrderAllocationTest {
+    private static final int WARMUP_REQUESTS = 1000;
+    private static final int REQUESTS = 1000;
+    // About 56 KB are allocated for creating or reserving and 52 KB for finishing an order, most of them by the
+    // repository, the validation and the mocked adapters the lookups of every request call. Autowiring the request
+    // scoped lookups per request alone allocates 36 KB, a validator bootstrap per request 500 KB.
+    private static final long CREATE_BUDGET = 72 * 1024;
+    private static final long RESERVE_BUDGET = 72 * 1024;
+    private static final long FINISH_BUDGET = 64 * 1024;
+    // Every order uses another car, so no order conflicts with an earlier one
+    private static final AtomicLong NEXT_CAR_ID = new AtomicLong();
+
+    @MockBean
+    private UserServiceAdapter userServiceAdapter;
+
+    @MockBean
+    private CarServiceAdapter carServiceAdapter;
+
+    @MockBean
+    private AccountingServiceAdapter accountingServiceAdapter;
+
+    @Autowired
+    private OrderController orderController;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private BillOutboxRepository billOutboxRepository;
+
+    @Autowired
+    private AvailabilityIndex availabilityIndex;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        User user = new User();
+        user.setId(1L);
+        user.setActive(true);
+        Mockito.when(userServiceAdapter.getUser(Mockito.anyLong())).thenReturn(user);
+        Mockito.when(carServiceAdapter.getCar(Mockito.anyLong())).thenReturn(new Car());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        billOutboxRepository.deleteAllInBatch();
+        orderRepository.deleteAllInBatch();
+        availabilityIndex.rebuild();
+    }
+
+    @Test
+    public void should_create_order_within_allocation_budget() throws Exception {
+        long allocated = allocatedPerRequest(inRequest(() -> orderController.createOrder(order(null))));
+
+        Assertions.assertTrue(allocated < CREATE_BUDGET,
+                String.format("Creating an order allocated %d bytes, the budget is %d bytes", allocated, CREATE_BUDGET));
+    }
+
+    @Test
+    public void should_reserve_order_within_allocation_budget() throws Exception {
+        Instant start = Instant.now().plus(Duration.ofDays(1));
+        long allocated = allocatedPerRequest(inRequest(() -> orderController.createOrder(order(start))));
+
+        Assertions.assertTrue(allocated < RESERVE_BUDGET,
+                String.format("Reserving an order allocated %d bytes, the budget is %d bytes", allocated, RESERVE_BUDGET));
+    }
+
+    @Test
+    public void should_finish_order_within_allocation_budget() throws Exception {
+        // Every finished order is created first, the allocations of creating it are subtracted
+        long allocated = allocatedPerRequest(inRequest(() -> orderController.finishOrder(
+                orderController.createOrder(order(null)).getBody().getId())));
+        long createAllocated = allocatedPerRequest(inRequest(() -> orderController.createOrder(order(null))));
+
+        Assertions.assertTrue(allocated - createAllocated < FINISH_BUDGET,
+                String.format("Finishing an order allocated %d bytes, the budget is %d bytes", allocated - createAllocated, FINISH_BUDGET));
+    }
+
+    /**
+     * Sends the request with request scoped beans and an open entity manager of its own, like a request to the
+     * service, so lookups are not shared between the measured requests and loaded orders stay attached while mapped
+     */
+    private Request inRequest(Request request) {
+        return () -> {
+            RequestAttributes previous = RequestContextHolder.getRequestAttributes();
+            ServletRequestAttributes attributes = new ServletRequestAttributes(new MockHttpServletRequest());
+            EntityManager entityManager = entityManagerFactory.createEntityManager();
+            RequestContextHolder.setRequestAttributes(attributes);
+            TransactionSynchronizationManager.bindResource(entityManagerFactory, new EntityManagerHolder(entityManager));
+            try {
+                request.send();
+            } finally {
+                TransactionSynchronizationManager.unbindResource(entityManagerFactory);
+                entityManager.close();
+                attributes.requestCompleted();
+                RequestContextHolder.setRequestAttributes(previous);
+            }
+        };
+    }
+
+    private OrderDTO order(Instant start) {
+        OrderDTO order = new OrderDTO();
+        order.setCarId(NEXT_CAR_ID.incrementAndGet());
+        order.setUserId(1L);
+        if (start != null) {
+            order.setStartDate(start);
+            order.setEndDate(start.plus(Duration.ofHours(3)));
+        }
+        return order;
+    }
+
+    /**
+     * Sends the requests after a warmup, so the measured requests run on compiled code and filled pools
+     * @return the bytes all threads allocated on average per request
+     */
+    private long allocatedPerRequest(Request request) throws Exception {
+        for (int i = 0; i < WARMUP_REQUESTS; i++) {
+            request.send();
+        }
+        long before = allocatedBytes();
+        for (int i = 0; i < REQUESTS; i++) {
+            request.send();
+        }
+        return (allocatedBytes() - before) / REQUESTS;
+    }
+
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocated = 0;
+        for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            // -1 for threads that ended in the meantime
+            allocated += Math.max(bytes, 0);
+        }
+        return allocated;
+    }
+
+    @FunctionalInterface
+    private interface Request {
+        void send() throws Exception;
+    }
+}
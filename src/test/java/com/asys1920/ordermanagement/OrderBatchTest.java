@@ -0,0 +1,306 @@
+package com.asys1920.ordermanagement;
+
+import com.asys1920.model.Car;
+import com.asys1920.model.Order;
+import com.asys1920.model.User;
+import com.asys1920.ordermanagement.adapter.AccountingServiceAdapter;
+import com.asys1920.ordermanagement.adapter.CarServiceAdapter;
+import com.asys1920.ordermanagement.adapter.UserServiceAdapter;
+import com.asys1920.ordermanagement.model.BillOutboxEntry;
+import com.asys1920.ordermanagement.repository.BillOutboxRepository;
+import com.asys1920.ordermanagement.repository.OrderRepository;
+import com.asys1920.ordermanagement.service.AvailabilityIndex;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import javax.naming.ServiceUnavailableException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(classes = OrderManagementApplication.class, properties = "bill.outbox.poll-interval=3600000")
+@AutoConfigureMockMvc
+public class OrderBatchTest {
+    private static final long EOL_CAR = 9;
+    private static final long BANNED_USER = 9;
+    private static final long UNAVAILABLE_USER = 8;
+    private static final Instant START = Instant.now().plus(Duration.ofDays(1)).truncatedTo(ChronoUnit.HOURS);
+
+    @MockBean
+    private UserServiceAdapter userServiceAdapter;
+
+    @MockBean
+    private CarServiceAdapter carServiceAdapter;
+
+    @MockBean
+    private AccountingServiceAdapter accountingServiceAdapter;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private BillOutboxRepository billOutboxRepository;
+
+    @Autowired
+    private AvailabilityIndex availabilityIndex;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        User user = new User();
+        user.setActive(true);
+        User banned = new User();
+        banned.setActive(true);
+        banned.setBanned(true);
+        Car eol = new Car();
+        eol.setEol(true);
+        Mockito.when(userServiceAdapter.getUser(Mockito.anyLong())).thenReturn(user);
+        Mockito.when(userServiceAdapter.getUser(BANNED_USER)).thenReturn(banned);
+        Mockito.when(userServiceAdapter.getUser(UNAVAILABLE_USER)).thenThrow(new ServiceUnavailableException("User service unavailable"));
+        Car car = new Car();
+        car.setCarBaseRentPrice(10);
+        Mockito.when(carServiceAdapter.getCar(Mockito.anyLong())).thenReturn(car);
+        Mockito.when(carServiceAdapter.getCar(EOL_CAR)).thenReturn(eol);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        billOutboxRepository.deleteAllInBatch();
+        orderRepository.deleteAllInBatch();
+        availabilityIndex.rebuild();
+    }
+
+    @Test
+    public void should_return_result_of_every_order_when_creating_batch() throws Exception {
+        JSONArray batch = new JSONArray()
+                .put(rental(1, 1))
+                .put(reservation(2, 1, START, START.plus(Duration.ofHours(2))))
+                // Overlaps the reservation before it
+                .put(reservation(2, 2, START.plus(Duration.ofHours(1)), START.plus(Duration.ofHours(3))))
+                .put(reservation(2, 2, START.plus(Duration.ofHours(2)), START.plus(Duration.ofHours(3))))
+                .put(reservation(3, 1, START, null))
+                .put(rental(EOL_CAR, 1))
+                .put(rental(4, BANNED_USER))
+                .put(new JSONObject().put("carId", 5));
+
+        mockMvc.perform(post("/orders/batch").contentType(MediaType.APPLICATION_JSON).content(batch.toString()))
+                .andExpect(status().isMultiStatus())
+                .andExpect(jsonPath("$.length()").value(8))
+                .andExpect(jsonPath("$[0].status").value("created"))
+                .andExpect(jsonPath("$[0].order.carId").value(1))
+                .andExpect(jsonPath("$[1].status").value("created"))
+                .andExpect(jsonPath("$[2].reason").value("car_in_use"))
+                .andExpect(jsonPath("$[3].status").value("created"))
+                .andExpect(jsonPath("$[4].reason").value("illegal_reservation"))
+                .andExpect(jsonPath("$[5].reason").value("car_eol"))
+                .andExpect(jsonPath("$[6].reason").value("user_banned"))
+                .andExpect(jsonPath("$[7].index").value(7))
+                .andExpect(jsonPath("$[7].reason").value("invalid"));
+
+        Assertions.assertEquals(3, orderRepository.count());
+    }
+
+    @Test
+    public void should_fetch_every_car_and_user_once_when_creating_batch() throws Exception {
+        JSONArray batch = new JSONArray()
+                .put(reservation(1, 1, START, START.plus(Duration.ofHours(1))))
+                .put(reservation(1, 1, START.plus(Duration.ofHours(1)), START.plus(Duration.ofHours(2))))
+                .put(reservation(2, 1, START, START.plus(Duration.ofHours(1))))
+                .put(reservation(2, 2, START.plus(Duration.ofHours(1)), START.plus(Duration.ofHours(2))));
+
+        mockMvc.perform(post("/orders/batch").contentType(MediaType.APPLICATION_JSON).content(batch.toString()))
+                .andExpect(status().isCreated());
+
+        Mockito.verify(carServiceAdapter, Mockito.times(1)).getCar(1L);
+        Mockito.verify(carServiceAdapter, Mockito.times(1)).getCar(2L);
+        Mockito.verify(userServiceAdapter, Mockito.times(1)).getUser(1L);
+        Mockito.verify(userServiceAdapter, Mockito.times(1)).getUser(2L);
+        Assertions.assertEquals(4, orderRepository.count());
+    }
+
+    @Test
+    public void should_reject_order_of_batch_when_car_was_booked_before() throws Exception {
+        Order booking = new Order();
+        booking.setCarId(1L);
+        booking.setUserId(1L);
+        booking.setStartDate(START);
+        booking.setEndDate(START.plus(Duration.ofHours(2)));
+        orderRepository.save(booking);
+        availabilityIndex.rebuild();
+        JSONArray batch = new JSONArray()
+                .put(reservation(1, 2, START.plus(Duration.ofHours(1)), START.plus(Duration.ofHours(3))));
+
+        mockMvc.perform(post("/orders/batch").contentType(MediaType.APPLICATION_JSON).content(batch.toString()))
+                .andExpect(status().isUnprocessableEntity())
+                .andExpect(jsonPath("$[0].reason").value("car_in_use"));
+    }
+
+    @Test
+    public void should_create_no_order_when_one_order_of_all_or_nothing_batch_is_rejected() throws Exception {
+        JSONArray batch = new JSONArray()
+                .put(reservation(1, 1, START, START.plus(Duration.ofHours(2))))
+                .put(reservation(1, 2, START.plus(Duration.ofHours(1)), START.plus(Duration.ofHours(3))))
+                .put(rental(2, 1));
+
+        mockMvc.perform(post("/orders/batch").param("allOrNothing", "true")
+                .contentType(MediaType.APPLICATION_JSON).content(batch.toString()))
+                .andExpect(status().isUnprocessableEntity())
+                .andExpect(jsonPath("$[0].reason").value("aborted"))
+                .andExpect(jsonPath("$[1].reason").value("car_in_use"))
+                .andExpect(jsonPath("$[2].reason").value("aborted"));
+
+        Assertions.assertEquals(0, orderRepository.count());
+    }
+
+    @Test
+    public void should_create_no_order_when_one_order_of_all_or_nothing_batch_is_invalid() throws Exception {
+        JSONArray batch = new JSONArray()
+                .put(rental(1, 1))
+                .put(rental(EOL_CAR, 1));
+
+        mockMvc.perform(post("/orders/batch").param("allOrNothing", "true")
+                .contentType(MediaType.APPLICATION_JSON).content(batch.toString()))
+                .andExpect(status().isUnprocessableEntity())
+                .andExpect(jsonPath("$[0].reason").value("aborted"))
+                .andExpect(jsonPath("$[1].reason").value("car_eol"));
+
+        Assertions.assertEquals(0, orderRepository.count());
+    }
+
+    @Test
+    public void should_return_result_of_every_order_when_finishing_batch() throws Exception {
+        Instant now = Instant.now();
+        Order first = save(1, 1, now.minus(Duration.ofHours(3)), null);
+        Order second = save(2, 1, now.minus(Duration.ofHours(5)), now.plus(Duration.ofHours(1)));
+        Order third = save(3, 2, now.minus(Duration.ofHours(1)), null);
+        Order reservation = save(4, 2, START, START.plus(Duration.ofHours(2)));
+        Order unbillable = save(5, UNAVAILABLE_USER, now.minus(Duration.ofHours(1)), null);
+        JSONArray batch = new JSONArray()
+                .put(first.getId())
+                .put(second.getId())
+                .put(third.getId())
+                .put(reservation.getId())
+                .put(unbillable.getId())
+                .put(-1)
+                .put(first.getId());
+
+        mockMvc.perform(patch("/orders/batch").contentType(MediaType.APPLICATION_JSON).content(batch.toString()))
+                .andExpect(status().isMultiStatus())
+                .andExpect(jsonPath("$[0].status").value("finished"))
+                .andExpect(jsonPath("$[0].order.endDate").exists())
+                .andExpect(jsonPath("$[1].status").value("finished"))
+                .andExpect(jsonPath("$[2].status").value("finished"))
+                .andExpect(jsonPath("$[3].status").value("finished"))
+                .andExpect(jsonPath("$[3].order.canceled").value(true))
+                .andExpect(jsonPath("$[4].reason").value("service_unavailable"))
+                .andExpect(jsonPath("$[5].reason").value("not_found"))
+                .andExpect(jsonPath("$[6].reason").value("invalid"));
+
+        List<BillOutboxEntry> bills = billOutboxRepository.findAll();
+        Assertions.assertEquals(3, bills.size());
+        Assertions.assertEquals(30, bills.stream().filter(bill -> bill.getOrderId().equals(first.getId()))
+                .findAny().orElseThrow().toBill().getValue(), 0.001);
+        Assertions.assertNull(orderRepository.findById(unbillable.getId()).orElseThrow().getEndDate());
+        Mockito.verify(userServiceAdapter, Mockito.times(1)).getUser(1L);
+        Mockito.verify(userServiceAdapter, Mockito.times(1)).getUser(2L);
+        Mockito.verify(carServiceAdapter, Mockito.never()).getCar(4L);
+    }
+
+    @Test
+    public void should_reject_order_finished_by_earlier_batch() throws Exception {
+        Instant now = Instant.now();
+        Order first = save(1, 1, now.minus(Duration.ofHours(3)), null);
+        Order second = save(2, 1, now.minus(Duration.ofHours(2)), null);
+
+        mockMvc.perform(patch("/orders/batch").contentType(MediaType.APPLICATION_JSON).content(new JSONArray().put(first.getId()).toString()))
+                .andExpect(status().isOk());
+        mockMvc.perform(patch("/orders/batch").contentType(MediaType.APPLICATION_JSON)
+                .content(new JSONArray().put(first.getId()).put(second.getId()).toString()))
+                .andExpect(status().isMultiStatus())
+                .andExpect(jsonPath("$[0].reason").value("already_finished"))
+                .andExpect(jsonPath("$[1].status").value("finished"));
+
+        Assertions.assertEquals(2, billOutboxRepository.count());
+        Assertions.assertEquals(1, billOutboxRepository.findAll().stream()
+                .filter(bill -> bill.getOrderId().equals(first.getId())).count());
+    }
+
+    @Test
+    public void should_bill_overdue_reservation_of_batch() throws Exception {
+        Instant now = Instant.now();
+        // The planned end of the reservation, the car is handed in a day late
+        Order overdue = save(1, 1, now.minus(Duration.ofDays(2)), now.minus(Duration.ofDays(1)));
+
+        mockMvc.perform(patch("/orders/batch").contentType(MediaType.APPLICATION_JSON).content(new JSONArray().put(overdue.getId()).toString()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].status").value("finished"));
+
+        Assertions.assertEquals(1, billOutboxRepository.count());
+        Assertions.assertTrue(orderRepository.findById(overdue.getId()).orElseThrow().getEndDate().isAfter(now));
+    }
+
+    @Test
+    public void should_reject_order_of_batch_finished_by_single_request() throws Exception {
+        Instant now = Instant.now();
+        Order order = save(1, 1, now.minus(Duration.ofHours(3)), null);
+
+        mockMvc.perform(patch("/orders/" + order.getId()))
+                .andExpect(status().isOk());
+        mockMvc.perform(patch("/orders/batch").contentType(MediaType.APPLICATION_JSON).content(new JSONArray().put(order.getId()).toString()))
+                .andExpect(status().isUnprocessableEntity())
+                .andExpect(jsonPath("$[0].reason").value("already_finished"));
+
+        Assertions.assertEquals(1, billOutboxRepository.count());
+    }
+
+    @Test
+    public void should_return_unprocessable_entity_when_no_order_of_batch_was_finished() throws Exception {
+        mockMvc.perform(patch("/orders/batch").contentType(MediaType.APPLICATION_JSON).content("[-1, -2]"))
+                .andExpect(status().isUnprocessableEntity())
+                .andExpect(jsonPath("$[1].reason").value("not_found"));
+    }
+
+    @Test
+    public void should_return_bad_request_when_creating_empty_batch() throws Exception {
+        mockMvc.perform(post("/orders/batch").contentType(MediaType.APPLICATION_JSON).content("[]"))
+                .andExpect(status().isBadRequest());
+    }
+
+    private Order save(long carId, long userId, Instant start, Instant end) {
+        Order order = new Order();
+        order.setCarId(carId);
+        order.setUserId(userId);
+        order.setStartDate(start);
+        order.setEndDate(end);
+        return orderRepository.save(order);
+    }
+
+    private static JSONObject rental(long carId, long userId) throws JSONException {
+        return new JSONObject().put("carId", carId).put("userId", userId);
+    }
+
+    private static JSONObject reservation(long carId, long userId, Instant start, Instant end) throws JSONException {
+        JSONObject reservation = rental(carId, userId).put("startDate", start.toString());
+        return end == null ? reservation : reservation.put("endDate", end.toString());
+    }
+}
@@ -0,0 +1,101 @@
+package com.asys1920.ordermanagement;
+
+import com.asys1920.model.Order;
+import com.asys1920.ordermanagement.adapter.AccountingServiceAdapter;
+import com.asys1920.ordermanagement.adapter.CarServiceAdapter;
+import com.asys1920.ordermanagement.adapter.UserServiceAdapter;
+import com.asys1920.ordermanagement.repository.OrderRepository;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Exports a million orders from a file database through a real server. The surefire execution of the memory tests
+ * runs with a heap that is far smaller than the exported orders, so the export fails if it keeps them in memory.
+ */
+@Tag("memory")
+@SpringBootTest(classes = OrderManagementApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"bill.outbox.poll-interval=3600000",
+                "spring.datasource.url=jdbc:h2:file:./target/order-export;MV_STORE=FALSE;CACHE_SIZE=8192",
+                "spring.jpa.hibernate.ddl-auto=create-drop"})
+public class OrderExportMemoryTest {
+    private static final int ORDERS = 1_000_000;
+
+    @LocalServerPort
+    private int port;
+
+    @MockBean
+    private UserServiceAdapter userServiceAdapter;
+
+    @MockBean
+    private CarServiceAdapter carServiceAdapter;
+
+    @MockBean
+    private AccountingServiceAdapter accountingServiceAdapter;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @AfterEach
+    public void tearDown() {
+        orderRepository.deleteAllInBatch();
+    }
+
+    @Test
+    public void should_export_million_orders_with_small_heap() throws Exception {
+        insertOrders();
+
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + "/orders/export").openConnection();
+        // A server that ran out of memory stops sending instead of closing the response
+        connection.setReadTimeout(60_000);
+        long lines = 0;
+        long lastId = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines++;
+                lastId = Long.parseLong(line.replaceAll(".*\"id\":(\\d+).*", "$1"));
+            }
+        }
+
+        Assertions.assertEquals(200, connection.getResponseCode());
+        Assertions.assertEquals(ORDERS, lines);
+        Assertions.assertEquals(ORDERS, lastId);
+    }
+
+    private void insertOrders() {
+        AbstractEntityPersister persister = (AbstractEntityPersister) entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getMetamodel().entityPersister(Order.class);
+        String insert = String.format("INSERT INTO %s (%s, %s, %s, %s, %s, %s)", persister.getTableName(),
+                persister.getIdentifierColumnNames()[0],
+                persister.getPropertyColumnNames("carId")[0],
+                persister.getPropertyColumnNames("userId")[0],
+                persister.getPropertyColumnNames("startDate")[0],
+                persister.getPropertyColumnNames("endDate")[0],
+                persister.getPropertyColumnNames("canceled")[0]);
+        // Generated by the database, the rows never pass the heap of the test
+        jdbcTemplate.execute(insert + " SELECT X, MOD(X, 1000), MOD(X, 5000), DATEADD('MINUTE', X, TIMESTAMP '2015-01-01 00:00:00'),"
+                + " DATEADD('MINUTE', X + 180, TIMESTAMP '2015-01-01 00:00:00'), FALSE FROM SYSTEM_RANGE(1, " + ORDERS + ")");
+    }
+}
@@ -0,0 +1,239 @@
+package com.asys1920.ordermanagement;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Drives a mixed workload of creating, reserving, finishing and listing orders against the application, with stubs of
+ * the car, user and accounting service in place of the real services, and reports the throughput and latency
+ * percentiles per endpoint. The workload is open: requests are sent at a fixed average rate however fast the
+ * application answers, and the latency of a request is measured from the time it was due, so a stalled application
+ * shows up in the latency instead of lowering the load.
+ * Run with {@code mvn test -Pbenchmark -Dtest=OrderLoadBenchmarkTest}, the workload is configured with
+ * <ul>
+ *     <li>{@code -Dload.rate}: requests per second (default 50)</li>
+ *     <li>{@code -Dload.duration} and {@code -Dload.warmup}: ISO-8601 durations (default PT30S and PT10S)</li>
+ *     <li>{@code -Dload.mix}: weights of the endpoints (default create=40,reserve=20,finish=20,list=20)</li>
+ *     <li>{@code -Dload.car.latency}, {@code -Dload.user.latency} and {@code -Dload.accounting.latency}:
+ *     {@code fixed:<millis>}, {@code uniform:<min>-<max>} or {@code exponential:<mean>} (default exponential:20)</li>
+ *     <li>{@code -Dload.car.error-rate}, {@code -Dload.user.error-rate} and {@code -Dload.accounting.error-rate}:
+ *     share of failed answers between 0 and 1 (default 0)</li>
+ * </ul>
+ */
+@Tag("benchmark")
+@SpringBootTest(classes = OrderManagementApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class OrderLoadBenchmarkTest {
+    private static final Logger LOG = LoggerFactory.getLogger(OrderLoadBenchmarkTest.class);
+    private static final Pattern ORDER_ID = Pattern.compile("\"id\":(\\d+)");
+    private static final int USERS = 1000;
+    private static final double RATE = Double.parseDouble(System.getProperty("load.rate", "50"));
+    private static final Duration DURATION = Duration.parse(System.getProperty("load.duration", "PT30S"));
+    private static final Duration WARMUP = Duration.parse(System.getProperty("load.warmup", "PT10S"));
+    private static final Map<Endpoint, Integer> MIX = mix(System.getProperty("load.mix", "create=40,reserve=20,finish=20,list=20"));
+    private static final DownstreamStub CAR_SERVICE = stub("car");
+    private static final DownstreamStub USER_SERVICE = stub("user");
+    private static final DownstreamStub ACCOUNTING_SERVICE = stub("accounting");
+
+    @LocalServerPort
+    private int port;
+
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    // Every created order and reservation uses another car, so the availability check passes
+    private final AtomicLong nextCarId = new AtomicLong();
+    private final Queue<Long> openOrders = new ConcurrentLinkedQueue<>();
+
+    @DynamicPropertySource
+    static void downstreamUrls(DynamicPropertyRegistry registry) {
+        registry.add("car.url", () -> CAR_SERVICE.url("cars"));
+        registry.add("user.url", () -> USER_SERVICE.url("users"));
+        registry.add("bill.url", () -> ACCOUNTING_SERVICE.url("bills"));
+        registry.add("bill.bulk-url", () -> ACCOUNTING_SERVICE.url("bills") + "bulk");
+    }
+
+    @AfterAll
+    public static void stopDownstreams() {
+        CAR_SERVICE.stop();
+        USER_SERVICE.stop();
+        ACCOUNTING_SERVICE.stop();
+    }
+
+    @Test
+    public void should_report_throughput_and_latency_per_endpoint() {
+        run(WARMUP);
+        Map<Endpoint, Latencies> latencies = run(DURATION);
+
+        LOG.info(String.format("%d requests per second for %s, mix %s", (long) RATE, DURATION, MIX));
+        LOG.info(String.format("%-8s %8s %8s %10s %10s %10s %10s %10s", "endpoint", "ok", "failed", "req/s",
+                "p50 ms", "p99 ms", "p999 ms", "max ms"));
+        latencies.forEach((endpoint, endpointLatencies) -> LOG.info(endpointLatencies.report(endpoint.name().toLowerCase(), DURATION)));
+        Assertions.assertTrue(latencies.values().stream().allMatch(endpointLatencies -> endpointLatencies.count() > 0),
+                "Every endpoint of the mix was requested");
+    }
+
+    /**
+     * Sends requests at random intervals with the configured average rate
+     * @param duration how long requests are sent
+     * @return the latencies of the sent requests per endpoint
+     */
+    private Map<Endpoint, Latencies> run(Duration duration) {
+        Map<Endpoint, Latencies> latencies = new EnumMap<>(Endpoint.class);
+        MIX.keySet().forEach(endpoint -> latencies.put(endpoint, new Latencies()));
+        Queue<CompletableFuture<?>> pending = new ConcurrentLinkedQueue<>();
+        long start = System.nanoTime();
+        long end = start + duration.toNanos();
+        long due = start;
+        while (due < end) {
+            LockSupport.parkNanos(due - System.nanoTime());
+            Endpoint endpoint = nextEndpoint();
+            HttpRequest request = request(endpoint);
+            long sent = due;
+            pending.add(client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                    .whenComplete((response, ex) -> {
+                        long latency = System.nanoTime() - sent;
+                        boolean ok = ex == null && response.statusCode() < 300;
+                        if (ok && endpoint == Endpoint.CREATE) {
+                            openOrders.add(orderId(response.body()));
+                        }
+                        latencies.get(endpoint).add(latency, ok);
+                    }));
+            // Poisson arrivals, the intervals are exponentially distributed
+            due += (long) (-Math.log(1 - ThreadLocalRandom.current().nextDouble()) / RATE * 1e9);
+        }
+        CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0]))
+                .exceptionally(ex -> null)
+                .orTimeout(1, TimeUnit.MINUTES)
+                .join();
+        return latencies;
+    }
+
+    private Endpoint nextEndpoint() {
+        int total = MIX.values().stream().mapToInt(Integer::intValue).sum();
+        int pick = ThreadLocalRandom.current().nextInt(total);
+        for (Map.Entry<Endpoint, Integer> weight : MIX.entrySet()) {
+            pick -= weight.getValue();
+            if (pick < 0) {
+                return weight.getKey();
+            }
+        }
+        throw new IllegalStateException("The mix has no endpoints");
+    }
+
+    private HttpRequest request(Endpoint endpoint) {
+        String orders = "http://localhost:" + port + "/orders";
+        long userId = ThreadLocalRandom.current().nextLong(USERS) + 1;
+        switch (endpoint) {
+            case CREATE:
+                return post(orders, String.format("{\"carId\":%d,\"userId\":%d}", nextCarId.incrementAndGet(), userId));
+            case RESERVE:
+                Instant start = Instant.now().plus(Duration.ofDays(ThreadLocalRandom.current().nextInt(1, 30)));
+                return post(orders, String.format("{\"carId\":%d,\"userId\":%d,\"startDate\":\"%s\",\"endDate\":\"%s\"}",
+                        nextCarId.incrementAndGet(), userId, start, start.plus(Duration.ofHours(3))));
+            case FINISH:
+                Long orderId = openOrders.poll();
+                // Until an order was created the finish request fails like one for an unknown order
+                return HttpRequest.newBuilder(URI.create(orders + "/" + (orderId == null ? 0 : orderId)))
+                        .method("PATCH", HttpRequest.BodyPublishers.noBody())
+                        .build();
+            case LIST:
+                return HttpRequest.newBuilder(URI.create(orders + "/byuser/" + userId + "?size=20")).GET().build();
+            default:
+                throw new IllegalArgumentException("Unknown endpoint " + endpoint);
+        }
+    }
+
+    private static HttpRequest post(String uri, String body) {
+        return HttpRequest.newBuilder(URI.create(uri))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private static Long orderId(String body) {
+        Matcher matcher = ORDER_ID.matcher(body);
+        return matcher.find() ? Long.parseLong(matcher.group(1)) : null;
+    }
+
+    private static DownstreamStub stub(String service) {
+        return new DownstreamStub(DownstreamStub.Latency.parse(System.getProperty("load." + service + ".latency", "exponential:20")),
+                Double.parseDouble(System.getProperty("load." + service + ".error-rate", "0")));
+    }
+
+    private static Map<Endpoint, Integer> mix(String spec) {
+        Map<Endpoint, Integer> mix = new EnumMap<>(Endpoint.class);
+        for (String weight : spec.split(",")) {
+            String[] parts = weight.split("=", 2);
+            mix.put(Endpoint.valueOf(parts[0].trim().toUpperCase()), Integer.parseInt(parts[1].trim()));
+        }
+        return mix;
+    }
+
+    private enum Endpoint {
+        CREATE, RESERVE, FINISH, LIST
+    }
+
+    /**
+     * Latencies of the requests to one endpoint
+     */
+    private static class Latencies {
+        private long[] nanos = new long[1024];
+        private int count;
+        private int failed;
+
+        synchronized void add(long latency, boolean ok) {
+            if (count == nanos.length) {
+                nanos = Arrays.copyOf(nanos, count * 2);
+            }
+            nanos[count++] = latency;
+            if (!ok) {
+                failed++;
+            }
+        }
+
+        synchronized int count() {
+            return count;
+        }
+
+        synchronized String report(String endpoint, Duration duration) {
+            long[] sorted = Arrays.copyOf(nanos, count);
+            Arrays.sort(sorted);
+            return String.format("%-8s %8d %8d %10.1f %10.1f %10.1f %10.1f %10.1f", endpoint, count - failed, failed,
+                    count / (duration.toNanos() / 1e9), millis(sorted, 0.5), millis(sorted, 0.99), millis(sorted, 0.999),
+                    millis(sorted, 1));
+        }
+
+        private static double millis(long[] sorted, double percentile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile * sorted.length) - 1;
+            return sorted[Math.max(index, 0)] / 1e6;
+        }
+    }
+}
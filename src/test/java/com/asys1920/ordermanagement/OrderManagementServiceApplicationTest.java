@@ -5,26 +5,46 @@ import com.asys1920.model.*;
 import com.asys1920.ordermanagement.adapter.AccountingServiceAdapter;
 import com.asys1920.ordermanagement.adapter.CarServiceAdapter;
 import com.asys1920.ordermanagement.adapter.UserServiceAdapter;
+import com.asys1920.ordermanagement.model.BillOutboxEntry;
+import com.asys1920.ordermanagement.repository.BillOutboxRepository;
+import com.asys1920.ordermanagement.repository.OrderFilter;
 import com.asys1920.ordermanagement.repository.OrderRepository;
+import com.asys1920.ordermanagement.service.AvailabilityIndex;
+import com.asys1920.ordermanagement.service.BillOutboxDispatcher;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import javax.naming.ServiceUnavailableException;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.Period;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
 
+import static org.hamcrest.Matchers.containsString;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
-@SpringBootTest(classes = OrderManagementApplication.class)
+@SpringBootTest(classes = OrderManagementApplication.class, properties = "bill.outbox.poll-interval=3600000")
 @AutoConfigureMockMvc
 public class OrderManagementServiceApplicationTest {
     @Autowired
@@ -42,6 +62,27 @@ public class OrderManagementServiceApplicationTest {
     @MockBean
     private OrderRepository repository;
 
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private BillOutboxRepository billOutboxRepository;
+
+    @Autowired
+    private BillOutboxDispatcher billOutboxDispatcher;
+
+    @Autowired
+    private AvailabilityIndex availabilityIndex;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    public void setUp() {
+        // The mocked repository has no orders, bookings of previous tests are dropped
+        availabilityIndex.rebuild();
+    }
+
     /*
     GET all orders
      */
@@ -67,6 +108,142 @@ public class OrderManagementServiceApplicationTest {
                 .andExpect(status().isOk());
     }
 
+    @Test
+    public void should_link_next_page_when_more_orders_exist() throws Exception {
+        Order first = getValidOrder();
+        first.setId(1L);
+        Order second = getValidOrder();
+        second.setId(2L);
+        Order third = getValidOrder();
+        third.setId(3L);
+        Mockito.when(repository.findPage(Mockito.any(OrderFilter.class), Mockito.isNull(), Mockito.eq(3)))
+                .thenReturn(List.of(first, second, third));
+
+        mockMvc.perform(get("/orders/bycar/" + first.getCarId() + "?size=2&status=open")
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(header().string(HttpHeaders.LINK, containsString("after=2")))
+                .andExpect(header().string(HttpHeaders.LINK, containsString("status=open")));
+    }
+
+    @Test
+    public void should_not_link_next_page_on_last_page() throws Exception {
+        Order order = getValidOrder();
+        Mockito.when(repository.findPage(Mockito.any(OrderFilter.class), Mockito.eq(5L), Mockito.eq(3)))
+                .thenReturn(List.of(order));
+
+        mockMvc.perform(get("/orders")
+                .param("after", "5")
+                .param("size", "2")
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(header().doesNotExist(HttpHeaders.LINK));
+    }
+
+    @Test
+    public void should_return_bad_request_when_requesting_orders_with_unknown_status() throws Exception {
+        mockMvc.perform(get("/orders")
+                .param("status", "lost")
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void should_return_available_cars_in_requested_order_when_requesting_availability() throws Exception {
+        Instant from = Instant.now().plus(Duration.ofDays(1));
+        Order reservation = new Order();
+        reservation.setId(getRandomId());
+        reservation.setCarId(3L);
+        reservation.setUserId(1L);
+        reservation.setStartDate(from.minus(Duration.ofHours(1)));
+        reservation.setEndDate(from.plus(Duration.ofHours(1)));
+        availabilityIndex.update(reservation);
+
+        mockMvc.perform(get("/orders/availability")
+                .param("from", from.toString())
+                .param("to", from.plus(Duration.ofHours(2)).toString())
+                .param("carIds", "4,3,1,4")
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.available.length()").value(2))
+                .andExpect(jsonPath("$.available[0]").value(4))
+                .andExpect(jsonPath("$.available[1]").value(1))
+                .andExpect(jsonPath("$.booked[0]").value(3));
+        Mockito.verify(repository, Mockito.never()).findBookedCarIds(Mockito.any(), Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    public void should_return_available_cars_when_posting_more_cars_than_fit_into_query() throws Exception {
+        Instant from = Instant.now().plus(Duration.ofDays(1));
+        Order reservation = new Order();
+        reservation.setId(getRandomId());
+        reservation.setCarId(700L);
+        reservation.setUserId(1L);
+        reservation.setStartDate(from);
+        reservation.setEndDate(from.plus(Duration.ofHours(1)));
+        availabilityIndex.update(reservation);
+        JSONArray carIds = new JSONArray();
+        for (long carId = 1; carId <= 2000; carId++) {
+            carIds.put(carId);
+        }
+
+        mockMvc.perform(post("/orders/availability")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(new JSONObject()
+                        .put("from", from.toString())
+                        .put("to", from.plus(Duration.ofHours(2)).toString())
+                        .put("carIds", carIds).toString())
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.available.length()").value(1999))
+                .andExpect(jsonPath("$.booked[0]").value(700));
+    }
+
+    @Test
+    public void should_return_bad_request_when_requesting_more_cars_than_fit_into_query() throws Exception {
+        Instant from = Instant.now();
+        String carIds = LongStream.rangeClosed(1, 501).mapToObj(Long::toString).collect(Collectors.joining(","));
+        mockMvc.perform(get("/orders/availability")
+                .param("from", from.toString())
+                .param("to", from.plus(Duration.ofHours(1)).toString())
+                .param("carIds", carIds)
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void should_return_bad_request_when_requesting_availability_of_empty_time_range() throws Exception {
+        Instant from = Instant.now();
+        mockMvc.perform(get("/orders/availability")
+                .param("from", from.toString())
+                .param("to", from.toString())
+                .param("carIds", "1")
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void should_stream_orders_as_ndjson_when_exporting_orders() throws Exception {
+        Order first = getValidOrder();
+        Order second = getValidOrder();
+        Mockito.when(repository.streamAllByOrderByIdAsc()).thenReturn(Stream.of(first, second));
+
+        MvcResult export = mockMvc.perform(get("/orders/export"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String body = mockMvc.perform(asyncDispatch(export))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"))
+                .andReturn().getResponse().getContentAsString();
+
+        String[] lines = body.split("\n");
+        Assertions.assertEquals(2, lines.length);
+        Assertions.assertEquals(first.getId(), new JSONObject(lines[0]).getLong("id"));
+        Assertions.assertEquals(second.getId(), new JSONObject(lines[1]).getLong("id"));
+    }
+
     /*
     Post order
     */
@@ -89,6 +266,28 @@ public class OrderManagementServiceApplicationTest {
                 .andExpect(jsonPath("$.carId").value(body.get("carId")));
     }
 
+    @Test
+    public void should_fetch_user_and_car_once_when_creating_order() throws Exception {
+        Order validOrder = getValidOrder();
+        JSONObject body = jsonFromOrder(validOrder);
+
+        Mockito.when(userServiceAdapter.getUser(validOrder.getUserId())).thenReturn(createUser());
+        Mockito.when(repository.save(Mockito.any(Order.class))).thenReturn(validOrder);
+        Mockito.when(carServiceAdapter.getCar(validOrder.getCarId())).thenReturn(createdCar());
+        double userLookups = remoteLookups("user");
+        double carLookups = remoteLookups("car");
+
+        mockMvc.perform(post("/orders/")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(body.toString()).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isCreated());
+
+        Assertions.assertEquals(1, remoteLookups("user") - userLookups);
+        Assertions.assertEquals(1, remoteLookups("car") - carLookups);
+        Mockito.verify(userServiceAdapter, Mockito.times(1)).getUser(validOrder.getUserId());
+        Mockito.verify(carServiceAdapter, Mockito.times(1)).getCar(validOrder.getCarId());
+    }
+
     @Test
     public void should_return_errorMessage_order_when_creating_order_user_inactive() throws Exception {
         Order validOrder = getValidOrder();
@@ -140,6 +339,41 @@ public class OrderManagementServiceApplicationTest {
                 .andExpect(status().isUnprocessableEntity());
     }
 
+    @Test
+    public void should_expose_rejections_and_operation_latencies_on_prometheus_endpoint() throws Exception {
+        Order validOrder = getValidOrder();
+        Mockito.when(userServiceAdapter.getUser(validOrder.getUserId())).thenReturn(createUser());
+        Car car = createdCar();
+        car.setEol(true);
+        Mockito.when(carServiceAdapter.getCar(validOrder.getCarId())).thenReturn(car);
+
+        mockMvc.perform(post("/orders/")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(jsonFromOrder(validOrder).toString()).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isUnprocessableEntity());
+
+        mockMvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("order_rejections_total{reason=\"car_eol\",}")))
+                .andExpect(content().string(containsString("exception=\"CarNotAvailableException\",method=\"createOrder\",le=\"0.1\",}")));
+    }
+
+    @Test
+    public void should_return_errorMessage_order_when_creating_order_car_service_unavailable() throws Exception {
+        Order validOrder = getValidOrder();
+        JSONObject body = jsonFromOrder(validOrder);
+
+        Mockito.when(userServiceAdapter.getUser(validOrder.getUserId())).thenReturn(createUser());
+        Mockito.when(repository.save(Mockito.any(Order.class))).thenReturn(validOrder);
+        Mockito.when(carServiceAdapter.getCar(validOrder.getCarId()))
+                .thenThrow(new ServiceUnavailableException("CarService is currently unavailable. Please try again later."));
+
+        mockMvc.perform(post("/orders/")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(body.toString()).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isFailedDependency());
+    }
+
     // Reserve
 
     @Test
@@ -166,6 +400,32 @@ public class OrderManagementServiceApplicationTest {
                 .andExpect(jsonPath("$.endDate").value(body.get("endDate")));
     }
 
+    @Test
+    public void should_return_errorMessage_when_reserving_booked_car() throws Exception {
+        Order reservedOrder = getValidOrder();
+        reservedOrder.setStartDate(Instant.now().plus(Duration.ofDays(2)));
+        reservedOrder.setEndDate(reservedOrder.getStartDate().plus(Duration.ofDays(1)));
+        JSONObject reserved = jsonFromOrder(reservedOrder);
+        reserved.put("startDate", reservedOrder.getStartDate().toString());
+        reserved.put("endDate", reservedOrder.getEndDate().toString());
+        JSONObject overlapping = jsonFromOrder(getValidOrder());
+        overlapping.put("startDate", reservedOrder.getStartDate().plus(Duration.ofHours(12)).toString());
+        overlapping.put("endDate", reservedOrder.getEndDate().plus(Duration.ofDays(1)).toString());
+
+        Mockito.when(userServiceAdapter.getUser(reservedOrder.getUserId())).thenReturn(createUser());
+        Mockito.when(repository.save(Mockito.any(Order.class))).thenReturn(reservedOrder);
+        Mockito.when(carServiceAdapter.getCar(reservedOrder.getCarId())).thenReturn(createdCar());
+
+        mockMvc.perform(post("/orders/")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(reserved.toString()).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isCreated());
+        mockMvc.perform(post("/orders/")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(overlapping.toString()).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isUnprocessableEntity());
+    }
+
     /*
     PATCH order
      */
@@ -194,10 +454,9 @@ public class OrderManagementServiceApplicationTest {
 
         Mockito.when(userServiceAdapter.getUser(validOrder.getUserId())).thenReturn(createUser());
         Mockito.when(repository.save(Mockito.any(Order.class))).thenReturn(validOrder);
-        Mockito.when(repository.existsById(validOrder.getId())).thenReturn(true);
-        Mockito.when(repository.getOne(validOrder.getId())).thenReturn(validOrder);
+        Mockito.when(repository.findById(validOrder.getId())).thenReturn(Optional.of(validOrder));
         Mockito.when(carServiceAdapter.getCar(validOrder.getCarId())).thenReturn(createdCar());
-        Mockito.when(accountingServiceAdapter.saveBill(Mockito.any(Bill.class))).thenReturn(getValidBill());
+        Mockito.when(accountingServiceAdapter.saveBill(Mockito.any(Bill.class), Mockito.anyString())).thenReturn(getValidBill());
 
         mockMvc.perform(patch("/orders/" + validOrder.getId())
                 .contentType(MediaType.APPLICATION_JSON)
@@ -205,6 +464,99 @@ public class OrderManagementServiceApplicationTest {
                 .andExpect(status().isOk());
     }
 
+    @Test
+    public void should_read_order_once_and_record_stages_when_patching_valid_order() throws Exception {
+        Order validOrder = getValidOrder();
+        validOrder.setStartDate(Instant.now().minus(Duration.ofDays(2)));
+
+        Mockito.when(userServiceAdapter.getUser(validOrder.getUserId())).thenReturn(createUser());
+        Mockito.when(repository.save(Mockito.any(Order.class))).thenReturn(validOrder);
+        Mockito.when(repository.findById(validOrder.getId())).thenReturn(Optional.of(validOrder));
+        Mockito.when(carServiceAdapter.getCar(validOrder.getCarId())).thenReturn(createdCar());
+        long loads = finishStages("load");
+        long lookups = finishStages("lookups");
+        long saves = finishStages("save");
+
+        mockMvc.perform(patch("/orders/" + validOrder.getId()))
+                .andExpect(status().isOk());
+
+        Mockito.verify(repository, Mockito.times(1)).findById(validOrder.getId());
+        Mockito.verify(repository, Mockito.never()).existsById(Mockito.anyLong());
+        Mockito.verify(repository, Mockito.never()).getOne(Mockito.anyLong());
+        Assertions.assertEquals(1, finishStages("load") - loads);
+        Assertions.assertEquals(1, finishStages("lookups") - lookups);
+        Assertions.assertEquals(1, finishStages("save") - saves);
+    }
+
+    @Test
+    public void should_send_bill_and_set_bill_id_when_patching_valid_order() throws Exception {
+        billOutboxRepository.deleteAll();
+        Order validOrder = getValidOrder();
+        validOrder.setStartDate(Instant.now().minus(Duration.ofDays(2)));
+
+        Mockito.when(userServiceAdapter.getUser(validOrder.getUserId())).thenReturn(createUser());
+        Mockito.when(repository.save(Mockito.any(Order.class))).thenReturn(validOrder);
+        Mockito.when(repository.findById(validOrder.getId())).thenReturn(Optional.of(validOrder));
+        Mockito.when(carServiceAdapter.getCar(validOrder.getCarId())).thenReturn(createdCar());
+        Mockito.when(accountingServiceAdapter.saveBill(Mockito.any(Bill.class), Mockito.anyString())).thenReturn(getValidBill());
+
+        mockMvc.perform(patch("/orders/" + validOrder.getId()))
+                .andExpect(status().isOk());
+        billOutboxDispatcher.dispatchPendingBills();
+
+        Assertions.assertEquals(getValidBill().getId(), validOrder.getBillId());
+        Assertions.assertEquals(0, billOutboxRepository.countByStatus(BillOutboxEntry.Status.PENDING));
+        Mockito.verify(accountingServiceAdapter).saveBill(Mockito.any(Bill.class), Mockito.eq("order-" + validOrder.getId()));
+    }
+
+    @Test
+    public void should_not_send_bill_claimed_by_other_instance() throws Exception {
+        billOutboxRepository.deleteAll();
+        Order validOrder = getValidOrder();
+        validOrder.setStartDate(Instant.now().minus(Duration.ofDays(2)));
+
+        Mockito.when(userServiceAdapter.getUser(validOrder.getUserId())).thenReturn(createUser());
+        Mockito.when(repository.save(Mockito.any(Order.class))).thenReturn(validOrder);
+        Mockito.when(repository.findById(validOrder.getId())).thenReturn(Optional.of(validOrder));
+        Mockito.when(carServiceAdapter.getCar(validOrder.getCarId())).thenReturn(createdCar());
+
+        mockMvc.perform(patch("/orders/" + validOrder.getId()))
+                .andExpect(status().isOk());
+        Instant now = Instant.now();
+        List<Long> dueIds = billOutboxRepository.findDueIds(BillOutboxEntry.Status.PENDING, now, PageRequest.of(0, 10));
+        int claimed = transactionTemplate.execute(status -> billOutboxRepository.claim(dueIds,
+                BillOutboxEntry.Status.PENDING, now, "other-instance", now.plus(Duration.ofMinutes(1))));
+        billOutboxDispatcher.dispatchPendingBills();
+
+        Assertions.assertEquals(1, claimed);
+        Mockito.verify(accountingServiceAdapter, Mockito.never()).saveBill(Mockito.any(Bill.class), Mockito.anyString());
+        Assertions.assertEquals(1, billOutboxRepository.countByStatus(BillOutboxEntry.Status.PENDING));
+    }
+
+    @Test
+    public void should_keep_bill_pending_when_accounting_service_unavailable() throws Exception {
+        billOutboxRepository.deleteAll();
+        Order validOrder = getValidOrder();
+        validOrder.setStartDate(Instant.now().minus(Duration.ofDays(2)));
+
+        Mockito.when(userServiceAdapter.getUser(validOrder.getUserId())).thenReturn(createUser());
+        Mockito.when(repository.save(Mockito.any(Order.class))).thenReturn(validOrder);
+        Mockito.when(repository.findById(validOrder.getId())).thenReturn(Optional.of(validOrder));
+        Mockito.when(carServiceAdapter.getCar(validOrder.getCarId())).thenReturn(createdCar());
+        Mockito.when(accountingServiceAdapter.saveBill(Mockito.any(Bill.class), Mockito.anyString()))
+                .thenThrow(new ServiceUnavailableException("AccountingService is currently unavailable. Please try again later."));
+
+        mockMvc.perform(patch("/orders/" + validOrder.getId()))
+                .andExpect(status().isOk());
+        billOutboxDispatcher.dispatchPendingBills();
+
+        List<BillOutboxEntry> entries = billOutboxRepository.findAll();
+        Assertions.assertEquals(1, entries.size());
+        Assertions.assertEquals(BillOutboxEntry.Status.PENDING, entries.get(0).getStatus());
+        Assertions.assertEquals(1, entries.get(0).getAttempts());
+        Assertions.assertTrue(entries.get(0).getNextAttemptAt().isAfter(Instant.now()));
+    }
+
     @Test
     public void should_return_validOrder_when_canceling_valid_order() throws Exception {
         Order validOrder = getValidOrder();
@@ -216,10 +568,9 @@ public class OrderManagementServiceApplicationTest {
 
         Mockito.when(userServiceAdapter.getUser(validOrder.getUserId())).thenReturn(createUser());
         Mockito.when(repository.save(Mockito.any(Order.class))).thenReturn(validOrder);
-        Mockito.when(repository.existsById(validOrder.getId())).thenReturn(true);
-        Mockito.when(repository.getOne(validOrder.getId())).thenReturn(validOrder);
+        Mockito.when(repository.findById(validOrder.getId())).thenReturn(Optional.of(validOrder));
         Mockito.when(carServiceAdapter.getCar(validOrder.getCarId())).thenReturn(createdCar());
-        Mockito.when(accountingServiceAdapter.saveBill(Mockito.any(Bill.class))).thenReturn(getValidBill());
+        Mockito.when(accountingServiceAdapter.saveBill(Mockito.any(Bill.class), Mockito.anyString())).thenReturn(getValidBill());
 
 
         mockMvc.perform(patch("/orders/" + validOrder.getId())
@@ -231,6 +582,80 @@ public class OrderManagementServiceApplicationTest {
                 .andExpect(jsonPath("$.carId").value(body.get("carId")));
     }
 
+    @Test
+    public void should_return_conflict_when_patching_canceled_order() throws Exception {
+        Order canceled = getValidOrder();
+        canceled.setCanceled(true);
+
+        Mockito.when(repository.findById(canceled.getId())).thenReturn(Optional.of(canceled));
+
+        mockMvc.perform(patch("/orders/" + canceled.getId()))
+                .andExpect(status().isConflict());
+
+        Mockito.verify(userServiceAdapter, Mockito.never()).getUser(canceled.getUserId());
+    }
+
+    @Test
+    public void should_return_conflict_when_patching_finished_order() throws Exception {
+        billOutboxRepository.deleteAll();
+        Order finished = getValidOrder();
+        finished.setStartDate(Instant.now().minus(Duration.ofDays(2)));
+        finished.setEndDate(Instant.now().minus(Duration.ofDays(1)));
+        Instant endDate = finished.getEndDate();
+        billOutboxRepository.save(new BillOutboxEntry(finished.getId(), getValidBill()));
+
+        Mockito.when(repository.findById(finished.getId())).thenReturn(Optional.of(finished));
+
+        mockMvc.perform(patch("/orders/" + finished.getId()))
+                .andExpect(status().isConflict());
+
+        Assertions.assertEquals(endDate, finished.getEndDate());
+        Assertions.assertEquals(1, billOutboxRepository.count());
+        Mockito.verify(userServiceAdapter, Mockito.never()).getUser(finished.getUserId());
+    }
+
+    @Test
+    public void should_bill_overdue_reservation_when_patching() throws Exception {
+        billOutboxRepository.deleteAll();
+        Order overdue = getValidOrder();
+        overdue.setStartDate(Instant.now().minus(Duration.ofDays(2)));
+        // The planned end of the reservation, the car is handed in a day late
+        overdue.setEndDate(Instant.now().minus(Duration.ofDays(1)));
+
+        Mockito.when(userServiceAdapter.getUser(overdue.getUserId())).thenReturn(createUser());
+        Mockito.when(repository.save(Mockito.any(Order.class))).thenReturn(overdue);
+        Mockito.when(repository.findById(overdue.getId())).thenReturn(Optional.of(overdue));
+        Mockito.when(carServiceAdapter.getCar(overdue.getCarId())).thenReturn(createdCar());
+
+        mockMvc.perform(patch("/orders/" + overdue.getId()))
+                .andExpect(status().isOk());
+
+        List<BillOutboxEntry> bills = billOutboxRepository.findAll();
+        Assertions.assertEquals(1, bills.size());
+        Assertions.assertEquals(overdue.getId(), bills.get(0).getOrderId());
+        Assertions.assertTrue(overdue.getEndDate().isAfter(Instant.now().minus(Duration.ofMinutes(1))));
+    }
+
+    /*
+    POST user status change
+     */
+
+    @Test
+    public void should_evict_user_when_user_status_changed() throws Exception {
+        mockMvc.perform(post("/users/" + 1 + "/status-changed"))
+                .andExpect(status().isNoContent());
+
+        Mockito.verify(userServiceAdapter).evictUser(1L);
+    }
+
+    private double remoteLookups(String entity) {
+        return meterRegistry.counter("order.lookups.remote", "entity", entity).count();
+    }
+
+    private long finishStages(String stage) {
+        return meterRegistry.timer("order.finish.stages", "stage", stage).count();
+    }
+
     private long getRandomId() {
         return (long) (Math.random() * Integer.MAX_VALUE);
     }
@@ -0,0 +1,115 @@
+package com.asys1920.ordermanagement;
+
+import com.asys1920.ordermanagement.adapter.AccountingServiceAdapter;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the throughput of the blocking and the reactive order endpoints while the car and user service answer
+ * slowly. Both modes run in the same server with a small request thread pool against stub services that delay
+ * every answer. Run with {@code mvn test -Pbenchmark}.
+ */
+@Tag("benchmark")
+@SpringBootTest(classes = OrderManagementApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"bill.outbox.poll-interval=3600000",
+                "order.reactive.enabled=true",
+                "order.request.deadline=30s",
+                "server.tomcat.threads.max=" + OrderThroughputBenchmarkTest.REQUEST_THREADS,
+                "http.client.max-connections=1000",
+                "http.client.max-connections-per-route=1000",
+                "resilience4j.bulkhead.configs.default.max-concurrent-calls=1000"})
+public class OrderThroughputBenchmarkTest {
+    private static final Logger LOG = LoggerFactory.getLogger(OrderThroughputBenchmarkTest.class);
+    static final int REQUEST_THREADS = 8;
+    private static final int LATENCY_MILLIS = 250;
+    private static final int CONCURRENCY = 100;
+    private static final int WARMUP_CONCURRENCY = 10;
+    private static final int WARMUP_REQUESTS = 300;
+    private static final int REQUESTS = 1000;
+    private static final DownstreamStub DOWNSTREAM = new DownstreamStub(LATENCY_MILLIS);
+    // Every order uses another car and user, so the caches of the adapters never answer in place of the stubs
+    private static final AtomicLong NEXT_ID = new AtomicLong();
+
+    @LocalServerPort
+    private int port;
+
+    @MockBean
+    private AccountingServiceAdapter accountingServiceAdapter;
+
+    @DynamicPropertySource
+    static void downstreamUrls(DynamicPropertyRegistry registry) {
+        registry.add("car.url", () -> DOWNSTREAM.url("cars"));
+        registry.add("user.url", () -> DOWNSTREAM.url("users"));
+    }
+
+    @AfterAll
+    public static void stopDownstream() {
+        DOWNSTREAM.stop();
+    }
+
+    @Test
+    public void should_serve_more_orders_per_second_in_reactive_mode_when_downstreams_are_slow() throws Exception {
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        // A cold server answers slowly, a gentle warmup keeps the circuit breakers from opening on slow calls
+        run(client, "/orders", WARMUP_REQUESTS, WARMUP_CONCURRENCY);
+        run(client, "/reactive/orders", WARMUP_REQUESTS, WARMUP_CONCURRENCY);
+
+        double blocking = run(client, "/orders", REQUESTS, CONCURRENCY);
+        double reactive = run(client, "/reactive/orders", REQUESTS, CONCURRENCY);
+        LOG.info(String.format("Created orders with %d request threads, %d concurrent clients and %d ms downstream latency:%n"
+                        + "blocking: %.0f orders per second%nreactive: %.0f orders per second",
+                REQUEST_THREADS, CONCURRENCY, LATENCY_MILLIS, blocking, reactive));
+
+        // The blocking mode is capped at about one order per request thread and downstream latency
+        Assertions.assertTrue(reactive > 2 * blocking,
+                String.format("Reactive mode created %.0f, blocking mode %.0f orders per second", reactive, blocking));
+    }
+
+    /**
+     * Creates orders with a fixed number of concurrent clients
+     * @return the created orders per second
+     */
+    private double run(HttpClient client, String path, int requests, int concurrency) throws Exception {
+        Semaphore inFlight = new Semaphore(concurrency);
+        AtomicInteger failed = new AtomicInteger();
+        CompletableFuture<?>[] responses = new CompletableFuture<?>[requests];
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            long id = NEXT_ID.incrementAndGet();
+            HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(String.format("{\"carId\":%d,\"userId\":%d}", id, id)))
+                    .build();
+            inFlight.acquire();
+            responses[i] = client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, ex) -> {
+                        inFlight.release();
+                        if (ex != null || response.statusCode() != 201) {
+                            failed.incrementAndGet();
+                        }
+                    });
+        }
+        CompletableFuture.allOf(responses).exceptionally(ex -> null).join();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        Assertions.assertEquals(0, failed.get(), String.format("%d orders of %s failed", failed.get(), path));
+        return requests / seconds;
+    }
+}
@@ -0,0 +1,255 @@
+package com.asys1920.ordermanagement;
+
+import com.asys1920.model.Car;
+import com.asys1920.model.Order;
+import com.asys1920.model.User;
+import com.asys1920.ordermanagement.adapter.AccountingServiceAdapter;
+import com.asys1920.ordermanagement.adapter.ReactiveCarServiceAdapter;
+import com.asys1920.ordermanagement.adapter.ReactiveUserServiceAdapter;
+import com.asys1920.ordermanagement.model.BillOutboxEntry;
+import com.asys1920.ordermanagement.repository.BillOutboxRepository;
+import com.asys1920.ordermanagement.repository.OrderRepository;
+import com.asys1920.ordermanagement.service.AvailabilityIndex;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultActions;
+import reactor.core.publisher.Mono;
+
+import javax.naming.ServiceUnavailableException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Set;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest(classes = OrderManagementApplication.class,
+        properties = {"bill.outbox.poll-interval=3600000", "order.reactive.enabled=true"})
+@AutoConfigureMockMvc
+public class ReactiveOrderControllerTest {
+    private static final long CAR_ID = 1L;
+    private static final long USER_ID = 1L;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private ReactiveUserServiceAdapter userServiceAdapter;
+
+    @MockBean
+    private ReactiveCarServiceAdapter carServiceAdapter;
+
+    @MockBean
+    private AccountingServiceAdapter accountingServiceAdapter;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private BillOutboxRepository billOutboxRepository;
+
+    @Autowired
+    private AvailabilityIndex availabilityIndex;
+
+    @BeforeEach
+    public void setUp() {
+        Mockito.when(userServiceAdapter.getUser(USER_ID)).thenReturn(Mono.just(createUser()));
+        Mockito.when(carServiceAdapter.getCar(CAR_ID)).thenReturn(Mono.just(createCar()));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        billOutboxRepository.deleteAll();
+        orderRepository.deleteAll();
+        availabilityIndex.rebuild();
+    }
+
+    @Test
+    public void should_return_valid_order_when_creating_order() throws Exception {
+        perform(post("/reactive/orders")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(orderJson().toString()))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.carId").value(CAR_ID))
+                .andExpect(jsonPath("$.userId").value(USER_ID))
+                .andExpect(jsonPath("$.startDate").isNotEmpty());
+
+        Assertions.assertEquals(1, orderRepository.count());
+    }
+
+    @Test
+    public void should_return_errorMessage_when_reserving_booked_car() throws Exception {
+        Instant start = Instant.now().plus(Duration.ofDays(2));
+        JSONObject reservation = orderJson();
+        reservation.put("startDate", start.toString());
+        reservation.put("endDate", start.plus(Duration.ofDays(1)).toString());
+        JSONObject overlapping = orderJson();
+        overlapping.put("startDate", start.plus(Duration.ofHours(12)).toString());
+        overlapping.put("endDate", start.plus(Duration.ofDays(2)).toString());
+
+        perform(post("/reactive/orders").contentType(MediaType.APPLICATION_JSON).content(reservation.toString()))
+                .andExpect(status().isCreated());
+        perform(post("/reactive/orders").contentType(MediaType.APPLICATION_JSON).content(overlapping.toString()))
+                .andExpect(status().isUnprocessableEntity());
+    }
+
+    @Test
+    public void should_return_errorMessage_when_creating_order_user_banned() throws Exception {
+        User user = createUser();
+        user.setBanned(true);
+        Mockito.when(userServiceAdapter.getUser(USER_ID)).thenReturn(Mono.just(user));
+
+        perform(post("/reactive/orders")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(orderJson().toString()))
+                .andExpect(status().isUnprocessableEntity());
+
+        Assertions.assertEquals(0, orderRepository.count());
+    }
+
+    @Test
+    public void should_return_errorMessage_when_creating_order_car_service_unavailable() throws Exception {
+        Mockito.when(carServiceAdapter.getCar(CAR_ID))
+                .thenReturn(Mono.error(new ServiceUnavailableException("CarService is currently unavailable. Please try again later.")));
+
+        perform(post("/reactive/orders")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(orderJson().toString()))
+                .andExpect(status().isFailedDependency());
+    }
+
+    @Test
+    public void should_write_bill_to_outbox_when_patching_running_order() throws Exception {
+        Order order = new Order();
+        order.setCarId(CAR_ID);
+        order.setUserId(USER_ID);
+        order.setStartDate(Instant.now().minus(Duration.ofHours(5)));
+        order = orderRepository.save(order);
+
+        perform(patch("/reactive/orders/" + order.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.endDate").isNotEmpty());
+
+        Assertions.assertEquals(1, billOutboxRepository.countByStatus(BillOutboxEntry.Status.PENDING));
+    }
+
+    @Test
+    public void should_return_conflict_when_patching_finished_order_again() throws Exception {
+        Order order = new Order();
+        order.setCarId(CAR_ID);
+        order.setUserId(USER_ID);
+        order.setStartDate(Instant.now().minus(Duration.ofHours(5)));
+        order = orderRepository.save(order);
+        perform(patch("/reactive/orders/" + order.getId()))
+                .andExpect(status().isOk());
+
+        perform(patch("/reactive/orders/" + order.getId()))
+                .andExpect(status().isConflict());
+
+        Assertions.assertEquals(1, billOutboxRepository.count());
+    }
+
+    @Test
+    public void should_bill_only_once_when_patching_order_concurrently() throws Exception {
+        Order order = new Order();
+        order.setCarId(CAR_ID);
+        order.setUserId(USER_ID);
+        order.setStartDate(Instant.now().minus(Duration.ofHours(5)));
+        order = orderRepository.save(order);
+        // Both requests pass the check before the lookups before either of them is saved
+        Mockito.when(userServiceAdapter.getUser(USER_ID)).thenReturn(Mono.just(createUser()).delayElement(Duration.ofMillis(300)));
+
+        MvcResult first = mockMvc.perform(patch("/reactive/orders/" + order.getId())).andExpect(request().asyncStarted()).andReturn();
+        MvcResult second = mockMvc.perform(patch("/reactive/orders/" + order.getId())).andExpect(request().asyncStarted()).andReturn();
+        first.getAsyncResult(5000);
+        second.getAsyncResult(5000);
+        int firstStatus = mockMvc.perform(asyncDispatch(first)).andReturn().getResponse().getStatus();
+        int secondStatus = mockMvc.perform(asyncDispatch(second)).andReturn().getResponse().getStatus();
+
+        Assertions.assertEquals(Set.of(200, 409), Set.of(firstStatus, secondStatus));
+        Assertions.assertEquals(1, billOutboxRepository.count());
+    }
+
+    @Test
+    public void should_bill_overdue_reservation_when_patching() throws Exception {
+        Order reservation = new Order();
+        reservation.setCarId(CAR_ID);
+        reservation.setUserId(USER_ID);
+        reservation.setStartDate(Instant.now().minus(Duration.ofDays(2)));
+        reservation.setEndDate(Instant.now().minus(Duration.ofDays(1)));
+        reservation = orderRepository.save(reservation);
+
+        perform(patch("/reactive/orders/" + reservation.getId()))
+                .andExpect(status().isOk());
+
+        Assertions.assertEquals(1, billOutboxRepository.count());
+        Assertions.assertTrue(orderRepository.findById(reservation.getId()).orElseThrow()
+                .getEndDate().isAfter(Instant.now().minus(Duration.ofMinutes(1))));
+    }
+
+    @Test
+    public void should_return_conflict_when_patching_canceled_order() throws Exception {
+        Order order = new Order();
+        order.setCarId(CAR_ID);
+        order.setUserId(USER_ID);
+        order.setCanceled(true);
+        order = orderRepository.save(order);
+
+        perform(patch("/reactive/orders/" + order.getId()))
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    public void should_return_errorMessage_when_patching_unknown_order() throws Exception {
+        perform(patch("/reactive/orders/" + 1500))
+                .andExpect(status().isNotFound());
+    }
+
+    /**
+     * Performs a request and waits for the response the endpoint completes asynchronously
+     */
+    private ResultActions perform(RequestBuilder request) throws Exception {
+        MvcResult result = mockMvc.perform(request)
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        result.getAsyncResult(5000);
+        return mockMvc.perform(asyncDispatch(result));
+    }
+
+    private JSONObject orderJson() throws Exception {
+        JSONObject order = new JSONObject();
+        order.put("carId", CAR_ID);
+        order.put("userId", USER_ID);
+        return order;
+    }
+
+    private User createUser() {
+        User user = new User();
+        user.setId(USER_ID);
+        user.setFirstName("Alexander");
+        user.setLastName("Meier");
+        user.setCity("Frankfurt am Main");
+        user.setActive(true);
+        return user;
+    }
+
+    private Car createCar() {
+        Car car = new Car();
+        car.setId(CAR_ID);
+        car.setName("TestCar");
+        car.setCarBaseRentPrice(10.0);
+        return car;
+    }
+}
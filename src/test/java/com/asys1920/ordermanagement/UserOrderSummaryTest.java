@@ -0,0 +1,210 @@
+package com.asys1920.ordermanagement;
+
+import com.asys1920.model.Car;
+import com.asys1920.model.Order;
+import com.asys1920.model.User;
+import com.asys1920.ordermanagement.adapter.AccountingServiceAdapter;
+import com.asys1920.ordermanagement.adapter.CarServiceAdapter;
+import com.asys1920.ordermanagement.adapter.UserServiceAdapter;
+import com.asys1920.ordermanagement.repository.BillOutboxRepository;
+import com.asys1920.ordermanagement.repository.OrderRepository;
+import com.asys1920.ordermanagement.repository.UserOrderSummaryRepository;
+import com.asys1920.ordermanagement.service.AvailabilityIndex;
+import com.asys1920.ordermanagement.service.UserOrderSummaries;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(classes = OrderManagementApplication.class, properties = "bill.outbox.poll-interval=3600000")
+@AutoConfigureMockMvc
+public class UserOrderSummaryTest {
+    private static final long USER = 1;
+    private static final Instant START = Instant.now().plus(Duration.ofDays(1)).truncatedTo(ChronoUnit.HOURS);
+
+    @MockBean
+    private UserServiceAdapter userServiceAdapter;
+
+    @MockBean
+    private CarServiceAdapter carServiceAdapter;
+
+    @MockBean
+    private AccountingServiceAdapter accountingServiceAdapter;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private BillOutboxRepository billOutboxRepository;
+
+    @Autowired
+    private UserOrderSummaryRepository summaryRepository;
+
+    @Autowired
+    private UserOrderSummaries userOrderSummaries;
+
+    @Autowired
+    private AvailabilityIndex availabilityIndex;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        billOutboxRepository.deleteAllInBatch();
+        orderRepository.deleteAllInBatch();
+        summaryRepository.deleteAll();
+        availabilityIndex.rebuild();
+        User user = new User();
+        user.setActive(true);
+        Car car = new Car();
+        car.setCarBaseRentPrice(10);
+        Mockito.when(userServiceAdapter.getUser(Mockito.anyLong())).thenReturn(user);
+        Mockito.when(carServiceAdapter.getCar(Mockito.anyLong())).thenReturn(car);
+    }
+
+    @Test
+    public void should_update_summary_when_ordering_and_finishing() throws Exception {
+        long rental = create(new JSONObject().put("carId", 1).put("userId", USER));
+        long reservation = create(new JSONObject().put("carId", 2).put("userId", USER)
+                .put("startDate", START.toString()).put("endDate", START.plus(Duration.ofHours(3)).toString()));
+
+        mockMvc.perform(get("/orders/byuser/" + USER + "/summary"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.activeOrders").value(1))
+                .andExpect(jsonPath("$.upcomingReservations").value(1))
+                .andExpect(jsonPath("$.lifetimeOrders").value(2))
+                .andExpect(jsonPath("$.lifetimeBilledHours").value(0))
+                .andExpect(jsonPath("$.lastOrderAt").value(START.toString()));
+
+        mockMvc.perform(patch("/orders/" + rental)).andExpect(status().isOk());
+        mockMvc.perform(patch("/orders/" + reservation)).andExpect(status().isOk());
+
+        mockMvc.perform(get("/orders/byuser/" + USER + "/summary"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.activeOrders").value(0))
+                .andExpect(jsonPath("$.upcomingReservations").value(0))
+                .andExpect(jsonPath("$.lifetimeOrders").value(1))
+                .andExpect(jsonPath("$.lifetimeBilledHours").value(1));
+        Assertions.assertEquals(0, userOrderSummaries.verify());
+    }
+
+    @Test
+    public void should_match_orders_after_batches() throws Exception {
+        JSONArray orders = new JSONArray()
+                .put(new JSONObject().put("carId", 1).put("userId", USER))
+                .put(new JSONObject().put("carId", 2).put("userId", 2))
+                .put(new JSONObject().put("carId", 3).put("userId", USER)
+                        .put("startDate", START.toString()).put("endDate", START.plus(Duration.ofHours(3)).toString()));
+        String created = mockMvc.perform(post("/orders/batch").contentType(MediaType.APPLICATION_JSON).content(orders.toString()))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        JSONArray finished = new JSONArray();
+        JSONArray results = new JSONArray(created);
+        for (int i = 0; i < results.length(); i++) {
+            finished.put(results.getJSONObject(i).getJSONObject("order").getLong("id"));
+        }
+
+        mockMvc.perform(patch("/orders/batch").contentType(MediaType.APPLICATION_JSON).content(finished.toString()))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get("/orders/byuser/" + USER + "/summary"))
+                .andExpect(jsonPath("$.lifetimeOrders").value(1))
+                .andExpect(jsonPath("$.lifetimeBilledHours").value(1));
+        Assertions.assertEquals(0, userOrderSummaries.verify());
+    }
+
+    @Test
+    public void should_repair_summary_when_verifying_orders_saved_without_summary() throws Exception {
+        create(new JSONObject().put("carId", 1).put("userId", USER));
+        // Saved like an order saved before the summaries existed
+        Order previous = new Order();
+        previous.setCarId(2L);
+        previous.setUserId(USER);
+        previous.setStartDate(START.minus(Duration.ofDays(30)));
+        previous.setEndDate(START.minus(Duration.ofDays(29)));
+        orderRepository.save(previous);
+
+        Assertions.assertEquals(1, userOrderSummaries.verify());
+
+        mockMvc.perform(get("/orders/byuser/" + USER + "/summary"))
+                .andExpect(jsonPath("$.activeOrders").value(1))
+                .andExpect(jsonPath("$.lifetimeOrders").value(2));
+        Assertions.assertEquals(0, userOrderSummaries.verify());
+    }
+
+    @Test
+    public void should_count_first_orders_of_user_saved_concurrently() throws Exception {
+        CountDownLatch created = new CountDownLatch(1);
+        // The first transaction creates the summary and holds it until it commits
+        CompletableFuture<Void> first = CompletableFuture.runAsync(() -> transactionTemplate.executeWithoutResult(status -> {
+            userOrderSummaries.booked(List.of(order(1L, START)));
+            created.countDown();
+            try {
+                Thread.sleep(300);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        Assertions.assertTrue(created.await(10, TimeUnit.SECONDS));
+
+        transactionTemplate.executeWithoutResult(status -> userOrderSummaries.booked(List.of(order(2L, START.plus(Duration.ofDays(1))))));
+        first.get(10, TimeUnit.SECONDS);
+
+        mockMvc.perform(get("/orders/byuser/" + USER + "/summary"))
+                .andExpect(jsonPath("$.lifetimeOrders").value(2))
+                .andExpect(jsonPath("$.lastOrderAt").value(START.plus(Duration.ofDays(1)).toString()));
+    }
+
+    @Test
+    public void should_return_empty_summary_for_user_without_orders() throws Exception {
+        mockMvc.perform(get("/orders/byuser/" + 150 + "/summary"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.userId").value(150))
+                .andExpect(jsonPath("$.lifetimeOrders").value(0))
+                .andExpect(jsonPath("$.lastOrderAt").isEmpty());
+    }
+
+    private static Order order(Long carId, Instant start) {
+        Order order = new Order();
+        order.setCarId(carId);
+        order.setUserId(USER);
+        order.setStartDate(start);
+        order.setEndDate(start.plus(Duration.ofHours(3)));
+        return order;
+    }
+
+    /**
+     * @return the id of the created order
+     */
+    private long create(JSONObject order) throws Exception {
+        String created = mockMvc.perform(post("/orders").contentType(MediaType.APPLICATION_JSON).content(order.toString()))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        return new JSONObject(created).getLong("id");
+    }
+}
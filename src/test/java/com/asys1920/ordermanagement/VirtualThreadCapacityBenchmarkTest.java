@@ -0,0 +1,110 @@
+package com.asys1920.ordermanagement;
+
+import com.asys1920.ordermanagement.config.VirtualThreads;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares how many requests the blocking order endpoints serve at the same time with platform and with virtual
+ * threads while the car and user service answer slowly. Every mode runs in its own server against stub services that
+ * delay every answer. The virtual thread mode is only measured on Java 21 or later.
+ * Run with {@code mvn test -Pbenchmark}.
+ */
+@Tag("benchmark")
+public class VirtualThreadCapacityBenchmarkTest {
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualThreadCapacityBenchmarkTest.class);
+    private static final int LATENCY_MILLIS = 500;
+    private static final int CONCURRENT_REQUESTS = 1000;
+    private static final int WARMUP_REQUESTS = 100;
+    private static final DownstreamStub DOWNSTREAM = new DownstreamStub(LATENCY_MILLIS);
+    // Every order uses another car and user, so the caches of the adapters never answer in place of the stubs
+    private static final AtomicLong NEXT_ID = new AtomicLong();
+
+    @AfterAll
+    public static void stopDownstream() {
+        DOWNSTREAM.stop();
+    }
+
+    @Test
+    public void should_serve_more_concurrent_orders_on_virtual_threads_when_downstreams_are_slow() throws Exception {
+        double platform = measure(false);
+        LOG.info(String.format("Platform threads served %.0f concurrent orders with %d ms downstream latency", platform, LATENCY_MILLIS));
+        Assumptions.assumeTrue(VirtualThreads.isSupported(), "Virtual threads need Java 21 or later");
+
+        double virtual = measure(true);
+        LOG.info(String.format("Virtual threads served %.0f concurrent orders with %d ms downstream latency", virtual, LATENCY_MILLIS));
+
+        // The platform threads are capped by the lookup pool and the request threads of Tomcat
+        Assertions.assertTrue(virtual > 2 * platform,
+                String.format("Virtual threads served %.0f, platform threads %.0f concurrent orders", virtual, platform));
+    }
+
+    /**
+     * Starts a server and sends a burst of concurrent orders
+     * @param virtualThreads if the server runs on virtual threads
+     * @return the average number of orders served at the same time, i.e. the created orders per downstream latency
+     */
+    private double measure(boolean virtualThreads) throws Exception {
+        // Command line arguments, unlike default properties, take precedence over the application properties
+        try (ServletWebServerApplicationContext context = (ServletWebServerApplicationContext) new SpringApplicationBuilder(OrderManagementApplication.class)
+                .run("--server.port=0",
+                        "--spring.datasource.url=jdbc:h2:mem:capacity-" + virtualThreads,
+                        "--bill.outbox.poll-interval=3600000",
+                        "--order.virtual-threads.enabled=" + virtualThreads,
+                        "--order.request.deadline=60s",
+                        "--car.url=" + DOWNSTREAM.url("cars"),
+                        "--user.url=" + DOWNSTREAM.url("users"),
+                        "--http.client.max-connections=" + 2 * CONCURRENT_REQUESTS,
+                        "--http.client.max-connections-per-route=" + 2 * CONCURRENT_REQUESTS,
+                        "--http.client.pool-acquire-timeout=60s",
+                        "--http.client.read-timeout=60s",
+                        "--resilience4j.bulkhead.configs.default.max-concurrent-calls=" + 2 * CONCURRENT_REQUESTS,
+                        "--resilience4j.circuitbreaker.configs.default.slow-call-duration-threshold=60s")) {
+            URI orders = URI.create("http://localhost:" + context.getWebServer().getPort() + "/orders");
+            HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+            burst(client, orders, WARMUP_REQUESTS);
+            long start = System.nanoTime();
+            burst(client, orders, CONCURRENT_REQUESTS);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            return CONCURRENT_REQUESTS / seconds * LATENCY_MILLIS / 1000;
+        }
+    }
+
+    /**
+     * Sends all orders at once and waits until every order was created
+     */
+    private void burst(HttpClient client, URI orders, int requests) {
+        AtomicInteger failed = new AtomicInteger();
+        CompletableFuture<?>[] responses = new CompletableFuture<?>[requests];
+        for (int i = 0; i < requests; i++) {
+            long id = NEXT_ID.incrementAndGet();
+            HttpRequest request = HttpRequest.newBuilder(orders)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(String.format("{\"carId\":%d,\"userId\":%d}", id, id)))
+                    .build();
+            responses[i] = client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, ex) -> {
+                        if (ex != null || response.statusCode() != 201) {
+                            failed.incrementAndGet();
+                        }
+                    });
+        }
+        CompletableFuture.allOf(responses).exceptionally(ex -> null).join();
+        Assertions.assertEquals(0, failed.get(), String.format("%d of %d orders failed", failed.get(), requests));
+    }
+}
@@ -0,0 +1,245 @@
+package com.asys1920.ordermanagement.adapter;
+
+import com.asys1920.model.Bill;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.client.ExpectedCount;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.test.web.client.ResponseCreator;
+import org.springframework.web.client.RestTemplate;
+
+import javax.naming.ServiceUnavailableException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.header;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withServerError;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+public class AccountingServiceAdapterTest {
+    private static final String BILL_URL = "http://localhost:8085/";
+    private static final String BILL_BULK_URL = "http://localhost:8085/bulk";
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private AccountingServiceAdapter accountingServiceAdapter;
+    private MockRestServiceServer accountingService;
+
+    private void setUp(boolean batchEnabled, Duration window, int maxSize) {
+        accountingServiceAdapter = new AccountingServiceAdapter(new RestTemplate(), CircuitBreakerRegistry.ofDefaults(),
+                BulkheadRegistry.ofDefaults(), new SimpleMeterRegistry(), batchEnabled, window, maxSize, 2);
+        ReflectionTestUtils.setField(accountingServiceAdapter, "accountingServiceUrl", BILL_URL);
+        ReflectionTestUtils.setField(accountingServiceAdapter, "accountingServiceBulkUrl", BILL_BULK_URL);
+        accountingService = MockRestServiceServer.bindTo(accountingServiceAdapter.restTemplate).build();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        accountingServiceAdapter.shutdown();
+    }
+
+    @Test
+    public void should_post_single_bill_when_batching_is_disabled() throws Exception {
+        setUp(false, Duration.ofMillis(50), 10);
+        accountingService.expect(ExpectedCount.once(), requestTo(BILL_URL))
+                .andExpect(method(HttpMethod.POST))
+                .andExpect(header(AccountingServiceAdapter.IDEMPOTENCY_KEY, "order-1"))
+                .andRespond(withSuccess("{\"id\":7,\"userId\":1}", MediaType.APPLICATION_JSON));
+
+        Bill bill = accountingServiceAdapter.saveBill(getBill(1L), "order-1");
+
+        accountingService.verify();
+        Assertions.assertEquals(7L, bill.getId());
+        Assertions.assertNull(ReflectionTestUtils.getField(accountingServiceAdapter, "batchScheduler"),
+                "No batch thread is started while batching is disabled");
+    }
+
+    @Test
+    public void should_submit_concurrent_bills_in_one_bulk_request() throws Exception {
+        setUp(true, Duration.ofMillis(500), 5);
+        accountingService.expect(ExpectedCount.once(), requestTo(BILL_BULK_URL))
+                .andExpect(method(HttpMethod.POST))
+                .andRespond(assignIds());
+
+        List<Bill> bills = saveConcurrently(5);
+
+        accountingService.verify();
+        for (Bill bill : bills) {
+            Assertions.assertEquals(bill.getUserId() + 100, bill.getId());
+        }
+    }
+
+    @Test
+    public void should_submit_partial_batch_when_window_passed() throws Exception {
+        setUp(true, Duration.ofMillis(50), 10);
+        accountingService.expect(ExpectedCount.once(), requestTo(BILL_BULK_URL))
+                .andRespond(assignIds());
+
+        long start = System.nanoTime();
+        Bill bill = accountingServiceAdapter.saveBill(getBill(3L), "order-3");
+        Duration waited = Duration.ofNanos(System.nanoTime() - start);
+
+        accountingService.verify();
+        Assertions.assertEquals(103L, bill.getId());
+        Assertions.assertTrue(waited.compareTo(Duration.ofSeconds(1)) < 0);
+    }
+
+    @Test
+    public void should_collect_submitted_bills_of_one_caller_within_window() throws Exception {
+        setUp(true, Duration.ofMillis(100), 10);
+        accountingService.expect(ExpectedCount.once(), requestTo(BILL_BULK_URL))
+                .andExpect(header(AccountingServiceAdapter.IDEMPOTENCY_KEY, "order-1", "order-2", "order-3"))
+                .andRespond(assignIds());
+
+        // Like the outbox dispatcher, which submits its due bills before waiting for any of them
+        List<CompletableFuture<Bill>> bills = new ArrayList<>();
+        for (long userId = 1; userId <= 3; userId++) {
+            bills.add(accountingServiceAdapter.submitBill(getBill(userId), "order-" + userId));
+        }
+
+        for (int i = 0; i < bills.size(); i++) {
+            Assertions.assertEquals(101L + i, bills.get(i).get(1, TimeUnit.SECONDS).getId());
+        }
+        accountingService.verify();
+    }
+
+    @Test
+    public void should_not_submit_next_batch_early_when_size_limit_took_previous_batch() throws Exception {
+        Duration window = Duration.ofMillis(400);
+        setUp(true, window, 2);
+        accountingService.expect(ExpectedCount.twice(), requestTo(BILL_BULK_URL))
+                .andRespond(assignIds());
+
+        long start = System.nanoTime();
+        accountingServiceAdapter.submitBill(getBill(1L), "order-1");
+        accountingServiceAdapter.submitBill(getBill(2L), "order-2").get(1, TimeUnit.SECONDS);
+        Thread.sleep(window.toMillis() / 2);
+        // The window of the first batch passes while this bill waits, it must wait for its own window
+        long submitted = System.nanoTime();
+        Bill bill = accountingServiceAdapter.submitBill(getBill(3L), "order-3").get(2, TimeUnit.SECONDS);
+        Duration waited = Duration.ofNanos(System.nanoTime() - submitted);
+
+        accountingService.verify();
+        Assertions.assertEquals(103L, bill.getId());
+        Assertions.assertTrue(waited.compareTo(window.multipliedBy(9).dividedBy(10)) >= 0,
+                "Submitted after " + waited + " instead of the window " + window + ", " + Duration.ofNanos(submitted - start) + " after the first batch");
+    }
+
+    @Test
+    public void should_send_next_batch_while_previous_bulk_request_is_pending() throws Exception {
+        setUp(true, Duration.ofMillis(50), 10);
+        CountDownLatch firstSent = new CountDownLatch(1);
+        CountDownLatch firstReleased = new CountDownLatch(1);
+        accountingService.expect(ExpectedCount.twice(), requestTo(BILL_BULK_URL))
+                .andRespond(request -> {
+                    if (((MockClientHttpRequest) request).getBodyAsString().contains("\"userId\":1,")) {
+                        firstSent.countDown();
+                        try {
+                            firstReleased.await(5, TimeUnit.SECONDS);
+                        } catch (InterruptedException ex) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    return assignIds().createResponse(request);
+                });
+
+        CompletableFuture<Bill> first = accountingServiceAdapter.submitBill(getBill(1L), "order-1");
+        Assertions.assertTrue(firstSent.await(1, TimeUnit.SECONDS));
+        // The window of this batch passes while the bulk request of the first batch is still pending
+        Bill second = accountingServiceAdapter.submitBill(getBill(2L), "order-2").get(1, TimeUnit.SECONDS);
+        firstReleased.countDown();
+
+        Assertions.assertEquals(102L, second.getId());
+        Assertions.assertEquals(101L, first.get(1, TimeUnit.SECONDS).getId());
+        accountingService.verify();
+    }
+
+    @Test
+    public void should_fail_every_caller_of_batch_when_bulk_request_fails() throws Exception {
+        setUp(true, Duration.ofMillis(500), 3);
+        accountingService.expect(ExpectedCount.once(), requestTo(BILL_BULK_URL))
+                .andRespond(withServerError());
+
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        List<CompletableFuture<Void>> calls = new ArrayList<>();
+        for (long userId = 1; userId <= 3; userId++) {
+            Bill bill = getBill(userId);
+            calls.add(CompletableFuture.runAsync(() -> {
+                try {
+                    start.await();
+                    Assertions.assertThrows(ServiceUnavailableException.class, () -> accountingServiceAdapter.saveBill(bill, "order-" + bill.getUserId()));
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }, executor));
+        }
+        start.countDown();
+        CompletableFuture.allOf(calls.toArray(new CompletableFuture[0])).join();
+        executor.shutdown();
+
+        accountingService.verify();
+    }
+
+    private List<Bill> saveConcurrently(int count) {
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(count);
+        List<CompletableFuture<Bill>> calls = new ArrayList<>();
+        for (long userId = 1; userId <= count; userId++) {
+            Bill bill = getBill(userId);
+            calls.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    start.await();
+                    return accountingServiceAdapter.saveBill(bill, "order-" + bill.getUserId());
+                } catch (Exception ex) {
+                    throw new IllegalStateException(ex);
+                }
+            }, executor));
+        }
+        start.countDown();
+        List<Bill> bills = new ArrayList<>();
+        for (CompletableFuture<Bill> call : calls) {
+            bills.add(call.join());
+        }
+        executor.shutdown();
+        return bills;
+    }
+
+    /**
+     * Stub of the bulk endpoint of the accounting service, assigns every bill the id of its user plus 100
+     */
+    private static ResponseCreator assignIds() {
+        return request -> {
+            JsonNode bills = OBJECT_MAPPER.readTree(((MockClientHttpRequest) request).getBodyAsString());
+            for (JsonNode bill : bills) {
+                ((ObjectNode) bill).put("id", bill.get("userId").asLong() + 100);
+            }
+            return withSuccess(OBJECT_MAPPER.writeValueAsString(bills), MediaType.APPLICATION_JSON).createResponse(request);
+        };
+    }
+
+    private static Bill getBill(Long userId) {
+        Bill bill = new Bill();
+        bill.setUserId(userId);
+        bill.setValue(10);
+        return bill;
+    }
+}
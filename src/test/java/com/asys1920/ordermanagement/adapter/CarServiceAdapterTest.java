@@ -0,0 +1,147 @@
+package com.asys1920.ordermanagement.adapter;
+
+import com.asys1920.model.Car;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.client.ExpectedCount;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
+
+import javax.naming.ServiceUnavailableException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+public class CarServiceAdapterTest {
+    private static final String CAR_URL = "http://localhost:8083/";
+    private static final String CAR_JSON = "{\"id\":1,\"name\":\"TestCar\",\"carBaseRentPrice\":10.0,\"eol\":false}";
+
+    private CarServiceAdapter carServiceAdapter;
+    private MockRestServiceServer carService;
+
+    private CircuitBreakerRegistry circuitBreakerRegistry;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    public void setUp() {
+        circuitBreakerRegistry = CircuitBreakerRegistry.ofDefaults();
+        meterRegistry = new SimpleMeterRegistry();
+        carServiceAdapter = new CarServiceAdapter(new RestTemplate(), 100, Duration.ofMinutes(10), meterRegistry, circuitBreakerRegistry, BulkheadRegistry.ofDefaults(),
+                new RequestHedging(false, 0.95, Duration.ofMillis(20), 4, new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(carServiceAdapter, "carServiceUrl", CAR_URL);
+        carService = MockRestServiceServer.bindTo(carServiceAdapter.restTemplate).build();
+    }
+
+    @Test
+    public void should_fetch_car_once_when_requesting_cached_car() throws Exception {
+        carService.expect(ExpectedCount.once(), requestTo(CAR_URL + 1))
+                .andRespond(withSuccess(CAR_JSON, MediaType.APPLICATION_JSON));
+
+        Car first = carServiceAdapter.getCar(1L);
+        Car second = carServiceAdapter.getCar(1L);
+
+        carService.verify();
+        Assertions.assertSame(first, second);
+        Assertions.assertEquals(1, carServiceAdapter.getCacheStats().hitCount());
+        Assertions.assertEquals(1, carServiceAdapter.getCacheStats().missCount());
+    }
+
+    @Test
+    public void should_fetch_car_again_when_car_was_evicted() throws Exception {
+        carService.expect(ExpectedCount.twice(), requestTo(CAR_URL + 1))
+                .andRespond(withSuccess(CAR_JSON, MediaType.APPLICATION_JSON));
+
+        carServiceAdapter.getCar(1L);
+        carServiceAdapter.evictCar(1L);
+        carServiceAdapter.getCar(1L);
+
+        carService.verify();
+    }
+
+    @Test
+    public void should_fetch_car_once_when_requesting_uncached_car_concurrently() throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        carService.expect(ExpectedCount.once(), requestTo(CAR_URL + 1))
+                .andRespond(request -> {
+                    try {
+                        Thread.sleep(200);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return withSuccess(CAR_JSON, MediaType.APPLICATION_JSON).createResponse(request);
+                });
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<CompletableFuture<Car>> cars = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            cars.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    start.await();
+                    return carServiceAdapter.getCar(1L);
+                } catch (Exception ex) {
+                    throw new IllegalStateException(ex);
+                }
+            }, executor));
+        }
+        start.countDown();
+        for (CompletableFuture<Car> car : cars) {
+            Assertions.assertEquals(1L, car.join().getId());
+        }
+        executor.shutdown();
+
+        carService.verify();
+    }
+
+    @Test
+    public void should_fetch_car_again_when_previous_fetch_threw_error() {
+        carService.expect(ExpectedCount.once(), requestTo(CAR_URL + 1))
+                .andRespond(request -> {
+                    throw new StackOverflowError();
+                });
+        carService.expect(ExpectedCount.once(), requestTo(CAR_URL + 1))
+                .andRespond(withSuccess(CAR_JSON, MediaType.APPLICATION_JSON));
+
+        Assertions.assertThrows(StackOverflowError.class, () -> carServiceAdapter.getCar(1L));
+        Car car = Assertions.assertTimeoutPreemptively(Duration.ofSeconds(5), () -> carServiceAdapter.getCar(1L));
+
+        carService.verify();
+        Assertions.assertEquals(1L, car.getId());
+    }
+
+    @Test
+    public void should_record_calls_to_car_service_by_outcome() throws Exception {
+        carService.expect(ExpectedCount.once(), requestTo(CAR_URL + 1))
+                .andRespond(withSuccess(CAR_JSON, MediaType.APPLICATION_JSON));
+
+        carServiceAdapter.getCar(1L);
+        carServiceAdapter.getCar(1L);
+        circuitBreakerRegistry.circuitBreaker("car").transitionToOpenState();
+        Assertions.assertThrows(ServiceUnavailableException.class, () -> carServiceAdapter.getCar(2L));
+
+        // The cached car is not a call to the car service
+        Assertions.assertEquals(1, meterRegistry.get(DownstreamTimer.METRIC).tag("downstream", "car").tag("outcome", "success").timer().count());
+        Assertions.assertEquals(1, meterRegistry.get(DownstreamTimer.METRIC).tag("downstream", "car").tag("outcome", "rejected").timer().count());
+    }
+
+    @Test
+    public void should_fail_without_request_when_circuit_breaker_is_open() {
+        circuitBreakerRegistry.circuitBreaker("car").transitionToOpenState();
+
+        Assertions.assertThrows(ServiceUnavailableException.class, () -> carServiceAdapter.getCar(1L));
+
+        carService.verify();
+    }
+}
@@ -0,0 +1,71 @@
+package com.asys1920.ordermanagement.adapter;
+
+import com.asys1920.model.Car;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import javax.naming.ServiceUnavailableException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ReactiveCarServiceAdapterTest {
+    private static final String CAR_URL = "http://localhost:8083/";
+    private static final String CAR_JSON = "{\"id\":1,\"name\":\"TestCar\",\"carBaseRentPrice\":10.0,\"eol\":false}";
+
+    private final AtomicInteger calls = new AtomicInteger();
+    private HttpStatus status;
+    private CarServiceAdapter carServiceAdapter;
+    private ReactiveCarServiceAdapter reactiveCarServiceAdapter;
+
+    @BeforeEach
+    public void setUp() {
+        status = HttpStatus.OK;
+        CircuitBreakerRegistry circuitBreakerRegistry = CircuitBreakerRegistry.ofDefaults();
+        BulkheadRegistry bulkheadRegistry = BulkheadRegistry.ofDefaults();
+        carServiceAdapter = new CarServiceAdapter(new RestTemplate(), 100, Duration.ofMinutes(10), new SimpleMeterRegistry(), circuitBreakerRegistry, bulkheadRegistry,
+                new RequestHedging(false, 0.95, Duration.ofMillis(20), 4, new SimpleMeterRegistry()));
+        WebClient webClient = WebClient.builder()
+                .exchangeFunction(request -> {
+                    calls.incrementAndGet();
+                    return Mono.just(ClientResponse.create(status)
+                            .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                            .body(CAR_JSON)
+                            .build());
+                })
+                .build();
+        reactiveCarServiceAdapter = new ReactiveCarServiceAdapter(webClient, carServiceAdapter, circuitBreakerRegistry, bulkheadRegistry);
+        ReflectionTestUtils.setField(reactiveCarServiceAdapter, "carServiceUrl", CAR_URL);
+    }
+
+    @Test
+    public void should_share_cache_with_blocking_adapter_when_fetching_car() throws Exception {
+        Car first = reactiveCarServiceAdapter.getCar(1L).block();
+        Car second = reactiveCarServiceAdapter.getCar(1L).block();
+
+        Assertions.assertEquals(1, calls.get());
+        Assertions.assertSame(first, second);
+        Assertions.assertSame(first, carServiceAdapter.getCar(1L));
+    }
+
+    @Test
+    public void should_fail_with_service_unavailable_when_car_service_fails() {
+        status = HttpStatus.INTERNAL_SERVER_ERROR;
+
+        Exception exception = Assertions.assertThrows(Exception.class, () -> reactiveCarServiceAdapter.getCar(1L).block());
+
+        Assertions.assertTrue(exception.getCause() instanceof ServiceUnavailableException);
+        Assertions.assertEquals(0, carServiceAdapter.getCacheSize());
+    }
+}
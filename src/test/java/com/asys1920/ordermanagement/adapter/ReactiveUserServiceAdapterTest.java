@@ -0,0 +1,78 @@
+package com.asys1920.ordermanagement.adapter;
+
+import com.asys1920.model.User;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import javax.naming.ServiceUnavailableException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ReactiveUserServiceAdapterTest {
+    private static final String USER_URL = "http://localhost:8084/";
+    private static final String USER_JSON = "{\"id\":1,\"firstName\":\"Alexander\",\"active\":true,\"banned\":false}";
+
+    private final AtomicInteger calls = new AtomicInteger();
+    private HttpStatus status;
+    private CircuitBreakerRegistry circuitBreakerRegistry;
+    private UserServiceAdapter userServiceAdapter;
+    private ReactiveUserServiceAdapter reactiveUserServiceAdapter;
+
+    @BeforeEach
+    public void setUp() {
+        status = HttpStatus.OK;
+        circuitBreakerRegistry = CircuitBreakerRegistry.ofDefaults();
+        BulkheadRegistry bulkheadRegistry = BulkheadRegistry.ofDefaults();
+        userServiceAdapter = new UserServiceAdapter(new RestTemplate(), 100,
+                Duration.ofMinutes(1), Duration.ofMinutes(1), new SimpleMeterRegistry(), circuitBreakerRegistry, bulkheadRegistry,
+                new RequestHedging(false, 0.95, Duration.ofMillis(20), 4, new SimpleMeterRegistry()));
+        WebClient webClient = WebClient.builder()
+                .exchangeFunction(request -> {
+                    calls.incrementAndGet();
+                    return Mono.just(ClientResponse.create(status)
+                            .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                            .body(status == HttpStatus.OK ? USER_JSON : "{}")
+                            .build());
+                })
+                .build();
+        reactiveUserServiceAdapter = new ReactiveUserServiceAdapter(webClient, userServiceAdapter, circuitBreakerRegistry, bulkheadRegistry);
+        ReflectionTestUtils.setField(reactiveUserServiceAdapter, "userServiceUrl", USER_URL);
+    }
+
+    @Test
+    public void should_share_cache_with_blocking_adapter_when_fetching_user() throws Exception {
+        User first = reactiveUserServiceAdapter.getUser(1L).block();
+        User second = reactiveUserServiceAdapter.getUser(1L).block();
+
+        Assertions.assertEquals(1, calls.get());
+        Assertions.assertSame(first, second);
+        Assertions.assertSame(first, userServiceAdapter.getUser(1L));
+    }
+
+    @Test
+    public void should_cache_unknown_user_without_recording_failure() {
+        status = HttpStatus.NOT_FOUND;
+
+        for (int i = 0; i < 3; i++) {
+            Exception exception = Assertions.assertThrows(Exception.class, () -> reactiveUserServiceAdapter.getUser(1L).block());
+            Assertions.assertTrue(exception.getCause() instanceof ServiceUnavailableException);
+        }
+
+        Assertions.assertEquals(1, calls.get());
+        CircuitBreaker circuitBreaker = circuitBreakerRegistry.circuitBreaker("user");
+        Assertions.assertEquals(0, circuitBreaker.getMetrics().getNumberOfFailedCalls());
+    }
+}
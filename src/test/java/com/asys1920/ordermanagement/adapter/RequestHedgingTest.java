@@ -0,0 +1,122 @@
+package com.asys1920.ordermanagement.adapter;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RequestHedgingTest {
+    private MeterRegistry meterRegistry;
+    private RequestHedging requestHedging;
+
+    @BeforeEach
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        requestHedging = new RequestHedging(true, 0.95, Duration.ofMillis(50), 4, meterRegistry);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        requestHedging.shutdown();
+    }
+
+    @Test
+    public void should_return_hedge_when_first_read_is_slow() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        long start = System.nanoTime();
+        String result = requestHedging.read("car", () -> {
+            if (attempts.incrementAndGet() == 1) {
+                sleep(2000);
+                return "slow";
+            }
+            return "fast";
+        });
+
+        Assertions.assertEquals("fast", result);
+        Assertions.assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() < 1000);
+        Assertions.assertEquals(1, meterRegistry.counter("http.client.hedging.hedges", "downstream", "car").count());
+        Assertions.assertEquals(1, meterRegistry.counter("http.client.hedging.wins", "downstream", "car").count());
+    }
+
+    @Test
+    public void should_not_hedge_when_read_is_fast() {
+        String result = requestHedging.read("car", () -> "fast");
+
+        Assertions.assertEquals("fast", result);
+        Assertions.assertEquals(1, meterRegistry.counter("http.client.hedging.requests", "downstream", "car").count());
+        Assertions.assertEquals(0, meterRegistry.counter("http.client.hedging.hedges", "downstream", "car").count());
+    }
+
+    @Test
+    public void should_fail_when_all_reads_fail() {
+        Assertions.assertThrows(IllegalStateException.class, () -> requestHedging.read("car", () -> {
+            sleep(100);
+            throw new IllegalStateException("CarService failed");
+        }));
+    }
+
+    @Test
+    public void should_not_read_when_deadline_expired() {
+        Deadline deadline = Deadline.after(Duration.ZERO);
+
+        Assertions.assertThrows(DeadlineExceededException.class,
+                () -> deadline.run(() -> requestHedging.read("car", () -> "fast")));
+    }
+
+    @Test
+    public void should_fail_when_read_throws_error() {
+        Assertions.assertThrows(StackOverflowError.class, () -> Assertions.assertTimeoutPreemptively(Duration.ofSeconds(5),
+                () -> requestHedging.read("car", () -> {
+                    throw new StackOverflowError();
+                })));
+    }
+
+    @Test
+    public void should_stop_waiting_for_reads_when_deadline_expires() {
+        Deadline deadline = Deadline.after(Duration.ofMillis(300));
+
+        long start = System.nanoTime();
+        Assertions.assertThrows(DeadlineExceededException.class, () -> deadline.run(() -> requestHedging.read("car", () -> {
+            sleep(3000);
+            return "slow";
+        })));
+
+        Assertions.assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() < 1500);
+    }
+
+    @Test
+    public void should_remove_hedge_timer_when_read_completes() {
+        RequestHedging slowHedging = new RequestHedging(true, 0.95, Duration.ofMinutes(1), 4, meterRegistry);
+        ScheduledThreadPoolExecutor scheduler = (ScheduledThreadPoolExecutor) ReflectionTestUtils.getField(slowHedging, "scheduler");
+        try {
+            for (int i = 0; i < 10; i++) {
+                slowHedging.read("car", () -> "fast");
+            }
+            // The timer is canceled by the thread that completed the read, shortly after the caller got the result
+            long deadline = System.nanoTime() + Duration.ofSeconds(1).toNanos();
+            while (!scheduler.getQueue().isEmpty() && System.nanoTime() < deadline) {
+                sleep(10);
+            }
+
+            Assertions.assertEquals(0, scheduler.getQueue().size());
+        } finally {
+            slowHedging.shutdown();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
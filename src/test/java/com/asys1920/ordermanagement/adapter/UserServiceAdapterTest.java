@@ -0,0 +1,125 @@
+package com.asys1920.ordermanagement.adapter;
+
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.client.ExpectedCount;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import javax.naming.ServiceUnavailableException;
+import java.time.Duration;
+
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+public class UserServiceAdapterTest {
+    private static final String USER_URL = "http://localhost:8084/";
+    private static final String USER_JSON = "{\"id\":1,\"firstName\":\"Alexander\",\"active\":true,\"banned\":false}";
+
+    private UserServiceAdapter userServiceAdapter;
+    private MockRestServiceServer userService;
+
+    private CircuitBreakerRegistry circuitBreakerRegistry;
+
+    @BeforeEach
+    public void setUp() {
+        circuitBreakerRegistry = CircuitBreakerRegistry.of(CircuitBreakerConfig.custom()
+                .minimumNumberOfCalls(10)
+                .ignoreExceptions(HttpClientErrorException.class)
+                .build());
+        userServiceAdapter = new UserServiceAdapter(new RestTemplate(), 100,
+                Duration.ofMinutes(1), Duration.ofMinutes(1), new SimpleMeterRegistry(), circuitBreakerRegistry, BulkheadRegistry.ofDefaults(),
+                new RequestHedging(false, 0.95, Duration.ofMillis(20), 4, new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(userServiceAdapter, "userServiceUrl", USER_URL);
+        userService = MockRestServiceServer.bindTo(userServiceAdapter.restTemplate).build();
+    }
+
+    @Test
+    public void should_fetch_user_again_when_user_was_evicted() throws Exception {
+        userService.expect(ExpectedCount.twice(), requestTo(USER_URL + 1))
+                .andRespond(withSuccess(USER_JSON, MediaType.APPLICATION_JSON));
+
+        userServiceAdapter.getUser(1L);
+        userServiceAdapter.getUser(1L);
+        userServiceAdapter.evictUser(1L);
+        userServiceAdapter.getUser(1L);
+
+        userService.verify();
+    }
+
+    @Test
+    public void should_fetch_unknown_user_once_when_requesting_it_again() {
+        userService.expect(ExpectedCount.once(), requestTo(USER_URL + 2))
+                .andRespond(withStatus(HttpStatus.NOT_FOUND));
+
+        Assertions.assertThrows(ServiceUnavailableException.class, () -> userServiceAdapter.getUser(2L));
+        Assertions.assertThrows(ServiceUnavailableException.class, () -> userServiceAdapter.getUser(2L));
+
+        userService.verify();
+    }
+
+    @Test
+    public void should_open_circuit_breaker_when_user_service_fails() {
+        userService.expect(ExpectedCount.times(10), requestTo(Matchers.startsWith(USER_URL)))
+                .andRespond(withStatus(HttpStatus.INTERNAL_SERVER_ERROR));
+
+        for (long userId = 10; userId < 30; userId++) {
+            long failingUser = userId;
+            Assertions.assertThrows(ServiceUnavailableException.class, () -> userServiceAdapter.getUser(failingUser));
+        }
+
+        userService.verify();
+        Assertions.assertEquals(CircuitBreaker.State.OPEN, circuitBreakerRegistry.circuitBreaker("user").getState());
+    }
+
+    @Test
+    public void should_not_cache_user_when_user_service_fails() {
+        userService.expect(ExpectedCount.twice(), requestTo(USER_URL + 3))
+                .andRespond(withStatus(HttpStatus.INTERNAL_SERVER_ERROR));
+
+        Assertions.assertThrows(ServiceUnavailableException.class, () -> userServiceAdapter.getUser(3L));
+        Assertions.assertThrows(ServiceUnavailableException.class, () -> userServiceAdapter.getUser(3L));
+
+        userService.verify();
+    }
+
+    @Test
+    public void should_fetch_user_again_when_previous_fetch_threw_error() throws Exception {
+        userService.expect(ExpectedCount.once(), requestTo(USER_URL + 4))
+                .andRespond(request -> {
+                    throw new StackOverflowError();
+                });
+        userService.expect(ExpectedCount.once(), requestTo(USER_URL + 4))
+                .andRespond(withSuccess(USER_JSON, MediaType.APPLICATION_JSON));
+
+        Assertions.assertThrows(StackOverflowError.class, () -> userServiceAdapter.getUser(4L));
+        Assertions.assertTimeoutPreemptively(Duration.ofSeconds(5), () -> userServiceAdapter.getUser(4L));
+
+        userService.verify();
+    }
+
+    @Test
+    public void should_not_open_circuit_breaker_when_users_are_unknown() {
+        userService.expect(ExpectedCount.manyTimes(), requestTo(Matchers.startsWith(USER_URL)))
+                .andRespond(withStatus(HttpStatus.NOT_FOUND));
+
+        for (long userId = 10; userId < 40; userId++) {
+            long unknownUser = userId;
+            Assertions.assertThrows(ServiceUnavailableException.class, () -> userServiceAdapter.getUser(unknownUser));
+        }
+
+        Assertions.assertEquals(CircuitBreaker.State.CLOSED, circuitBreakerRegistry.circuitBreaker("user").getState());
+    }
+}
@@ -0,0 +1,104 @@
+package com.asys1920.ordermanagement.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+
+public class HttpClientConfigTest {
+    private static final Duration READ_TIMEOUT = Duration.ofMillis(200);
+
+    private DisposableServer stub;
+    private SimpleMeterRegistry meterRegistry;
+    private HttpClientConfig config;
+
+    @BeforeEach
+    public void setUp() {
+        // Answers /fast at once and /slow after a delay longer than the read timeout
+        stub = HttpServer.create()
+                .host("localhost")
+                .port(0)
+                .route(routes -> routes
+                        .get("/fast", (request, response) -> response.sendString(Mono.just("ok")))
+                        .get("/slow", (request, response) -> Mono.delay(READ_TIMEOUT.multipliedBy(5))
+                                .then(response.sendString(Mono.just("late")).then())))
+                .bindNow();
+        meterRegistry = new SimpleMeterRegistry();
+        config = new HttpClientConfig(new HttpClientProperties(), meterRegistry);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        stub.disposeNow();
+    }
+
+    @Test
+    public void should_register_pool_gauges_for_every_downstream() {
+        config.carHttpClient();
+        config.userHttpClient();
+        config.accountingHttpClient();
+
+        for (String downstream : new String[]{"car", "user", "accounting"}) {
+            for (String state : new String[]{"leased", "pending", "available", "max"}) {
+                Assertions.assertNotNull(poolGauge(downstream, state), downstream + " has no " + state + " gauge");
+            }
+            Assertions.assertEquals(50, poolGauge(downstream, "max").value());
+        }
+    }
+
+    @Test
+    public void should_keep_connections_of_each_downstream_in_its_own_pool() {
+        CloseableHttpClient carHttpClient = config.carHttpClient();
+        CloseableHttpClient userHttpClient = config.userHttpClient();
+        RestTemplate carRestTemplate = config.carRestTemplate(new RestTemplateBuilder(), carHttpClient);
+
+        Assertions.assertNotSame(carHttpClient, userHttpClient);
+        Assertions.assertEquals("ok", carRestTemplate.getForObject(url("fast"), String.class));
+        // The kept alive connection is back in the pool of the car service only
+        Assertions.assertEquals(0, poolGauge("car", "leased").value());
+        Assertions.assertEquals(1, poolGauge("car", "available").value());
+        Assertions.assertEquals(0, poolGauge("user", "available").value());
+    }
+
+    @Test
+    public void should_fail_call_after_read_timeout() {
+        HttpClientProperties properties = new HttpClientProperties();
+        properties.setReadTimeout(READ_TIMEOUT);
+        config = new HttpClientConfig(properties, meterRegistry);
+        RestTemplate carRestTemplate = config.carRestTemplate(new RestTemplateBuilder(), config.carHttpClient());
+        // The first request to the stub may take longer than the short read timeout
+        Assertions.assertEquals("ok", new RestTemplate().getForObject(url("fast"), String.class));
+
+        long start = System.nanoTime();
+        ResourceAccessException ex = Assertions.assertThrows(ResourceAccessException.class,
+                () -> carRestTemplate.getForObject(url("slow"), String.class));
+        Duration waited = Duration.ofNanos(System.nanoTime() - start);
+
+        Assertions.assertTrue(ex.getCause() instanceof SocketTimeoutException, "Unexpected cause " + ex.getCause());
+        Assertions.assertTrue(waited.compareTo(READ_TIMEOUT.multipliedBy(4)) < 0, "Waited " + waited);
+        Assertions.assertEquals(0, poolGauge("car", "leased").value());
+    }
+
+    private Gauge poolGauge(String downstream, String state) {
+        return meterRegistry.find("http.client.pool.connections")
+                .tag("downstream", downstream)
+                .tag("state", state)
+                .gauge();
+    }
+
+    private String url(String path) {
+        return String.format("http://localhost:%d/%s", stub.port(), path);
+    }
+}
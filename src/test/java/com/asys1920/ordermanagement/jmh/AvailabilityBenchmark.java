@@ -0,0 +1,49 @@
+package com.asys1920.ordermanagement.jmh;
+
+import com.asys1920.ordermanagement.service.OrderService;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The availability check of a car with a growing history of finished orders, answered by the in-memory availability
+ * index or by the repository.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AvailabilityBenchmark {
+    private static final long CARS = 10;
+
+    @Param({"10", "1000", "100000"})
+    public long historyPerCar;
+
+    @Param({"true", "false"})
+    public boolean availabilityIndex;
+
+    private BenchmarkContext context;
+    private OrderService orderService;
+    private long nextCarId;
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = BenchmarkContext.start("--order.availability.index.enabled=" + availabilityIndex);
+        orderService = context.bean(OrderService.class);
+        context.insertHistory(historyPerCar * CARS, CARS);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    @Benchmark
+    public boolean carIsInUse() {
+        nextCarId = nextCarId % CARS + 1;
+        return orderService.carIsInUse(nextCarId, Instant.now());
+    }
+}
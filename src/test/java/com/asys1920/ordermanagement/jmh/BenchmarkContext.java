@@ -0,0 +1,114 @@
+package com.asys1920.ordermanagement.jmh;
+
+import com.asys1920.model.Order;
+import com.asys1920.ordermanagement.OrderManagementApplication;
+import com.asys1920.ordermanagement.repository.BillOutboxRepository;
+import com.asys1920.ordermanagement.repository.OrderRepository;
+import com.asys1920.ordermanagement.service.AvailabilityIndex;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.concurrent.Callable;
+
+/**
+ * The order service the JMH benchmarks run against: the application with the {@link StubAdapters} and an in-memory
+ * H2 database, but without a client in front of it. Calls are wrapped like a request would wrap them.
+ */
+final class BenchmarkContext implements AutoCloseable {
+    private final ConfigurableApplicationContext context;
+    private final EntityManagerFactory entityManagerFactory;
+
+    private BenchmarkContext(ConfigurableApplicationContext context) {
+        this.context = context;
+        this.entityManagerFactory = context.getBean(EntityManagerFactory.class);
+    }
+
+    /**
+     * Starts the application
+     * @param args additional properties as command line arguments, e.g. {@code --order.availability.index.enabled=false}
+     * @return the started application
+     */
+    static BenchmarkContext start(String... args) {
+        String[] defaults = {"--server.port=0",
+                "--spring.datasource.url=jdbc:h2:mem:benchmark",
+                "--bill.outbox.poll-interval=3600000",
+                "--logging.level.root=WARN"};
+        String[] all = new String[defaults.length + args.length];
+        System.arraycopy(defaults, 0, all, 0, defaults.length);
+        System.arraycopy(args, 0, all, defaults.length, args.length);
+        return new BenchmarkContext(new SpringApplicationBuilder(OrderManagementApplication.class, StubAdapters.class)
+                .run(all));
+    }
+
+    <T> T bean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    /**
+     * Runs a call like a request: the request scoped lookups are fresh and the entity manager stays open until the
+     * call returned, like the open entity manager of the web requests
+     * @param path the path of the request, used by links the call builds
+     * @param call the call
+     * @return the result of the call
+     */
+    <T> T inRequest(String path, Callable<T> call) throws Exception {
+        ServletRequestAttributes attributes = new ServletRequestAttributes(new MockHttpServletRequest("GET", path));
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        RequestContextHolder.setRequestAttributes(attributes);
+        TransactionSynchronizationManager.bindResource(entityManagerFactory, new EntityManagerHolder(entityManager));
+        try {
+            return call.call();
+        } finally {
+            TransactionSynchronizationManager.unbindResource(entityManagerFactory);
+            entityManager.close();
+            attributes.requestCompleted();
+            RequestContextHolder.resetRequestAttributes();
+        }
+    }
+
+    /**
+     * Inserts finished orders of half an hour, one per car and hour since 2000, directly into the database and rebuilds the availability index
+     * @param orders the number of orders
+     * @param cars the number of cars the orders are spread over
+     */
+    void insertHistory(long orders, long cars) {
+        AbstractEntityPersister persister = (AbstractEntityPersister) entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getMetamodel().entityPersister(Order.class);
+        String insert = String.format("INSERT INTO %s (%s, %s, %s, %s, %s, %s)", persister.getTableName(),
+                persister.getIdentifierColumnNames()[0],
+                persister.getPropertyColumnNames("carId")[0],
+                persister.getPropertyColumnNames("userId")[0],
+                persister.getPropertyColumnNames("startDate")[0],
+                persister.getPropertyColumnNames("endDate")[0],
+                persister.getPropertyColumnNames("canceled")[0]);
+        // Generated by the database, the rows never pass the heap of the benchmark
+        bean(JdbcTemplate.class).execute(insert + " SELECT X, MOD(X, " + cars + ") + 1, MOD(X, 5000) + 1,"
+                + " DATEADD('MINUTE', X / " + cars + " * 60, TIMESTAMP '2000-01-01 00:00:00'),"
+                + " DATEADD('MINUTE', X / " + cars + " * 60 + 30, TIMESTAMP '2000-01-01 00:00:00'), FALSE FROM SYSTEM_RANGE(1, " + orders + ")");
+        bean(AvailabilityIndex.class).rebuild();
+    }
+
+    /**
+     * Deletes all orders and bills, so the following measurements start with an empty database
+     */
+    void deleteOrders() {
+        bean(BillOutboxRepository.class).deleteAllInBatch();
+        bean(OrderRepository.class).deleteAllInBatch();
+        bean(AvailabilityIndex.class).rebuild();
+    }
+
+    @Override
+    public void close() {
+        context.close();
+    }
+}
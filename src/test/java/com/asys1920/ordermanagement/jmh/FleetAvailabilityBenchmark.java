@@ -0,0 +1,72 @@
+package com.asys1920.ordermanagement.jmh;
+
+import com.asys1920.ordermanagement.service.OrderService;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+/**
+ * The availability of a whole fleet in a time range with a deep history of finished orders, checked for all cars at
+ * once like {@code GET /orders/availability} does and car by car like a client that asks for every car.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FleetAvailabilityBenchmark {
+    @Param({"1000", "5000"})
+    public long cars;
+
+    @Param({"10", "200"})
+    public long historyPerCar;
+
+    @Param({"true", "false"})
+    public boolean availabilityIndex;
+
+    private BenchmarkContext context;
+    private OrderService orderService;
+    private List<Long> carIds;
+    private Instant from;
+    private Instant to;
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = BenchmarkContext.start("--order.availability.index.enabled=" + availabilityIndex);
+        orderService = context.bean(OrderService.class);
+        context.insertHistory(historyPerCar * cars, cars);
+        carIds = LongStream.rangeClosed(1, cars).boxed().collect(Collectors.toList());
+        from = Instant.now().plus(Duration.ofDays(1));
+        to = from.plus(Duration.ofHours(4));
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    @Benchmark
+    public Set<Long> bookedCars() throws Exception {
+        return context.inRequest("/orders/availability", () -> orderService.bookedCars(carIds, from, to));
+    }
+
+    @Benchmark
+    public int carIsInUsePerCar() throws Exception {
+        return context.inRequest("/orders/availability", () -> {
+            int booked = 0;
+            for (Long carId : carIds) {
+                if (orderService.carIsInUse(carId, from, to)) {
+                    booked++;
+                }
+            }
+            return booked;
+        });
+    }
+}
@@ -0,0 +1,62 @@
+package com.asys1920.ordermanagement.jmh;
+
+import com.asys1920.dto.OrderDTO;
+import com.asys1920.mapper.OrderMapper;
+import com.asys1920.model.Order;
+import com.asys1920.ordermanagement.controller.OrderController;
+import com.asys1920.ordermanagement.repository.OrderFilter;
+import com.asys1920.ordermanagement.service.OrderService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.ResponseEntity;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * A page of the order list endpoint, once through the controller with the query and once only the mapping of the
+ * loaded orders to DTOs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OrderControllerBenchmark {
+    private static final String PATH = "/orders";
+    private static final long ORDERS = 10_000;
+    private static final long CARS = 100;
+
+    @Param({"10", "100", "1000"})
+    public int pageSize;
+
+    private BenchmarkContext context;
+    private OrderController orderController;
+    private List<Order> page;
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = BenchmarkContext.start("--order.page.max-size=" + pageSize);
+        orderController = context.bean(OrderController.class);
+        context.insertHistory(ORDERS, CARS);
+        page = context.bean(OrderService.class).getOrders(new OrderFilter(null, null, null, null, null), null, pageSize).getOrders();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    @Benchmark
+    public ResponseEntity<List<OrderDTO>> listOrders() throws Exception {
+        return context.inRequest(PATH, () -> orderController.getAllOrders(null, pageSize, null, null, null));
+    }
+
+    @Benchmark
+    public List<OrderDTO> mapOrders() {
+        return page.stream()
+                .map(OrderMapper.INSTANCE::orderToOrderDTO)
+                .collect(Collectors.toList());
+    }
+}
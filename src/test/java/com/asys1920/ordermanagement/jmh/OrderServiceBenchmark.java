@@ -0,0 +1,94 @@
+package com.asys1920.ordermanagement.jmh;
+
+import com.asys1920.model.Order;
+import com.asys1920.ordermanagement.repository.OrderRepository;
+import com.asys1920.ordermanagement.service.OrderService;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creating, reserving and finishing orders with in-memory car and user services.
+ * Every created order and reservation uses another car, so the availability check always passes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class OrderServiceBenchmark {
+    private static final String PATH = "/orders";
+    private static final int OPEN_ORDERS = 10_000;
+    private BenchmarkContext context;
+    private OrderService orderService;
+    private long nextCarId;
+    private List<Long> openOrderIds;
+    private int nextOpenOrder;
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = BenchmarkContext.start();
+        orderService = context.bean(OrderService.class);
+    }
+
+    @Setup(Level.Iteration)
+    public void openOrders() {
+        List<Order> orders = new ArrayList<>(OPEN_ORDERS);
+        Instant start = Instant.now().minus(Duration.ofHours(1));
+        for (int i = 0; i < OPEN_ORDERS; i++) {
+            Order order = new Order();
+            order.setCarId(++nextCarId);
+            order.setUserId(1L);
+            order.setStartDate(start);
+            orders.add(order);
+        }
+        openOrderIds = new ArrayList<>(OPEN_ORDERS);
+        for (Order order : context.bean(OrderRepository.class).saveAll(orders)) {
+            openOrderIds.add(order.getId());
+        }
+        nextOpenOrder = 0;
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteOrders() {
+        context.deleteOrders();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    @Benchmark
+    public Order createOrder() throws Exception {
+        Order order = new Order();
+        order.setCarId(++nextCarId);
+        order.setUserId(1L);
+        return context.inRequest(PATH, () -> orderService.createOrder(order));
+    }
+
+    @Benchmark
+    public Order reserveOrder() throws Exception {
+        Order order = new Order();
+        order.setCarId(++nextCarId);
+        order.setUserId(1L);
+        order.setStartDate(Instant.now().plus(Duration.ofDays(1)));
+        order.setEndDate(order.getStartDate().plus(Duration.ofHours(3)));
+        return context.inRequest(PATH, () -> orderService.reserveOrder(order));
+    }
+
+    /**
+     * Finishes the open orders of the iteration one after another. If an iteration finishes more orders than were
+     * opened, the first ones are finished again, which does the same work.
+     */
+    @Benchmark
+    public Order finishOrder() throws Exception {
+        Long orderId = openOrderIds.get(nextOpenOrder++ % OPEN_ORDERS);
+        return context.inRequest(PATH, () -> orderService.finishOrder(orderId));
+    }
+}
@@ -0,0 +1,67 @@
+package com.asys1920.ordermanagement.jmh;
+
+import com.asys1920.model.Car;
+import com.asys1920.model.User;
+import com.asys1920.ordermanagement.adapter.CarServiceAdapter;
+import com.asys1920.ordermanagement.adapter.RequestHedging;
+import com.asys1920.ordermanagement.adapter.UserServiceAdapter;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Adapters that answer from memory instead of calling the car and user service, so the benchmarks measure the
+ * service itself. Every lookup still returns a new object, like a deserialized answer of the services would be.
+ */
+@TestConfiguration
+public class StubAdapters {
+
+    @Bean
+    @Primary
+    public CarServiceAdapter stubCarServiceAdapter(@Qualifier("carRestTemplate") RestTemplate restTemplate,
+                                                   MeterRegistry meterRegistry,
+                                                   CircuitBreakerRegistry circuitBreakerRegistry,
+                                                   BulkheadRegistry bulkheadRegistry,
+                                                   RequestHedging requestHedging) {
+        return new CarServiceAdapter(restTemplate, 1, Duration.ofMinutes(1), meterRegistry,
+                circuitBreakerRegistry, bulkheadRegistry, requestHedging) {
+            @Override
+            public Car getCar(Long carId) {
+                Car car = new Car();
+                car.setId(carId);
+                car.setName("BenchmarkCar");
+                car.setCarBaseRentPrice(50.0);
+                return car;
+            }
+        };
+    }
+
+    @Bean
+    @Primary
+    public UserServiceAdapter stubUserServiceAdapter(@Qualifier("userRestTemplate") RestTemplate restTemplate,
+                                                     MeterRegistry meterRegistry,
+                                                     CircuitBreakerRegistry circuitBreakerRegistry,
+                                                     BulkheadRegistry bulkheadRegistry,
+                                                     RequestHedging requestHedging) {
+        return new UserServiceAdapter(restTemplate, 1, Duration.ofMinutes(1), Duration.ofMinutes(1), meterRegistry,
+                circuitBreakerRegistry, bulkheadRegistry, requestHedging) {
+            @Override
+            public User getUser(Long userId) {
+                User user = new User();
+                user.setId(userId);
+                user.setUserName("benchmark");
+                user.setExpirationDateDriversLicense(Instant.MAX);
+                user.setActive(true);
+                return user;
+            }
+        };
+    }
+}
@@ -0,0 +1,155 @@
+package com.asys1920.ordermanagement.repository;
+
+import com.asys1920.model.Order;
+import com.asys1920.ordermanagement.OrderManagementApplication;
+import com.asys1920.ordermanagement.adapter.AccountingServiceAdapter;
+import com.asys1920.ordermanagement.adapter.CarServiceAdapter;
+import com.asys1920.ordermanagement.adapter.UserServiceAdapter;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the availability query of the repository while the rental history grows to a few million orders.
+ * Run with {@code mvn test -Pbenchmark}, the size of the history is set with {@code -Dbenchmark.orders}.
+ */
+@Tag("benchmark")
+@SpringBootTest(classes = OrderManagementApplication.class, properties = "bill.outbox.poll-interval=3600000")
+public class OrderRepositoryBenchmarkTest {
+    private static final Logger LOG = LoggerFactory.getLogger(OrderRepositoryBenchmarkTest.class);
+    private static final int CARS = 1000;
+    private static final int QUERIES = 20_000;
+    private static final int BATCH_SIZE = 10_000;
+    private static final long FIRST_ID = 1_000_000_000L;
+    private static final Instant NOW = Instant.now();
+
+    @MockBean
+    private UserServiceAdapter userServiceAdapter;
+
+    @MockBean
+    private CarServiceAdapter carServiceAdapter;
+
+    @MockBean
+    private AccountingServiceAdapter accountingServiceAdapter;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Value("${benchmark.orders:3000000}")
+    private int orders;
+
+    @AfterEach
+    public void tearDown() {
+        orderRepository.deleteAllInBatch();
+    }
+
+    @Test
+    public void should_keep_availability_query_cost_flat_when_history_grows() {
+        int ordersPerCar = orders / CARS;
+        // Finished rentals of every car, one per two days, the latest ends before the reservations start
+        Instant historyStart = NOW.minus(Duration.ofDays(2L * ordersPerCar + 10));
+        String insert = insertStatement();
+        for (int carId = 0; carId < CARS; carId++) {
+            Instant start = NOW.plus(Duration.ofDays(10));
+            jdbcTemplate.update(insert, FIRST_ID - carId - 1, (long) carId, 1L,
+                    Timestamp.from(start), Timestamp.from(start.plus(Duration.ofDays(1))), false);
+        }
+
+        List<String> results = new ArrayList<>();
+        double firstAverage = 0;
+        double lastAverage = 0;
+        int inserted = 0;
+        for (int step = Math.max(CARS, orders / 1000); inserted < orders; step = Math.min(step * 10, orders)) {
+            insertHistory(insert, inserted, step, historyStart);
+            inserted = step;
+            double average = measure();
+            if (firstAverage == 0) {
+                firstAverage = average;
+            }
+            lastAverage = average;
+            results.add(String.format("%,d orders: %.1f us per query", inserted, average / 1000));
+        }
+        LOG.info("Availability query with growing history:\n{}", String.join("\n", results));
+
+        // Stays within a small factor while the history grew by three orders of magnitude
+        Assertions.assertTrue(lastAverage < Math.max(firstAverage * 3, 50_000),
+                String.format("Query cost grew from %.0f ns to %.0f ns", firstAverage, lastAverage));
+    }
+
+    /**
+     * Inserts finished rentals until the history has the given size. The k-th order of a car is its k-th rental.
+     */
+    private void insertHistory(String insert, int from, int to, Instant historyStart) {
+        List<Object[]> batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = from; i < to; i++) {
+            Instant start = historyStart.plus(Duration.ofDays(2L * (i / CARS)));
+            batch.add(new Object[]{FIRST_ID + i, (long) (i % CARS), (long) (i % 5000),
+                    Timestamp.from(start), Timestamp.from(start.plus(Duration.ofDays(1))), false});
+            if (batch.size() == BATCH_SIZE) {
+                jdbcTemplate.batchUpdate(insert, batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            jdbcTemplate.batchUpdate(insert, batch);
+        }
+    }
+
+    /**
+     * @return the average duration of an availability query in nanoseconds, half of the queries hit a reservation
+     */
+    private double measure() {
+        Random random = new Random(42);
+        for (int i = 0; i < QUERIES / 10; i++) {
+            query(random, i);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < QUERIES; i++) {
+            query(random, i);
+        }
+        return (System.nanoTime() - start) / (double) QUERIES;
+    }
+
+    private void query(Random random, int i) {
+        long carId = random.nextInt(CARS);
+        Instant start = NOW.plus(Duration.ofDays(i % 2 == 0 ? 1 : 10)).plus(Duration.ofHours(random.nextInt(12)));
+        boolean booked = orderRepository.existsBookingOverlapping(carId, start, start.plus(Duration.ofDays(1)));
+        Assertions.assertEquals(i % 2 != 0, booked);
+    }
+
+    private String insertStatement() {
+        AbstractEntityPersister persister = (AbstractEntityPersister) entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getMetamodel().entityPersister(Order.class);
+        return String.format("INSERT INTO %s (%s, %s, %s, %s, %s, %s) VALUES (?, ?, ?, ?, ?, ?)", persister.getTableName(),
+                persister.getIdentifierColumnNames()[0],
+                persister.getPropertyColumnNames("carId")[0],
+                persister.getPropertyColumnNames("userId")[0],
+                persister.getPropertyColumnNames("startDate")[0],
+                persister.getPropertyColumnNames("endDate")[0],
+                persister.getPropertyColumnNames("canceled")[0]);
+    }
+}
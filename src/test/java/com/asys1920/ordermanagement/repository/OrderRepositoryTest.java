@@ -0,0 +1,148 @@
+package com.asys1920.ordermanagement.repository;
+
+import com.asys1920.model.Order;
+import com.asys1920.ordermanagement.OrderManagementApplication;
+import com.asys1920.ordermanagement.adapter.AccountingServiceAdapter;
+import com.asys1920.ordermanagement.adapter.CarServiceAdapter;
+import com.asys1920.ordermanagement.adapter.UserServiceAdapter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+@SpringBootTest(classes = OrderManagementApplication.class, properties = "bill.outbox.poll-interval=3600000")
+public class OrderRepositoryTest {
+    private static final Instant NOW = Instant.parse("2020-06-01T10:00:00Z");
+
+    @MockBean
+    private UserServiceAdapter userServiceAdapter;
+
+    @MockBean
+    private CarServiceAdapter carServiceAdapter;
+
+    @MockBean
+    private AccountingServiceAdapter accountingServiceAdapter;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    public void tearDown() {
+        orderRepository.deleteAll();
+    }
+
+    @Test
+    public void should_find_overlapping_booking_of_car() {
+        orderRepository.save(order(1L, NOW, NOW.plus(Duration.ofDays(1))));
+
+        Assertions.assertTrue(orderRepository.existsBookingOverlapping(1L, NOW.minus(Duration.ofHours(1)), NOW.plusSeconds(1)));
+        Assertions.assertTrue(orderRepository.existsBookingOverlapping(1L, NOW.plus(Duration.ofHours(23)), null));
+        Assertions.assertFalse(orderRepository.existsBookingOverlapping(1L, NOW.minus(Duration.ofDays(1)), NOW));
+        Assertions.assertFalse(orderRepository.existsBookingOverlapping(1L, NOW.plus(Duration.ofDays(1)), null));
+        Assertions.assertFalse(orderRepository.existsBookingOverlapping(2L, NOW, NOW.plus(Duration.ofDays(1))));
+    }
+
+    @Test
+    public void should_create_indexes_of_order_queries() {
+        List<String> indexes = jdbcTemplate.queryForList("SELECT INDEX_NAME FROM INFORMATION_SCHEMA.INDEXES", String.class);
+
+        Assertions.assertTrue(indexes.containsAll(List.of("IDX_ORDER_CAR_END_START", "IDX_ORDER_USER_START", "IDX_ORDER_USER_END")),
+                "Missing indexes in " + indexes);
+    }
+
+    @Test
+    public void should_find_running_rental_of_car() {
+        orderRepository.save(order(1L, NOW, null));
+
+        Assertions.assertTrue(orderRepository.existsBookingOverlapping(1L, NOW.plus(Duration.ofDays(30)), NOW.plus(Duration.ofDays(31))));
+        Assertions.assertTrue(orderRepository.existsBookingOverlapping(1L, NOW.plus(Duration.ofDays(30)), null));
+        Assertions.assertFalse(orderRepository.existsBookingOverlapping(1L, NOW.minus(Duration.ofDays(1)), NOW));
+    }
+
+    @Test
+    public void should_ignore_canceled_orders() {
+        Order order = order(1L, NOW, NOW.plus(Duration.ofDays(1)));
+        order.setCanceled(true);
+        orderRepository.save(order);
+
+        Assertions.assertFalse(orderRepository.existsBookingOverlapping(1L, NOW, NOW.plus(Duration.ofDays(1))));
+    }
+
+    @Test
+    public void should_find_booked_cars_in_one_query() {
+        orderRepository.save(order(1L, NOW, NOW.plus(Duration.ofDays(1))));
+        orderRepository.save(order(1L, NOW.minus(Duration.ofDays(2)), NOW.minus(Duration.ofDays(1))));
+        orderRepository.save(order(2L, NOW.minus(Duration.ofDays(5)), null));
+        orderRepository.save(order(3L, NOW.plus(Duration.ofDays(1)), NOW.plus(Duration.ofDays(2))));
+        Order canceled = order(4L, NOW, NOW.plus(Duration.ofDays(1)));
+        canceled.setCanceled(true);
+        orderRepository.save(canceled);
+
+        Assertions.assertEquals(Set.of(1L, 2L),
+                orderRepository.findBookedCarIds(List.of(1L, 2L, 3L, 4L, 5L), NOW.plus(Duration.ofHours(1)), NOW.plus(Duration.ofDays(1))));
+        Assertions.assertEquals(Set.of(2L),
+                orderRepository.findBookedCarIds(List.of(2L, 3L), NOW.minus(Duration.ofDays(1)), NOW));
+    }
+
+    @Test
+    public void should_walk_all_orders_of_car_page_by_page() {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            ids.add(orderRepository.save(order(1L, NOW.plus(Duration.ofDays(i)), NOW.plus(Duration.ofDays(i)).plusSeconds(60))).getId());
+            orderRepository.save(order(2L, NOW, null));
+        }
+        OrderFilter filter = new OrderFilter(1L, null, null, null, null);
+
+        List<Long> walked = new ArrayList<>();
+        Long after = null;
+        List<Order> page;
+        do {
+            page = orderRepository.findPage(filter, after, 2);
+            page.forEach(order -> walked.add(order.getId()));
+            after = page.isEmpty() ? after : page.get(page.size() - 1).getId();
+        } while (page.size() == 2);
+
+        Assertions.assertEquals(ids, walked);
+    }
+
+    @Test
+    public void should_filter_page_by_status_and_start_date() {
+        Order canceled = order(1L, null, null);
+        canceled.setCanceled(true);
+        orderRepository.save(canceled);
+        Order finished = orderRepository.save(order(1L, NOW, NOW.plus(Duration.ofDays(1))));
+        Order running = orderRepository.save(order(1L, Instant.now(), null));
+        Order reserved = orderRepository.save(order(1L, Instant.now().plus(Duration.ofDays(3)), Instant.now().plus(Duration.ofDays(4))));
+
+        Assertions.assertEquals(List.of(canceled.getId()), ids(new OrderFilter(null, null, OrderFilter.Status.CANCELED, null, null)));
+        Assertions.assertEquals(List.of(finished.getId()), ids(new OrderFilter(null, null, OrderFilter.Status.FINISHED, null, null)));
+        Assertions.assertEquals(List.of(running.getId(), reserved.getId()), ids(new OrderFilter(1L, null, OrderFilter.Status.OPEN, null, null)));
+        Assertions.assertEquals(List.of(running.getId()), ids(new OrderFilter(null, 1L, null, NOW.plus(Duration.ofDays(1)), Instant.now().plus(Duration.ofDays(1)))));
+    }
+
+    private List<Long> ids(OrderFilter filter) {
+        return orderRepository.findPage(filter, null, 10).stream().map(Order::getId).collect(Collectors.toList());
+    }
+
+    static Order order(Long carId, Instant start, Instant end) {
+        Order order = new Order();
+        order.setCarId(carId);
+        order.setUserId(1L);
+        order.setStartDate(start);
+        order.setEndDate(end);
+        return order;
+    }
+}
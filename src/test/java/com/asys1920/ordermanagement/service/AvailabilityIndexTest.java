@@ -0,0 +1,155 @@
+package com.asys1920.ordermanagement.service;
+
+import com.asys1920.model.Order;
+import com.asys1920.ordermanagement.repository.OrderRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.persistence.EntityManager;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+public class AvailabilityIndexTest {
+    // Bookings that ended before the rebuild are not indexed
+    private static final Instant NOW = Instant.now().plus(Duration.ofDays(7)).truncatedTo(ChronoUnit.HOURS);
+
+    private OrderRepository orderRepository;
+    private AvailabilityIndex availabilityIndex;
+
+    @BeforeEach
+    public void setUp() {
+        orderRepository = Mockito.mock(OrderRepository.class);
+        availabilityIndex = new AvailabilityIndex(orderRepository, Mockito.mock(EntityManager.class),
+                Mockito.mock(PlatformTransactionManager.class));
+    }
+
+    @Test
+    public void should_detect_overlap_of_half_open_ranges() {
+        repositoryContains(order(1L, 1L, NOW, NOW.plus(Duration.ofDays(1))));
+        availabilityIndex.rebuild();
+
+        Assertions.assertTrue(availabilityIndex.isBooked(1L, NOW.minus(Duration.ofHours(1)), NOW.plusSeconds(1)));
+        Assertions.assertTrue(availabilityIndex.isBooked(1L, NOW.plus(Duration.ofHours(23)), NOW.plus(Duration.ofDays(3))));
+        Assertions.assertFalse(availabilityIndex.isBooked(1L, NOW.minus(Duration.ofDays(1)), NOW));
+        Assertions.assertFalse(availabilityIndex.isBooked(1L, NOW.plus(Duration.ofDays(1)), NOW.plus(Duration.ofDays(2))));
+        Assertions.assertFalse(availabilityIndex.isBooked(2L, NOW, NOW.plus(Duration.ofDays(1))));
+    }
+
+    @Test
+    public void should_book_car_from_start_on_when_rental_has_no_end() {
+        availabilityIndex.update(order(1L, 1L, NOW, null));
+
+        Assertions.assertTrue(availabilityIndex.isBooked(1L, NOW.plus(Duration.ofDays(365)), NOW.plus(Duration.ofDays(366))));
+        Assertions.assertFalse(availabilityIndex.isBooked(1L, NOW.minus(Duration.ofDays(1)), NOW));
+    }
+
+    @Test
+    public void should_move_and_remove_booking_when_order_changes() {
+        Order order = order(1L, 1L, NOW, null);
+        availabilityIndex.update(order);
+
+        order.setEndDate(NOW.plus(Duration.ofHours(2)));
+        availabilityIndex.update(order);
+        Assertions.assertFalse(availabilityIndex.isBooked(1L, NOW.plus(Duration.ofHours(2)), null));
+
+        order.setCanceled(true);
+        availabilityIndex.update(order);
+        Assertions.assertFalse(availabilityIndex.isBooked(1L, NOW, NOW.plus(Duration.ofHours(2))));
+        Assertions.assertEquals(0, availabilityIndex.size());
+    }
+
+    @Test
+    public void should_report_differences_to_repository() {
+        repositoryContains(order(1L, 1L, NOW, NOW.plus(Duration.ofDays(1))));
+        availabilityIndex.rebuild();
+        Assertions.assertTrue(availabilityIndex.checkConsistency().isEmpty());
+
+        availabilityIndex.update(order(2L, 1L, NOW.plus(Duration.ofDays(2)), NOW.plus(Duration.ofDays(3))));
+        repositoryContains(order(1L, 1L, NOW, NOW.plus(Duration.ofDays(2))));
+
+        Assertions.assertEquals(2, availabilityIndex.checkConsistency().size());
+    }
+
+    @Test
+    public void should_be_ready_after_first_rebuild() {
+        Assertions.assertFalse(availabilityIndex.isReady());
+
+        availabilityIndex.rebuild();
+
+        Assertions.assertTrue(availabilityIndex.isReady());
+    }
+
+    @Test
+    public void should_skip_ended_bookings_when_rebuilding() {
+        Instant now = Instant.now();
+        repositoryContains(order(1L, 1L, now.minus(Duration.ofDays(3)), now.minus(Duration.ofDays(1))),
+                order(2L, 1L, now.minus(Duration.ofDays(1)), now.plus(Duration.ofDays(1))));
+
+        availabilityIndex.rebuild();
+
+        Assertions.assertEquals(1, availabilityIndex.size());
+        Assertions.assertTrue(availabilityIndex.isBooked(1L, now, now.plusSeconds(1)));
+        Assertions.assertTrue(availabilityIndex.checkConsistency().isEmpty());
+    }
+
+    @Test
+    public void should_not_report_ended_bookings_as_differences() {
+        Instant now = Instant.now();
+        // Like an order that was finished after the rebuild
+        availabilityIndex.update(order(1L, 1L, now.minus(Duration.ofDays(2)), now.minus(Duration.ofMinutes(1))));
+
+        Assertions.assertTrue(availabilityIndex.checkConsistency().isEmpty());
+    }
+
+    @Test
+    public void should_answer_like_full_scan_for_random_bookings() {
+        Random random = new Random(42);
+        List<Order> orders = new ArrayList<>();
+        for (long id = 1; id <= 2000; id++) {
+            Instant start = NOW.plus(Duration.ofHours(random.nextInt(100_000)));
+            Instant end = random.nextInt(50) == 0 ? null : start.plus(Duration.ofHours(1 + random.nextInt(500)));
+            orders.add(order(id, 1L + random.nextInt(3), start, end));
+        }
+        Collections.shuffle(orders, random);
+        orders.forEach(availabilityIndex::update);
+        // Cancel every fourth order to exercise removals
+        for (int i = 0; i < orders.size(); i += 4) {
+            orders.get(i).setCanceled(true);
+            availabilityIndex.update(orders.get(i));
+        }
+
+        for (int i = 0; i < 2000; i++) {
+            long carId = 1L + random.nextInt(3);
+            Instant start = NOW.plus(Duration.ofHours(random.nextInt(110_000)));
+            Instant end = start.plus(Duration.ofHours(1 + random.nextInt(200)));
+            boolean expected = orders.stream().anyMatch(order -> !order.isCanceled() && order.getCarId() == carId
+                    && order.getStartDate().isBefore(end)
+                    && (order.getEndDate() == null || order.getEndDate().isAfter(start)));
+            Assertions.assertEquals(expected, availabilityIndex.isBooked(carId, start, end));
+        }
+    }
+
+    private void repositoryContains(Order... orders) {
+        Mockito.when(orderRepository.streamBookingsEndingAfter(Mockito.any(Instant.class))).thenAnswer(invocation -> Stream.of(orders));
+    }
+
+    private static Order order(Long id, Long carId, Instant start, Instant end) {
+        Order order = new Order();
+        order.setId(id);
+        order.setCarId(carId);
+        order.setUserId(1L);
+        order.setStartDate(start);
+        order.setEndDate(end);
+        return order;
+    }
+}